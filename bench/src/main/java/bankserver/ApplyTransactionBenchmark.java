@@ -0,0 +1,45 @@
+package bankserver;
+
+import bench.Fixtures;
+import common.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of BankServerImpl.applyTransaction per operation type, including the command parsing.
+ * The package is bankserver so the benchmark can call the package-private state machine directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ApplyTransactionBenchmark {
+
+    @Param({"deposit", "addInterest", "addInterestAll", "getSyncedBalance"})
+    public String operation;
+
+    private BankServerImpl replica;
+    private Transaction tx;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        // A fresh replica per iteration keeps executedList from growing without bound.
+        replica = Fixtures.replica();
+        String command = switch (operation) {
+            case "deposit" -> "deposit USD 100.0";
+            case "addInterest" -> "addInterest EUR 0.0001";
+            case "addInterestAll" -> "addInterest ALL 0.0001";
+            case "getSyncedBalance" -> "getSyncedBalance USD";
+            default -> throw new IllegalArgumentException(operation);
+        };
+        tx = new Transaction(command, replica.getinstanceName() + " 0", System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public void apply() {
+        replica.applyTransaction(tx);
+    }
+}
@@ -0,0 +1,81 @@
+package bankserver;
+
+import bench.Fixtures;
+import embedded.EmbeddedCluster;
+import mdserver.MDServerOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The MDServer's sequencer against agreement among the replicas (ISIS), in an embedded cluster
+ * whose transport adds a per-call latency.
+ *
+ * One operation submits a batch of deposits to a replica and then a synced balance, which
+ * returns once everything before it is ordered and applied. With batch 1 the score is the
+ * latency of an ordered round trip; with a larger batch, batch divided by the score is the
+ * throughput. The contended variant runs four clients on different replicas of the group.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderingBenchmark {
+
+    @Param({"SEQUENCER", "ISIS"})
+    public Ordering ordering;
+
+    @Param({"3", "5"})
+    public int replicas;
+
+    @Param({"1", "32"})
+    public int batch;
+
+    @Param({"200"})
+    public long latencyMicros;
+
+    private List<BankServerInterface> group;
+    private final AtomicInteger clients = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Client {
+        BankServerInterface replica;
+
+        @Setup(Level.Trial)
+        public void pick(OrderingBenchmark benchmark) {
+            replica = benchmark.group.get(benchmark.clients.getAndIncrement() % benchmark.group.size());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ReplicaOptions options = new ReplicaOptions();
+        options.ordering = ordering;
+        options.flushIntervalMs = 10;
+        EmbeddedCluster cluster = new EmbeddedCluster(latencyMicros, 0, new MDServerOptions());
+        group = cluster.startGroup("ordering_" + ordering + "_" + replicas + "_" + batch, replicas, Fixtures.converter(), options);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String orderedRoundTrip(Client client) throws Exception {
+        return submitBatch(client.replica);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String orderedRoundTripContended(Client client) throws Exception {
+        return submitBatch(client.replica);
+    }
+
+    private String submitBatch(BankServerInterface replica) throws Exception {
+        for (int i = 0; i < batch; i++) {
+            replica.deposit("USD", 1.0);
+        }
+        return replica.getSyncedBalance("USD");
+    }
+}
@@ -0,0 +1,45 @@
+package bankserver;
+
+import bench.Fixtures;
+import common.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getQuickBalance: converts every currency balance to USD and the total to the requested currency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuickBalanceBenchmark {
+
+    @Param({"USD", "EUR"})
+    public String currency;
+
+    private BankServerImpl replica;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        replica = Fixtures.replica();
+        String[] currencies = {"USD", "EUR", "NOK", "GBP", "CHF", "DKK"};
+        for (int i = 0; i < currencies.length; i++) {
+            replica.applyTransaction(new Transaction("deposit " + currencies[i] + " 100.0", "other_replica " + i, System.currentTimeMillis()));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double quickBalance() throws Exception {
+        return replica.getQuickBalance(currency);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double quickBalanceContended() throws Exception {
+        return replica.getQuickBalance(currency);
+    }
+}
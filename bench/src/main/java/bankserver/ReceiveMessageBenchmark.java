@@ -0,0 +1,45 @@
+package bankserver;
+
+import bench.Fixtures;
+import common.Message;
+import common.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * receiveMessage for a transaction the replica has already executed, i.e. a resend from the
+ * MDServer. This isolates the duplicate check, which scans executedList, as the history grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReceiveMessageBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int executedTransactions;
+
+    private BankServerImpl replica;
+    private Message duplicate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        replica = Fixtures.replica();
+        Transaction last = null;
+        for (int i = 0; i < executedTransactions; i++) {
+            last = new Transaction("deposit USD 1.0", "other_replica " + i, System.currentTimeMillis());
+            replica.applyTransaction(last);
+        }
+        // The newest transaction is the worst case for a front-to-back scan.
+        duplicate = new Message("other_replica", List.of(last), executedTransactions);
+    }
+
+    @Benchmark
+    public void receiveDuplicate() throws Exception {
+        replica.receiveMessage(duplicate);
+    }
+}
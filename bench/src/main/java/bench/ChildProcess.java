@@ -0,0 +1,36 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Servers started as separate processes, for benchmarks that need real RMI between JVMs.
+ */
+public final class ChildProcess {
+    private ChildProcess() {
+    }
+
+    /**
+     * Starts a main class in a new JVM on our class path and returns once it printed a line
+     * starting with readyLine.
+     */
+    public static Process start(String readyLine, String mainClass, String... args) throws IOException {
+        List<String> command = new ArrayList<>(List.of(ProcessHandle.current().info().command().orElse("java"),
+                "--enable-preview", "-cp", System.getProperty("java.class.path"), mainClass));
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = out.readLine()) != null) {
+            if (line.startsWith(readyLine)) {
+                // Keep draining so the child never blocks on a full pipe.
+                Thread.ofVirtual().start(() -> out.lines().forEach(_ -> { }));
+                return process;
+            }
+        }
+        throw new IOException(mainClass + " exited before it was ready.");
+    }
+}
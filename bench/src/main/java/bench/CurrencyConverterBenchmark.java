@@ -0,0 +1,48 @@
+package bench;
+
+import common.CurrencyConverter;
+import common.RateTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A toUSD/fromUSD round trip by currency name, and the same conversion on a RateTable snapshot
+ * with the index looked up once, as getQuickBalance does for every currency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CurrencyConverterBenchmark {
+
+    // "nok" shows the cost of a currency that is not upper case already
+    @Param({"USD", "EUR", "nok"})
+    public String currency;
+
+    private CurrencyConverter converter;
+    private RateTable snapshot;
+    private int from;
+    private int to;
+    private double amount = 100.0;
+
+    @Setup
+    public void setUp() throws Exception {
+        converter = Fixtures.converter();
+        snapshot = converter.snapshot();
+        from = snapshot.requireIndex(currency);
+        to = snapshot.requireIndex("EUR");
+    }
+
+    @Benchmark
+    public double roundTrip() {
+        return converter.fromUSD(currency, converter.toUSD(currency, amount));
+    }
+
+    @Benchmark
+    public double crossRate() {
+        return snapshot.convert(from, to, amount);
+    }
+}
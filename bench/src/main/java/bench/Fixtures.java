@@ -0,0 +1,61 @@
+package bench;
+
+import bankserver.BankServerImpl;
+import bankserver.BankServerInterface;
+import bankserver.ReplicaOptions;
+import bankserver.Transport;
+import common.CurrencyConverter;
+import mdserver.MDServerInterface;
+
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared setup for the benchmarks.
+ */
+public final class Fixtures {
+    private static final AtomicInteger replicaCount = new AtomicInteger();
+
+    private Fixtures() {
+    }
+
+    /**
+     * A converter with the same rates as input/TradingRate.txt.
+     */
+    public static CurrencyConverter converter() throws IOException {
+        Path rates = Files.createTempFile("TradingRate", ".txt");
+        Files.writeString(rates, "EUR 1.17\nNOK 0.10\nGBP 1.34\nCHF 1.25\nDKK 0.16\n");
+        rates.toFile().deleteOnExit();
+        return new CurrencyConverter(rates.toString());
+    }
+
+    /**
+     * A first replica of a fresh group, connected to a StubMDServer.
+     */
+    public static BankServerImpl replica() throws IOException {
+        String groupName = "bench" + replicaCount.incrementAndGet();
+        return new BankServerImpl(groupName + "_replica", groupName, converter(), stubTransport(), 1, "correct", new ReplicaOptions());
+    }
+
+    private static Transport stubTransport() {
+        MDServerInterface mdServer = new StubMDServer();
+        return new Transport() {
+            @Override
+            public MDServerInterface mdServer(String groupName) {
+                return mdServer;
+            }
+
+            @Override
+            public BankServerInterface lookup(String instanceName) throws NotBoundException {
+                throw new NotBoundException(instanceName);
+            }
+
+            @Override
+            public void bind(String instanceName, BankServerInterface replica) {
+            }
+        };
+    }
+}
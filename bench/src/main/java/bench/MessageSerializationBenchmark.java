@@ -0,0 +1,55 @@
+package bench;
+
+import common.Message;
+import common.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java serialization of a Message with N transactions, which is what RMI does on every
+ * broadcastMessage and receiveMessage call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageSerializationBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int transactions;
+
+    private Message message;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < transactions; i++) {
+            txs.add(new Transaction("deposit USD " + (100.0 + i), "group01_6fc56659-1ebb-4321-ac4a-85b5eda5fa53 " + i, System.currentTimeMillis()));
+        }
+        message = new Message("group01_6fc56659-1ebb-4321-ac4a-85b5eda5fa53", txs, 42);
+        serialized = serialize();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+}
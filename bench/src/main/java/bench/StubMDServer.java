@@ -0,0 +1,118 @@
+package bench;
+
+import bankserver.BankServerInterface;
+import common.DepositEntry;
+import common.GroupInfo;
+import common.Message;
+import mdserver.MDServerInterface;
+import mdserver.SequencerState;
+import mdserver.StandbyInterface;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * MDServer that accepts everything and does nothing, so a replica can be benchmarked on its own.
+ * It is never exported, so every call is a plain local call.
+ */
+public class StubMDServer implements MDServerInterface {
+    @Override
+    public void registerReplica(BankServerInterface replica) {
+    }
+
+    @Override
+    public void rejoin(BankServerInterface replica, long lastSequence) {
+    }
+
+    @Override
+    public void registerObserver(BankServerInterface observer, long lastSequence) {
+    }
+
+    @Override
+    public void registerStandbyReplica(BankServerInterface standby, long lastSequence) {
+    }
+
+    @Override
+    public String promoteStandby(String groupName) {
+        return null;
+    }
+
+    @Override
+    public List<Message> getRetainedMessages(String groupName, long fromSequence) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getGroupMembers(String groupName) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public GroupInfo getGroupInfo(String groupName) {
+        return new GroupInfo(0, Collections.emptyList());
+    }
+
+    @Override
+    public void broadcastMessage(Message msg) {
+    }
+
+    @Override
+    public void broadcastMessages(List<Message> msgs) {
+    }
+
+    @Override
+    public void disseminateDeposits(String senderId, List<DepositEntry> entries) {
+    }
+
+    @Override
+    public void ack(String txId, String replicaName) {
+    }
+
+    @Override
+    public void updateMembership() {
+    }
+
+    @Override
+    public String getLatencyReport() {
+        return "";
+    }
+
+    @Override
+    public void suspect(String groupName, String replicaName) {
+    }
+
+    @Override
+    public void heartbeat() {
+    }
+
+    @Override
+    public long generation(String groupName) {
+        return 0;
+    }
+
+    @Override
+    public List<SequencerState> registerStandby(StandbyInterface standby) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> groupNames() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<String> movedGroups() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public SequencerState handOff(String groupName, String shard) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void adoptGroup(SequencerState state) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,150 @@
+package bench;
+
+import bankserver.BankServerInterface;
+import common.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Replica that hands every delivered message to a callback and supports nothing else,
+ * so the MDServer can be benchmarked without real replicas behind it.
+ */
+public class StubReplica implements BankServerInterface {
+    private final String instanceName;
+    private final Consumer<Message> onMessage;
+
+    public StubReplica(String instanceName, Consumer<Message> onMessage) {
+        this.instanceName = instanceName;
+        this.onMessage = onMessage;
+    }
+
+    @Override
+    public void receiveMessage(Message msg) {
+        onMessage.accept(msg);
+    }
+
+    @Override
+    public String getinstanceName() {
+        return instanceName;
+    }
+
+    @Override
+    public void updateMembership(GroupInfo groupInfo) {
+    }
+
+    @Override
+    public void updateMembershipDelta(MembershipDelta delta) {
+    }
+
+    @Override
+    public void promote() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String deposit(String currency, double amount) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String addInterest(String currency, double percent) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getSyncedBalance(String currency) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public double getQuickBalance(String currency) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public BalanceSnapshot getBalancesAt(int order) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public double getSessionBalance(String currency, String sessionToken) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String updateRates(Map<String, Double> rates) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public HistoryPage queryHistory(HistoryQuery query) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void getHistory() {
+    }
+
+    @Override
+    public void cleanHistory() {
+    }
+
+    @Override
+    public void checkTxStatus(String txId) {
+    }
+
+    @Override
+    public String getLatencyReport() {
+        return "";
+    }
+
+    @Override
+    public void printMembers() {
+    }
+
+    @Override
+    public List<String> relayMessage(Message msg, long epoch, int fanout) {
+        onMessage.accept(msg);
+        return List.of(instanceName);
+    }
+
+    @Override
+    public long fenceSequencer(long generation) {
+        return 0;
+    }
+
+    @Override
+    public void ack(String messageId) {
+    }
+
+    @Override
+    public void receiveDeposits(List<DepositEntry> entries) {
+    }
+
+    @Override
+    public long proposeOrder(String messageId, Message msg) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void commitOrder(String messageId, long counter, String replica) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void withdrawOrder(String messageId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public OrderPosition agreedOrder(String messageId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AccountState getAccountState() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,104 @@
+package mdserver;
+
+import bench.StubReplica;
+import common.ExecutionModel;
+import common.Message;
+import common.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A burst of one message to each of many groups, where one replica per group is slow to
+ * receive. Compares sending on the cached platform pool with sending on virtual threads.
+ *
+ * The score is the time until every replica of every group has the message. The peak number of
+ * live platform threads during the trial is printed at the end, since JMH has no gauge type.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionModelBenchmark {
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ExecutionModel executionModel;
+
+    @Param({"200"})
+    public int groups;
+
+    @Param({"5"})
+    public int replicasPerGroup;
+
+    @Param({"200"})
+    public long slowReplicaMs;
+
+    private MDServerImpl server;
+    private final AtomicReference<CountDownLatch> delivered = new AtomicReference<>(new CountDownLatch(0));
+    private final AtomicLong txCounter = new AtomicLong();
+    private final AtomicInteger peakThreads = new AtomicInteger();
+    private Thread threadSampler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        MDServerOptions options = new MDServerOptions();
+        options.executionModel = executionModel;
+        server = new MDServerImpl(options);
+        for (int g = 0; g < groups; g++) {
+            for (int r = 0; r < replicasPerGroup; r++) {
+                String name = "group" + g + "_replica" + r;
+                boolean slow = r == 0;
+                server.registerReplica(new StubReplica(name, msg -> {
+                    if (slow) {
+                        try {
+                            Thread.sleep(slowReplicaMs);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    for (Transaction tx : msg.getTransactions()) {
+                        server.ack(tx.getUniqueId(), name);
+                    }
+                    delivered.get().countDown();
+                }));
+            }
+        }
+        threadSampler = Thread.ofPlatform().daemon(true).start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakThreads.accumulateAndGet(ManagementFactory.getThreadMXBean().getThreadCount(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        threadSampler.interrupt();
+        System.out.println();
+        System.out.println(executionModel + ": peak live platform threads " + peakThreads.get());
+    }
+
+    @Benchmark
+    public void burst() throws Exception {
+        CountDownLatch latch = new CountDownLatch(groups * replicasPerGroup);
+        delivered.set(latch);
+        for (int g = 0; g < groups; g++) {
+            String sender = "group" + g + "_replica1";
+            Transaction tx = new Transaction("deposit USD 1.0", sender + " " + txCounter.incrementAndGet(), System.currentTimeMillis());
+            server.broadcastMessage(new Message(sender, List.of(tx)));
+        }
+        latch.await();
+    }
+}
@@ -0,0 +1,106 @@
+package mdserver;
+
+import bankserver.BankServerImpl;
+import bankserver.ReplicaOptions;
+import bench.ChildProcess;
+import bench.Fixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.rmi.Naming;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to replace a failed MDServer: from killing the primary's process until a synced
+ * balance, which needs a working sequencer, succeeds again through a standby that took over.
+ *
+ * The registry and the replicas live in the benchmark JVM; the primary and each standby are
+ * separate processes. Before every iteration a fresh standby attaches to the current primary,
+ * which is the standby that took over in the iteration before.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FailoverBenchmark {
+
+    @Param({"3"})
+    public int replicas;
+
+    @Param({"1000"})
+    public long takeoverAfterMs;
+
+    @Param({"100"})
+    public long sequencerCheckMs;
+
+    private static final int REGISTRY_PORT = 1199;
+    private static final String REGISTRY = "localhost:" + REGISTRY_PORT;
+
+    private Registry registry;
+    private final List<BankServerImpl> group = new ArrayList<>();
+    private Process primary;
+    private Process standby;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        registry = LocateRegistry.createRegistry(REGISTRY_PORT);
+        primary = ChildProcess.start("Message Delivery Server running", "mdserver.MDServer", REGISTRY);
+
+        ReplicaOptions options = new ReplicaOptions();
+        options.flushIntervalMs = 10;
+        options.sequencerCheckMs = sequencerCheckMs;
+        List<CompletableFuture<Void>> joined = new ArrayList<>();
+        for (int i = 0; i < replicas; i++) {
+            String name = "failover_replica" + i;
+            BankServerImpl replica = new BankServerImpl(name, "failover", Fixtures.converter(), REGISTRY, replicas, "correct", options);
+            Naming.rebind("rmi://" + REGISTRY + "/" + name, replica);
+            group.add(replica);
+            joined.add(CompletableFuture.runAsync(() -> {
+                try {
+                    replica.awaitInitialSync();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        CompletableFuture.allOf(joined.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        group.get(0).deposit("EUR", 100);
+        group.get(0).getSyncedBalance("EUR");
+    }
+
+    @Setup(Level.Iteration)
+    public void attachStandby() throws Exception {
+        standby = ChildProcess.start("Standby attached", "mdserver.StandbyMDServer", REGISTRY, "--takeover-after-ms=" + takeoverAfterMs);
+        group.get(0).deposit("EUR", 1);
+    }
+
+    @Benchmark
+    public String killPrimary() throws Exception {
+        primary.destroyForcibly().waitFor();
+        while (true) {
+            try {
+                return group.get(0).getSyncedBalance("EUR");
+            } catch (Exception e) {
+                Thread.sleep(10); // no MDServer to flush to yet
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void promote() {
+        primary = standby;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        primary.destroyForcibly().waitFor();
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+}
@@ -0,0 +1,71 @@
+package mdserver;
+
+import bench.StubReplica;
+import common.Message;
+import common.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MDServerImpl dispatch with stubbed replicas that ACK as soon as they receive.
+ *
+ * Each operation broadcasts one message and waits until every replica has received it, so the
+ * score is the cost of one round of the stop-and-wait queue, ACK polling included. Enqueue alone
+ * is not measured: the queue drains at one message per ACK round, so an unbounded enqueue loop
+ * would only measure queue growth.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SequencerBenchmark {
+
+    @Param({"1", "3", "10"})
+    public int replicas;
+
+    private MDServerImpl server;
+    private String sender;
+    private final AtomicLong txCounter = new AtomicLong();
+    private final Semaphore delivered = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new MDServerImpl();
+        for (int i = 0; i < replicas; i++) {
+            String name = "benchgroup_replica" + i;
+            server.registerReplica(new StubReplica(name, msg -> {
+                for (Transaction tx : msg.getTransactions()) {
+                    server.ack(tx.getUniqueId(), name);
+                }
+                delivered.release();
+            }));
+        }
+        sender = "benchgroup_replica0";
+    }
+
+    private Message nextMessage() {
+        Transaction tx = new Transaction("deposit USD 1.0", sender + " " + txCounter.incrementAndGet(), System.currentTimeMillis());
+        return new Message(sender, List.of(tx));
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws Exception {
+        // Let the last ACK round finish so the next iteration starts from an empty queue.
+        while (server.queueDepth("benchgroup") > 0 || server.pendingAckCount("benchgroup") > 0) {
+            Thread.sleep(10);
+        }
+        delivered.drainPermits();
+    }
+
+    @Benchmark
+    public void dispatch() throws Exception {
+        server.broadcastMessage(nextMessage());
+        delivered.acquire(replicas);
+    }
+}
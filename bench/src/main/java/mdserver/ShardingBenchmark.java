@@ -0,0 +1,127 @@
+package mdserver;
+
+import bankserver.BankServerInterface;
+import bench.ChildProcess;
+import bench.StubReplica;
+import common.Message;
+import common.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.rmi.Naming;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ordering capacity of a sharded MDServer tier: the time to order a fixed burst of messages
+ * spread over many groups, with the groups placed on 1, 2 or 4 MDServer processes by the
+ * shard map. Less time for the same burst is more capacity.
+ *
+ * The shards are separate processes; the replicas are stubs in the benchmark JVM that ACK
+ * as soon as they receive. Shards only scale with cores or hosts to run on: on a single core
+ * the processes take turns and the score stays flat.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardingBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    @Param({"256"})
+    public int groups;
+
+    @Param({"3"})
+    public int replicasPerGroup;
+
+    @Param({"4"})
+    public int messagesPerGroup;
+
+    private static final int REGISTRY_PORT = 1198;
+    private static final String REGISTRY = "localhost:" + REGISTRY_PORT;
+
+    private Registry registry;
+    private final List<Process> shardProcesses = new ArrayList<>();
+    private final List<StubReplica> replicas = new ArrayList<>();
+    private final Map<String, MDServerInterface> shardOfGroup = new HashMap<>();
+    private final AtomicReference<CountDownLatch> delivered = new AtomicReference<>(new CountDownLatch(0));
+    private final AtomicLong txCounter = new AtomicLong();
+    private ExecutorService senders;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        registry = LocateRegistry.createRegistry(REGISTRY_PORT);
+        List<String> names = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            names.add("s" + s);
+            shardProcesses.add(ChildProcess.start("Message Delivery Server running", "mdserver.MDServer", REGISTRY, "--shard=s" + s));
+        }
+        ShardMap map = new ShardMap(names, Map.of());
+        for (int g = 0; g < groups; g++) {
+            String groupName = "shard" + g;
+            MDServerInterface shard = (MDServerInterface) Naming.lookup("rmi://" + REGISTRY + "/" + map.registryNameFor(groupName));
+            shardOfGroup.put(groupName, shard);
+            for (int r = 0; r < replicasPerGroup; r++) {
+                String name = groupName + "_replica" + r;
+                StubReplica replica = new StubReplica(name, msg -> {
+                    try {
+                        for (Transaction tx : msg.getTransactions()) {
+                            shard.ack(tx.getUniqueId(), name);
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    delivered.get().countDown();
+                });
+                replicas.add(replica);
+                shard.registerReplica((BankServerInterface) UnicastRemoteObject.exportObject(replica, 0));
+            }
+        }
+        senders = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Benchmark
+    public void orderBurst() throws Exception {
+        CountDownLatch done = new CountDownLatch(groups * messagesPerGroup * replicasPerGroup);
+        delivered.set(done);
+        for (Map.Entry<String, MDServerInterface> group : shardOfGroup.entrySet()) {
+            senders.execute(() -> {
+                String sender = group.getKey() + "_replica0";
+                try {
+                    for (int m = 0; m < messagesPerGroup; m++) {
+                        Transaction tx = new Transaction("deposit USD 1.0", sender + " " + txCounter.incrementAndGet(), System.currentTimeMillis());
+                        group.getValue().broadcastMessage(new Message(sender, List.of(tx)));
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        if (!done.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(done.getCount() + " deliveries missing");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        senders.shutdownNow();
+        for (StubReplica replica : replicas) {
+            UnicastRemoteObject.unexportObject(replica, true);
+        }
+        for (Process shard : shardProcesses) {
+            shard.destroyForcibly().waitFor();
+        }
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+}
@@ -0,0 +1,117 @@
+package bankserver;
+
+import common.BalanceSnapshot;
+import common.DepositEntry;
+import common.RateTable;
+import common.Transaction;
+import common.TransactionLog;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * One account's state machine driven from a transaction log instead of the MDServer. It makes
+ * the same calls as BankServerImpl.applyIfNew and applyTransaction, without locks, history or
+ * RMI. An ordered log goes through the replica's duplicate check and deposit folding. An
+ * applied log is taken as it is.
+ */
+final class AccountReplay {
+    private final TransactionLog.Kind kind;
+    private final IntPredicate fingerprintAt;
+    private final Map<String, Double> balances = new HashMap<>();
+    private RateTable rates;
+    private final CommutativeDeposits deposits = new CommutativeDeposits();
+    private final Map<String, Long> appliedHighWater = new HashMap<>();
+    private int order = 0;
+    private int transactions = 0;
+    private final NavigableMap<Integer, String> fingerprints = new TreeMap<>();
+    private final NavigableMap<Integer, Transaction> appliedAt = new TreeMap<>();
+
+    /**
+     * Starts where a group's first replica starts: every currency of the rates at zero.
+     * fingerprintAt picks the orders whose
+     * state is fingerprinted, such as every checkpoint.
+     */
+    AccountReplay(RateTable rates, TransactionLog.Kind kind, IntPredicate fingerprintAt) {
+        this.rates = rates;
+        for (String currency : rates.asMap().keySet()) {
+            balances.put(currency, 0.0);
+        }
+        this.kind = kind;
+        this.fingerprintAt = fingerprintAt;
+    }
+
+    void replay(List<Transaction> log) {
+        for (Transaction tx : log) {
+            replay(tx);
+        }
+    }
+
+    void replay(Transaction tx) {
+        transactions++;
+        if (kind == TransactionLog.Kind.ORDERED) {
+            // Repeats are skipped by each origin's high-water mark, as in applyIfNew
+            String txId = tx.getUniqueId();
+            int separator = txId.lastIndexOf(' ');
+            if (separator >= 0) {
+                String origin = txId.substring(0, separator);
+                long counter = Long.parseLong(txId.substring(separator + 1));
+                if (counter <= appliedHighWater.getOrDefault(origin, -1L)) {
+                    return;
+                }
+                appliedHighWater.put(origin, counter);
+            }
+            for (DepositEntry entry : deposits.fold(tx.getCoveredDeposits())) {
+                applyOrder(entry.toTransaction());
+            }
+        }
+        applyOrder(tx);
+    }
+
+    private void applyOrder(Transaction tx) {
+        String[] parts = tx.getCommand().split("\\s+");
+        if ("getSyncedBalance".equals(parts[0])) {
+            return; // takes no place in the order
+        }
+        rates = AccountStateMachine.rates(parts, rates);
+        AccountStateMachine.apply(parts, balances);
+        order++;
+        if (fingerprintAt.test(order)) {
+            fingerprints.put(order, snapshot().fingerprint());
+            appliedAt.put(order, tx);
+        }
+    }
+
+    BalanceSnapshot snapshot() {
+        return new BalanceSnapshot(order, balances, rates);
+    }
+
+    /**
+     * Orders applied so far; the replica's orderCounter after the same log.
+     */
+    int order() {
+        return order;
+    }
+
+    /**
+     * Log entries read so far, repeats and sync markers included.
+     */
+    int transactions() {
+        return transactions;
+    }
+
+    NavigableMap<Integer, String> fingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * The transaction that took each fingerprinted order.
+     */
+    Transaction appliedAt(int order) {
+        return appliedAt.get(order);
+    }
+}
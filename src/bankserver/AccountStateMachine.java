@@ -0,0 +1,78 @@
+package bankserver;
+
+import common.Log;
+import common.RateTable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What an ordered command does to an account's balances and trading rates. Replicas apply it
+ * live; point-in-time queries replay it over the history from a checkpoint.
+ */
+final class AccountStateMachine {
+    private AccountStateMachine() {
+    }
+
+    /**
+     * The rate table in effect after the command, already split on whitespace: a new one for
+     * updateRates, otherwise the given one. Install it before apply() adds the new currencies,
+     * so readers never see a balance their rate table cannot convert.
+     */
+    static RateTable rates(String[] parts, RateTable rates) {
+        if (!"updateRates".equals(parts[0])) {
+            return rates;
+        }
+        return rates.next(updates(parts));
+    }
+
+    /**
+     * Applies the command to the balances. Commands that change no balance, such as
+     * getSyncedBalance, leave them alone.
+     */
+    static void apply(String[] parts, Map<String, Double> balances) {
+        switch (parts[0]) {
+            case "deposit": {
+                String currency = parts[1].toUpperCase();
+                double amount = Double.parseDouble(parts[2]);
+
+                // Add the amount directly to the specific currency's balance
+                balances.merge(currency, amount, Double::sum);
+                Log.debug(() -> "Deposited " + amount + " " + currency + ". New balance: " + balances.get(currency));
+                break;
+            }
+            case "addInterest": {
+                double percent = Double.parseDouble(parts[parts.length - 1]);
+                double factor = 1.0 + (percent / 100.0);
+
+                // Case 1: A specific currency is provided
+                if (parts.length == 3 && !"ALL".equalsIgnoreCase(parts[1])) {
+                    String currency = parts[1].toUpperCase();
+                    balances.computeIfPresent(currency, (_, v) -> v * factor);
+                    Log.debug(() -> "Applied " + percent + "% interest to " + currency + ". New balance: " + balances.get(currency));
+                }
+                // Case 2: No currency is specified, apply to all
+                else {
+                    Log.debug(() -> "Applying " + percent + "% interest to ALL currencies.");
+                    balances.replaceAll((_, balance) -> balance * factor);
+                }
+                break;
+            }
+            case "updateRates": {
+                for (String currency : updates(parts).keySet()) {
+                    balances.putIfAbsent(currency, 0.0);
+                }
+                break;
+            }
+        }
+    }
+
+    // "updateRates EUR 1.1 NOK 0.1" -> {EUR=1.1, NOK=0.1}
+    private static Map<String, Double> updates(String[] parts) {
+        Map<String, Double> updates = new HashMap<>();
+        for (int i = 1; i + 1 < parts.length; i += 2) {
+            updates.put(parts[i], Double.parseDouble(parts[i + 1]));
+        }
+        return updates;
+    }
+}
@@ -0,0 +1,66 @@
+package bankserver;
+
+import common.BalanceSnapshot;
+import common.RateTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A replica's balance checkpoints by orderCounter, for point-in-time queries. The balances after
+ * any order are the nearest checkpoint at or before it plus a replay of the history in between.
+ *
+ * A checkpoint is taken every `every` orders. Closer spacing costs one small snapshot per
+ * `every` orders; wider spacing costs up to `every` history reads per query. With 0 there are
+ * only the checkpoints taken at the start and when the history is cleaned.
+ */
+class BalanceCheckpoints {
+    private final int every;
+    private final NavigableMap<Integer, BalanceSnapshot> byOrder = new TreeMap<>();
+
+    BalanceCheckpoints(int every) {
+        this.every = every;
+    }
+
+    /**
+     * Called after every applied order; keeps a checkpoint on every `every`-th.
+     */
+    synchronized void afterOrder(int order, Map<String, Double> balances, RateTable rates) {
+        if (every > 0 && order % every == 0) {
+            byOrder.put(order, new BalanceSnapshot(order, balances, rates));
+        }
+    }
+
+    synchronized void record(int order, Map<String, Double> balances, RateTable rates) {
+        byOrder.put(order, new BalanceSnapshot(order, balances, rates));
+    }
+
+    /**
+     * The latest checkpoint at or before the order, or null.
+     */
+    synchronized BalanceSnapshot floor(int order) {
+        Map.Entry<Integer, BalanceSnapshot> entry = byOrder.floorEntry(order);
+        return entry == null ? null : entry.getValue();
+    }
+
+    synchronized List<BalanceSnapshot> all() {
+        return new ArrayList<>(byOrder.values());
+    }
+
+    synchronized int size() {
+        return byOrder.size();
+    }
+
+    /**
+     * Replaces ours with a donor's, for a state transfer.
+     */
+    synchronized void restore(List<BalanceSnapshot> checkpoints) {
+        byOrder.clear();
+        for (BalanceSnapshot checkpoint : checkpoints) {
+            byOrder.put(checkpoint.getOrder(), checkpoint);
+        }
+    }
+}
@@ -7,8 +7,12 @@ import common.CurrencyConverter;
 
 public class BankServer {
     public static void main(String[] args) throws Exception {
+        // Options of the form --name=value may appear anywhere; the rest are positional.
+        ReplicaOptions options = new ReplicaOptions();
+        args = options.parse(args).toArray(new String[0]);
+
         if (args.length < 4) {
-            System.out.println("Usage: BankServer <MDServer host:port> <account name> <#replicas> <currency file> [batch file]");
+            System.out.println("Usage: BankServer <MDServer host:port> <account name> <#replicas> <currency file> [batch file] " + ReplicaOptions.usage());
             return;
         }
 
@@ -24,8 +28,6 @@ public class BankServer {
             System.err.println("Error: MDServer host:port must be in format host:port (e.g., localhost:1099)");
             return;
         }
-        String mdServerHost = hostPortParts[0];
-        String mdServerPort = hostPortParts[1];
 
         // Initialize currency converter
         CurrencyConverter converter = new CurrencyConverter(currencyFile);
@@ -35,17 +37,18 @@ public class BankServer {
 
         // Instantiate BankServerImpl with its unique name
         // We also pass a flag to choose the getSyncedBalance implementation ("correct" or "naive")
-        BankServerImpl bankServer = new BankServerImpl(instanceName, accountName, converter, mdServerHostPort, replicas, "correct");
-        System.out.println("BankServer instance " + instanceName + " started for account: " + accountName);
+        Transport transport = new RmiTransport(mdServerHostPort);
+        BankServerImpl bankServer = new BankServerImpl(instanceName, accountName, converter, transport, replicas, "correct", options);
+        System.out.println("BankServer instance " + instanceName + " started for account: " + accountName + " as " + options.role);
 
         // Bind to RMI registry using its unique name
-        java.rmi.Naming.rebind("rmi://" + mdServerHost + ":" + mdServerPort + "/" + instanceName, bankServer);
+        transport.bind(instanceName, bankServer);
         System.out.println("BankServer " + instanceName + " is running and registered.");
 
         // ... (awaitInitialSync and CommandProcessor logic remains the same) ...
         bankServer.awaitInitialSync();
         
-        CommandProcessor processor = new CommandProcessor(bankServer, instanceName);
+        CommandProcessor processor = new CommandProcessor(bankServer, instanceName, accountName);
         if (batchFile == null) {
             processor.runInteractive();
         } else {
@@ -3,9 +3,14 @@ package bankserver;
 import common.*;
 import mdserver.MDServerInterface;
 
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -15,94 +20,252 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
     // --- State Variables ---
     private final String instanceName;
     private final String groupName;
-    private final CurrencyConverter converter;
+    private final CurrencyConverter converter; // our own, replaced by ordered updateRates transactions
     private final int initialReplicas;
     private final String syncBalanceMode; // "naive" or "correct"
+    private volatile ReplicaRole role; // a STANDBY becomes VOTING when the MDServer promotes it
+    private final Transport transport; // how we reach the MDServer and our peers
+    private final boolean commutativeDeposits;
+    private final long flushIntervalMs;
+    private final int maxOutstanding;
+    private final long submitTimeoutMs;
+    private final ReplicaHost host; // shared runtime when many accounts live in one process, else null
+    private final OrderingEngine ordering; // the MDServer's sequencer, or agreement among the voting replicas
 
     private Map<String, Double> balances = new ConcurrentHashMap<>();
-    private List<Transaction> executedList = Collections.synchronizedList(new ArrayList<>());
+    private final TieredHistory history; // executed transactions: a heap window, then an archive
+    private final Map<String, Long> appliedHighWater = new HashMap<>(); // origin -> highest counter applied
     private List<Transaction> outstandingCollection = Collections.synchronizedList(new ArrayList<>());
-    private int orderCounter = 0;
+    // Flushed to the MDServer but not applied yet, by id; sent again if the MDServer fails over
+    private final Map<String, Transaction> awaitingOrder = new LinkedHashMap<>();
+    private volatile int orderCounter = 0; // volatile so monitoring can read it without the lock
     private int outstandingCounter = 0;
+    private long lastDeliveredSequence = 0; // sequence of the last ordered message applied
+    private long sequencerGeneration = 0; // highest MDServer generation seen; older MDServers were taken over from
+    private volatile boolean sequencerFenced = false; // a successor fenced our MDServer and we have not rejoined it yet
+    private volatile boolean promoted = false; // was a standby, and has not yet caught up to its first message as a member
+    private final CommutativeDeposits depositLog = new CommutativeDeposits(); // only used with commutativeDeposits
+    private final HistoryIndex historyIndex = new HistoryIndex(); // secondary indexes over history
+    private final BalanceCheckpoints checkpoints; // balances every few orders, for getBalancesAt
+    private static final DateTimeFormatter HISTORY_TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
 
-    private MDServerInterface mdServer;
+    private volatile MDServerInterface mdServer; // replaced when we rejoin after a failover
     private final List<String> members = Collections.synchronizedList(new ArrayList<>());
+    private long membershipEpoch = -1; // -1 until the first full GroupInfo arrives
     private final CountDownLatch initialSyncLatch = new CountDownLatch(1);
-    private final Timer broadcastTimer = new Timer();
+    private Timer broadcastTimer; // only for standalone replicas; hosted ones are flushed by the host
+    private volatile long flushBackoffUntilMs = 0; // set when the MDServer rejects a flush as overloaded
+
+    // Stubs of other replicas in the group, looked up in the registry on first use
+    private final Map<String, BankServerInterface> peerStubs = new ConcurrentHashMap<>();
+    // Forwards messages to our children when the MDServer disseminates through a tree
+    private final ExecutorService relayExecutor;
+    private static final long RELAY_TIMEOUT_MS = 4000L; // for a whole relay reply, below the MDServer's 5s eviction
+
+    // Where transactions spend their time, per pair of lifecycle stages
+    private final StageLatencies latencies = new StageLatencies();
+    // JMX counters, registered as bankserver:type=Replica,name=<instanceName>
+    private final ReplicaMetrics metrics = new ReplicaMetrics(this);
 
     // Used for the "correct" getSyncedBalance implementation
     private final Map<String, CompletableFuture<Double>> pendingSyncBalanceRequests = new ConcurrentHashMap<>();
+    // Session reads waiting for a transaction to be applied here: origin -> counter -> waiters. Guarded by this
+    private final Map<String, NavigableMap<Long, List<CompletableFuture<Void>>>> sessionWaiters = new HashMap<>();
+    private static final long SESSION_WAIT_MS = 30_000L;
+    private static final int STATE_TRANSFER_ATTEMPTS = 3; // a donor that cleans its history mid-transfer forces a retry
 
 
     public BankServerImpl(String instanceName, String groupName, CurrencyConverter converter, String mdServerHostPort, int replicas, String syncBalanceMode) throws RemoteException {
+        this(instanceName, groupName, converter, mdServerHostPort, replicas, syncBalanceMode, new ReplicaOptions());
+    }
+
+    public BankServerImpl(String instanceName, String groupName, CurrencyConverter converter, String mdServerHostPort, int replicas, String syncBalanceMode, ReplicaOptions options) throws RemoteException {
+        this(instanceName, groupName, converter, new RmiTransport(mdServerHostPort), replicas, syncBalanceMode, options);
+    }
+
+    /**
+     * Hosted replica of a MultiAccountBankServer; it uses the host's transport.
+     */
+    public BankServerImpl(String instanceName, String groupName, CurrencyConverter converter, ReplicaHost host, int replicas, String syncBalanceMode, ReplicaOptions options) throws RemoteException {
+        this(instanceName, groupName, converter, host.transport(), replicas, syncBalanceMode, options, host);
+    }
+
+    /**
+     * Reaches the MDServer and peers through the given transport instead of the RMI registry,
+     * e.g. an in-process cluster or a stub MDServer in the benchmarks.
+     */
+    public BankServerImpl(String instanceName, String groupName, CurrencyConverter converter, Transport transport, int replicas, String syncBalanceMode, ReplicaOptions options) throws RemoteException {
+        this(instanceName, groupName, converter, transport, replicas, syncBalanceMode, options, null);
+    }
+
+    private BankServerImpl(String instanceName, String groupName, CurrencyConverter converter, Transport transport, int replicas, String syncBalanceMode, ReplicaOptions options, ReplicaHost host) throws RemoteException {
         super();
         this.instanceName = instanceName;
         this.groupName = groupName;
-        this.converter = converter;
+        this.converter = new CurrencyConverter(converter.snapshot());
         this.initialReplicas = replicas;
         this.syncBalanceMode = syncBalanceMode;
+        this.role = options.role;
+        this.transport = transport;
+        this.commutativeDeposits = options.commutativeDeposits;
+        this.flushIntervalMs = options.flushIntervalMs;
+        this.maxOutstanding = options.maxOutstanding;
+        this.submitTimeoutMs = options.submitTimeoutMs;
+        this.host = host;
+        this.history = new TieredHistory(instanceName, options.historyWindow, options.historyDir);
+        this.checkpoints = new BalanceCheckpoints(options.checkpointEvery);
+        this.relayExecutor = host != null ? host.relayExecutor() : options.executionModel.newExecutor(instanceName + "-relay");
+        if (options.ordering == Ordering.ISIS && (host != null || role != ReplicaRole.VOTING)) {
+            // Hosted accounts flush in the host's frames to the MDServer, and observers and standbys never propose.
+            throw new IllegalArgumentException("--ordering=isis is only for standalone voting replicas, not " + instanceName);
+        }
+        this.ordering = options.ordering == Ordering.ISIS
+                ? new IsisOrdering(instanceName, this, transport, relayExecutor, this::memberSnapshot, this::applyAgreed, this::reportSuspect)
+                : new SequencerOrdering(() -> mdServer);
+        registerMetrics();
+        metrics.startSampling();
 
         try {
-            initializeStateAndRegister(mdServerHostPort);
+            initializeStateAndRegister();
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.error(instanceName + " failed to initialize.", e);
             throw new RemoteException("Failed to initialize bank server state.", e);
         }
+        if (role == ReplicaRole.STANDBY) {
+            ReplicaWarmup.start(instanceName, converter.snapshot(), options.warmupTransactions);
+        }
 
-        // Schedule a task to broadcast outstanding transactions every 10 seconds
-        this.startBroadcastingTask();
+        // Schedule a task to broadcast outstanding transactions every 10 seconds.
+        // Observers never originate transactions, so they have nothing to broadcast.
+        if (host != null) {
+            host.add(this);
+        } else {
+            if (role == ReplicaRole.VOTING) {
+                this.startBroadcastingTask();
+            }
+            startSequencerChecks(options.sequencerCheckMs);
+        }
     }
 
-    private void initializeStateAndRegister(String mdServerHostPort) throws Exception {
+    private void initializeStateAndRegister() throws Exception {
         // Connect to MDServer to see if other replicas already exist
-        String mdServerURL = "rmi://" + mdServerHostPort + "/MDServer";
-        mdServer = (mdserver.MDServerInterface) java.rmi.Naming.lookup(mdServerURL);
+        mdServer = transport.mdServer(groupName);
 
         List<String> currentMembers = mdServer.getGroupMembers(this.groupName);
 
         if (currentMembers.isEmpty()) {
             // This is the first replica, initialize with a clean state
-            System.out.println(instanceName + " is the first replica. Initializing with empty state.");
+            Log.info(instanceName + " is the first replica. Initializing with empty state.");
             for (String currency : converter.supportedCurrencies()) {
                 balances.put(currency, 0.0);
             }
+            checkpoints.record(0, balances, converter.snapshot());
         } else {
             // This is a new replica joining an existing group. Perform state transfer.
-            System.out.println(instanceName + " is joining an existing group. Performing state transfer.");
-            String existingMemberName = currentMembers.get(0); // Pick the first member
-            
-            BankServerInterface existingReplica = (BankServerInterface) java.rmi.Naming.lookup("rmi://" + mdServerHostPort + "/" + existingMemberName);
+            Log.info(instanceName + " is joining an existing group. Performing state transfer.");
+            transferStateFrom(currentMembers.get(0)); // Pick the first member
+        }
+        
+        // Now, officially register with the MD server
+        if (role == ReplicaRole.OBSERVER) {
+            mdServer.registerObserver(this, lastDeliveredSequence);
+        } else if (role == ReplicaRole.STANDBY) {
+            mdServer.registerStandbyReplica(this, lastDeliveredSequence);
+        } else {
+            mdServer.registerReplica(this);
+        }
+        Log.info("Connected to MDServer at " + transport + " as " + role);
+    }
+
+    private void transferStateFrom(String existingMemberName) throws Exception {
+        BankServerInterface existingReplica = lookupPeer(existingMemberName);
+        for (int attempt = 1; ; attempt++) {
             AccountState state = existingReplica.getAccountState();
+            try {
+                // The archived history is paged from the donor outside both locks, straight into our archive
+                history.restore(state.historyFirstOrder, state.archivedEndOrder,
+                        (from, to) -> readHistory(existingReplica, from, to), state.executedList);
+            } catch (IOException e) {
+                // Most likely the donor cleaned its history in the meantime; start over from a fresh state
+                if (attempt == STATE_TRANSFER_ATTEMPTS) {
+                    throw e;
+                }
+                Log.warn("State transfer from " + existingMemberName + " failed, retrying: " + e.getMessage());
+                continue;
+            }
+            applyTransferredState(state);
+            break;
+        }
+        Log.info("State transfer complete. Synced with " + existingMemberName);
+    }
+
+    private synchronized void applyTransferredState(AccountState state) {
+        this.balances = new ConcurrentHashMap<>(state.balances);
+        this.appliedHighWater.clear();
+        this.appliedHighWater.putAll(state.appliedHighWater);
+        this.outstandingCollection = Collections.synchronizedList(new ArrayList<>(state.outstandingCollection));
+        this.orderCounter = state.orderCounter;
+        this.lastDeliveredSequence = state.lastSequence;
+        this.depositLog.restore(state.foldedDeposits, state.foldedDepositTokens, state.unfoldedDeposits);
+        this.converter.replace(state.rates);
+        this.historyIndex.rebuild(history);
+        this.checkpoints.restore(state.checkpoints);
+        for (Map.Entry<String, Long> highWater : appliedHighWater.entrySet()) {
+            releaseSessionReads(highWater.getKey(), highWater.getValue());
+        }
+        Log.info("State transfer details: " + balances.size() + " currencies, " + (history.endOrder() - history.firstOrder()) + " executed transactions, " + outstandingCollection.size() + " outstanding transactions, orderCounter=" + orderCounter + ", lastSequence=" + lastDeliveredSequence);
+    }
 
-            // Apply the state
-            synchronized(this) {
-                this.balances = new ConcurrentHashMap<>(state.balances);
-                this.executedList = Collections.synchronizedList(new ArrayList<>(state.executedList));
-                this.outstandingCollection = Collections.synchronizedList(new ArrayList<>(state.outstandingCollection));
-                this.orderCounter = state.orderCounter;
-                System.out.println("State transfer details: " + balances.size() + " currencies, " + executedList.size() + " executed transactions, " + outstandingCollection.size() + " outstanding transactions, orderCounter=" + orderCounter);
+    /**
+     * One page of a donor's history, which must continue exactly at fromOrder.
+     */
+    private static List<Transaction> readHistory(BankServerInterface donor, int fromOrder, int toOrder) throws IOException {
+        HistoryQuery query = new HistoryQuery();
+        query.fromOrder = fromOrder;
+        query.toOrder = toOrder;
+        query.pageSize = HistoryIndex.MAX_PAGE_SIZE;
+        List<Transaction> page = new ArrayList<>();
+        for (HistoryEntry entry : donor.queryHistory(query).getEntries()) {
+            if (entry.getOrder() != fromOrder + page.size()) {
+                throw new IOException("The donor's history changed: expected order " + (fromOrder + page.size()) + ", got " + entry.getOrder() + ".");
             }
-            System.out.println("State transfer complete. Synced with " + existingMemberName);
+            page.add(new Transaction(entry.getCommand(), entry.getTxId(), entry.getTimestamp()));
         }
-        
-        // Now, officially register with the MD server
-        mdServer.registerReplica(this);
-        System.out.println("Connected to MDServer at " + mdServerURL);
+        return page;
+    }
+
+    private BankServerInterface lookupPeer(String replicaName) throws Exception {
+        BankServerInterface stub = peerStubs.get(replicaName);
+        if (stub == null) {
+            stub = transport.lookup(replicaName);
+            peerStubs.put(replicaName, stub);
+        }
+        return stub;
     }
 
     @Override
     public synchronized AccountState getAccountState() throws RemoteException {
-        // Create a snapshot of the current state to send to a new replica
-        return new AccountState(new HashMap<>(balances), new ArrayList<>(executedList), new ArrayList<>(outstandingCollection), orderCounter);
+        // Only the bounds of the archived history are taken here; the joiner pages it through queryHistory
+        TieredHistory.Snapshot snapshot = history.snapshot();
+        return new AccountState(new HashMap<>(balances), snapshot.recent(), new ArrayList<>(outstandingCollection), orderCounter, lastDeliveredSequence,
+                depositLog.foldedVector(), depositLog.foldedTokens(), depositLog.unfoldedEntries(), converter.snapshot(),
+                snapshot.firstOrder(), snapshot.archivedEndOrder(), new HashMap<>(appliedHighWater), checkpoints.all());
     }
 
     public void awaitInitialSync() throws InterruptedException {
-        System.out.println(instanceName + " is waiting for " + initialReplicas + " replicas to join...");
+        if (role != ReplicaRole.VOTING) {
+            // Observers and standbys do not count towards the initial group, there is nothing to wait for.
+            return;
+        }
+        Log.info(instanceName + " is waiting for " + initialReplicas + " replicas to join...");
         initialSyncLatch.await(); // This line will block until the latch is released
-        System.out.println(instanceName + " initial sync complete. Starting command processing.");
+        Log.info(instanceName + " initial sync complete. Starting command processing.");
     }
 
-    private void startBroadcastingTask() {
+    private synchronized void startBroadcastingTask() {
+        if (broadcastTimer != null) {
+            return; // a standby promoted while its constructor was still running
+        }
         TimerTask task = new TimerTask() {
             @Override
             public void run() {
@@ -110,11 +273,89 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
                     broadcastOutstandingTransactions();
                 } catch (RemoteException e) {
                     String detail = e.getMessage() != null ? e.getMessage() : e.toString();
-                    System.err.println("Error during periodic broadcast: " + detail);
+                    Log.warn("Error during periodic broadcast: " + detail);
                 }
             }
         };
-        broadcastTimer.schedule(task, 10000L, 10000L); // Delay 10s, repeat every 10s
+        broadcastTimer = new Timer();
+        broadcastTimer.schedule(task, flushIntervalMs, flushIntervalMs); // Delay 10s, repeat every 10s by default
+    }
+
+    private void startSequencerChecks(long intervalMs) {
+        if (intervalMs <= 0) {
+            return;
+        }
+        Timer timer = new Timer(instanceName + "-sequencer-check", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                checkSequencer();
+            }
+        }, intervalMs, intervalMs);
+    }
+
+    /**
+     * Probes the MDServer. If it stopped answering or handed our group to another shard, looks
+     * our MDServer up again, which finds the standby once that has taken over or the new shard,
+     * and rejoins there.
+     */
+    private void checkSequencer() {
+        MDServerInterface current = mdServer;
+        try {
+            if (sequencerFenced) {
+                Log.info(instanceName + ": a standby took over from our MDServer.");
+            } else if (current.movedGroups().contains(groupName)) {
+                Log.info(instanceName + ": group " + groupName + " moved to another MDServer shard.");
+            } else {
+                return;
+            }
+        } catch (RemoteException e) {
+            Log.debug(() -> instanceName + " got no heartbeat from the MDServer: " + e.getMessage());
+        }
+        try {
+            // Our own reference can be older than the transport's, which may have failed since as well.
+            rejoin(transport.reconnect(groupName, transport.mdServer(groupName)));
+        } catch (Exception e) {
+            Log.debug(() -> instanceName + " found no MDServer to rejoin yet: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Continues with a new MDServer: registers again, gets the ordered messages we missed,
+     * and sends again what we flushed but have not seen ordered, since the old MDServer may
+     * have lost it. Anything that was ordered after all is skipped when it comes twice.
+     */
+    void rejoin(MDServerInterface fresh) throws RemoteException {
+        fresh.heartbeat(); // the registry still has the failed MDServer until a standby takes over
+        long generation;
+        synchronized (this) {
+            generation = sequencerGeneration;
+        }
+        if (fresh.generation(groupName) < generation) {
+            // A standby fenced it but has not replaced it in the registry yet
+            throw new RemoteException("The MDServer found is older than generation " + generation + ".");
+        }
+        sequencerFenced = false;
+        List<Transaction> resend;
+        synchronized (awaitingOrder) {
+            resend = new ArrayList<>(awaitingOrder.values());
+            awaitingOrder.clear();
+        }
+        long fromSequence;
+        synchronized (this) {
+            mdServer = fresh;
+            fromSequence = lastDeliveredSequence;
+            resend.removeIf(tx -> isBelowHighWater(tx.getUniqueId()));
+            outstandingCollection.addAll(0, resend); // ahead of newer ones, to keep each origin's order
+        }
+        if (role == ReplicaRole.OBSERVER) {
+            fresh.registerObserver(this, fromSequence);
+        } else if (role == ReplicaRole.STANDBY) {
+            fresh.registerStandbyReplica(this, fromSequence);
+        } else {
+            fresh.rejoin(this, fromSequence);
+        }
+        Log.info(instanceName + " rejoined the MDServer after message #" + fromSequence + ", sending " + resend.size() + " unordered transactions again.");
     }
 
     private void broadcastOutstandingTransactions() throws RemoteException {
@@ -122,84 +363,356 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
             return;
         }
 
+        Message message = prepareFlush();
+        if (message == null) {
+            return;
+        }
+
+        Log.debug(() -> instanceName + " broadcasting " + message.getTransactions().size() + " transactions.");
+        try {
+            ordering.submit(message);
+            flushed(message);
+        } catch (OverloadedException e) {
+            // Everything stays outstanding; new submissions are throttled once outstanding is full.
+            overloaded(e.getRetryAfterMs());
+        } catch (RemoteException e) {
+            Log.warn(instanceName + " failed to broadcast transactions: " + e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the outstanding transactions as one message, or null when there are none or the
+     * MDServer asked us to back off. They stay outstanding until flushed() confirms the MDServer
+     * accepted the message.
+     */
+    Message prepareFlush() {
+        if (commutativeDeposits) {
+            disseminateDeposits();
+        }
+        if (System.currentTimeMillis() < flushBackoffUntilMs) {
+            return null;
+        }
+
         List<Transaction> transactionsToBroadcast;
         synchronized (outstandingCollection) {
             if (outstandingCollection.isEmpty()) {
-                return;
+                return null;
             }
             transactionsToBroadcast = new ArrayList<>(outstandingCollection);
         }
+        for (Transaction tx : transactionsToBroadcast) {
+            tx.stamp(TxStage.FLUSHED);
+        }
+        return new Message(instanceName, transactionsToBroadcast);
+    }
+
+    void flushed(Message message) {
+        // Agreed ordering, or a fast MDServer, can have applied them already.
+        synchronized (this) {
+            synchronized (awaitingOrder) {
+                for (Transaction tx : message.getTransactions()) {
+                    if (!isBelowHighWater(tx.getUniqueId())) {
+                        awaitingOrder.put(tx.getUniqueId(), tx);
+                    }
+                }
+            }
+        }
+        synchronized (outstandingCollection) {
+            outstandingCollection.removeAll(message.getTransactions());
+        }
+        metrics.recordFlush(message.getTransactions().size());
+        synchronized (this) {
+            notifyAll(); // wakes submissions throttled in admit()
+        }
+    }
 
-        System.out.println(instanceName + " broadcasting " + transactionsToBroadcast.size() + " transactions.");
+    String groupName() {
+        return groupName;
+    }
 
-        Message message = new Message(instanceName, transactionsToBroadcast);
-        try {
-            mdServer.broadcastMessage(message);
-            synchronized (outstandingCollection) {
-                outstandingCollection.removeAll(transactionsToBroadcast);
+    boolean sequencerFenced() {
+        return sequencerFenced;
+    }
+
+    /**
+     * The MDServer rejected our flush because our group's queue is full; hold off until it drains.
+     */
+    void overloaded(long retryAfterMs) {
+        flushBackoffUntilMs = System.currentTimeMillis() + retryAfterMs;
+        metrics.flushRejections.increment();
+        Log.info(instanceName + " flush rejected by an overloaded MDServer. Retrying in " + retryAfterMs + " ms.");
+    }
+
+    /**
+     * Admission control for new transactions: waits up to submitTimeoutMs for room in
+     * outstandingCollection, then rejects. Must be called holding the lock on this; waiting releases it.
+     */
+    private void admit(String operation) throws OverloadedException {
+        long deadline = System.currentTimeMillis() + submitTimeoutMs;
+        while (outstandingCollection.size() >= maxOutstanding) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                metrics.rejectedSubmissions.increment();
+                long retryAfterMs = Math.max(flushBackoffUntilMs - System.currentTimeMillis(), flushIntervalMs);
+                throw new OverloadedException(instanceName + " has " + outstandingCollection.size()
+                        + " transactions waiting for the MDServer; " + operation + " rejected.", retryAfterMs);
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OverloadedException(operation + " interrupted while throttled.", flushIntervalMs);
             }
+        }
+    }
+
+    // --- Monitoring ---
+
+    private void registerMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                    new ObjectName("bankserver:type=Replica,name=" + ObjectName.quote(instanceName)));
+        } catch (Exception e) {
+            Log.warn("Could not register replica MBean for " + instanceName + ": " + e.getMessage());
+        }
+    }
+
+    int outstandingSize() {
+        return outstandingCollection.size();
+    }
+
+    int executedSize() {
+        return history.recentSize();
+    }
+
+    int archivedSize() {
+        return history.archivedSize();
+    }
+
+    int checkpointCount() {
+        return checkpoints.size();
+    }
+
+    int orderCounter() {
+        return orderCounter;
+    }
+
+    int outstandingCredits() {
+        return Math.max(0, maxOutstanding - outstandingCollection.size());
+    }
+
+    int pendingSyncBalanceRequestCount() {
+        return pendingSyncBalanceRequests.size();
+    }
+
+
+    /**
+     * Lazily spreads our commutative deposits to the other replicas, outside the total order.
+     * This only makes them visible sooner; the ordered barriers carry them regardless.
+     */
+    private void disseminateDeposits() {
+        List<DepositEntry> entries = depositLog.drainUnsent();
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            mdServer.disseminateDeposits(instanceName, entries);
         } catch (RemoteException e) {
-            System.err.println(instanceName + " failed to broadcast transactions: " + e);
-            throw e;
+            Log.warn(instanceName + " failed to disseminate " + entries.size() + " deposits: " + e.getMessage());
+            depositLog.requeueUnsent(entries);
         }
     }
 
+    @Override
+    public void receiveDeposits(List<DepositEntry> entries) throws RemoteException {
+        depositLog.merge(entries);
+        synchronized (this) {
+            // A deposit counts in our balance as soon as we know it, so its session token holds from now on.
+            for (DepositEntry entry : entries) {
+                releaseSessionRead(entry.getTxId());
+            }
+        }
+    }
 
     // --- Transaction commands ---
 
     @Override
-    public synchronized String deposit(String currency, double amount) throws RemoteException {
+    public synchronized String deposit(String currency, double amount) throws RemoteException, OverloadedException {
+        ensureVoting("deposit");
         if (amount == 0.0) {
             throw new IllegalArgumentException("Deposit amount cannot be zero.");
         }
+        if (commutativeDeposits) {
+            // Applied locally right away; no sequencer round trip.
+            String txId = instanceName + " " + outstandingCounter++;
+            depositLog.recordLocal(instanceName, txId, currency.toUpperCase(), amount);
+            return txId;
+        }
+        admit("deposit");
         String command = "deposit " + currency + " " + amount;
-        // Unique ID format: "<Bank server_instance_name> <outstanding_counter>"
-        String txId = instanceName + " " + outstandingCounter++;
-        Transaction tx = new Transaction(command, txId, System.currentTimeMillis());
+        Transaction tx = newTransaction(command);
         outstandingCollection.add(tx);
-        return txId;
+        return tx.getUniqueId();
     }
 
     @Override
-    public synchronized String addInterest(String currency, double percent) throws RemoteException {
+    public synchronized String addInterest(String currency, double percent) throws RemoteException, OverloadedException {
+        ensureVoting("addInterest");
+        admit("addInterest");
         String command = "addInterest " + (currency == null ? "ALL" : currency) + " " + percent;
-        String txId = instanceName + " " + outstandingCounter++;
-        Transaction tx = new Transaction(command, txId, System.currentTimeMillis());
+        Transaction tx = newTransaction(command);
+        outstandingCollection.add(tx);
+        return tx.getUniqueId();
+    }
+
+    @Override
+    public synchronized String updateRates(Map<String, Double> rates) throws RemoteException, OverloadedException {
+        ensureVoting("updateRates");
+        if (rates.isEmpty()) {
+            throw new IllegalArgumentException("No rates given.");
+        }
+        StringBuilder command = new StringBuilder("updateRates");
+        for (Map.Entry<String, Double> rate : rates.entrySet()) {
+            if (!(rate.getValue() > 0)) {
+                throw new IllegalArgumentException("Rate for " + rate.getKey() + " must be positive.");
+            }
+            command.append(' ').append(rate.getKey().toUpperCase()).append(' ').append(rate.getValue());
+        }
+        admit("updateRates");
+        Transaction tx = newTransaction(command.toString());
         outstandingCollection.add(tx);
-        return txId;
+        return tx.getUniqueId();
+    }
+
+    private synchronized Transaction newTransaction(String command) {
+        // Unique ID format: "<Bank server_instance_name> <outstanding_counter>"
+        String txId = instanceName + " " + outstandingCounter++;
+        // In commutative mode every ordered transaction is a barrier that folds in the deposits we know.
+        List<DepositEntry> covered = commutativeDeposits ? depositLog.barrierPayload() : null;
+        return new Transaction(command, txId, System.currentTimeMillis(), covered);
+    }
+
+    private void ensureVoting(String operation) throws RemoteException {
+        if (role == ReplicaRole.OBSERVER) {
+            throw new RemoteException(operation + " is not available on read-only observer " + instanceName);
+        }
+        ensureServing(operation);
+    }
+
+    private void ensureServing(String operation) throws RemoteException {
+        if (role == ReplicaRole.STANDBY) {
+            throw new RemoteException(operation + " is not available on standby " + instanceName + " until it is promoted");
+        }
     }
 
     // --- Balance Queries ---
 
     @Override
     public double getQuickBalance(String currency) throws RemoteException {
-        
-        double totalBalanceInUSD = 0.0;
-        
+        ensureServing("getQuickBalance");
+        // Commutative deposits count as soon as we know them, before any barrier orders them.
+        return balanceIn(currency, commutativeDeposits);
+    }
+
+    private double balanceIn(String currency, boolean includeUnfoldedDeposits) {
+        // One snapshot for the whole sum, so a concurrent rate update cannot mix two tables.
+        RateTable rates = converter.snapshot();
+        int target = rates.requireIndex(currency);
+        double total = 0.0;
+
         // Use a synchronized block to prevent concurrent modification issues while reading balances.
         synchronized (this.balances) {
             for (Map.Entry<String, Double> entry : balances.entrySet()) {
-                String currentCurrency = entry.getKey();
-                Double currentBalance = entry.getValue();
-                
-                // Convert the balance of the current currency to USD and add to the total.
-                totalBalanceInUSD += converter.toUSD(currentCurrency, currentBalance);
+                // Convert the balance of the current currency straight to the target currency.
+                total += rates.convert(rates.requireIndex(entry.getKey()), target, entry.getValue());
             }
         }
-        
-        // Convert the final total from USD to the target currency specified in the parameter.
-        return converter.fromUSD(currency.toUpperCase(), totalBalanceInUSD);
+        if (includeUnfoldedDeposits) {
+            for (Map.Entry<String, Double> entry : depositLog.unfoldedTotals().entrySet()) {
+                total += rates.convert(rates.requireIndex(entry.getKey()), target, entry.getValue());
+            }
+        }
+        return total;
     }
 
     
+    /**
+     * Read-your-writes without an ordered round: waits until the session token's transaction is
+     * applied here, then answers like getQuickBalance. Since each origin's transactions are applied
+     * in the order it created them, the latest token from a replica covers every earlier write to it.
+     */
+    @Override
+    public double getSessionBalance(String currency, String sessionToken) throws RemoteException {
+        ensureServing("getSessionBalance");
+        int separator = sessionToken.lastIndexOf(' ');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Not a session token: " + sessionToken);
+        }
+        String origin = sessionToken.substring(0, separator);
+        long counter = Long.parseLong(sessionToken.substring(separator + 1));
+        CompletableFuture<Void> applied = new CompletableFuture<>();
+        synchronized (this) {
+            if (isBelowHighWater(sessionToken) || (commutativeDeposits && (depositLog.isUnfolded(sessionToken) || depositLog.isFolded(sessionToken)))) {
+                applied.complete(null);
+            } else {
+                sessionWaiters.computeIfAbsent(origin, _ -> new TreeMap<>()).computeIfAbsent(counter, _ -> new ArrayList<>()).add(applied);
+            }
+        }
+        try {
+            applied.get(SESSION_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException | ExecutionException e) {
+            synchronized (this) {
+                NavigableMap<Long, List<CompletableFuture<Void>>> waiting = sessionWaiters.get(origin);
+                if (waiting != null && waiting.containsKey(counter)) {
+                    waiting.get(counter).remove(applied);
+                    if (waiting.get(counter).isEmpty()) {
+                        waiting.remove(counter);
+                    }
+                }
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RemoteException(instanceName + " has not applied " + sessionToken + " yet.", e);
+        }
+        return balanceIn(currency, commutativeDeposits);
+    }
+
+    // Must hold this. Releases the reads waiting for exactly this token, e.g. a deposit's
+    private void releaseSessionRead(String txId) {
+        int separator = txId.lastIndexOf(' ');
+        NavigableMap<Long, List<CompletableFuture<Void>>> waiting = sessionWaiters.get(txId.substring(0, separator));
+        if (waiting != null) {
+            List<CompletableFuture<Void>> waiters = waiting.remove(Long.parseLong(txId.substring(separator + 1)));
+            if (waiters != null) {
+                waiters.forEach(waiter -> waiter.complete(null));
+            }
+        }
+    }
+
+    // Must hold this
+    private void releaseSessionReads(String origin, long highWater) {
+        NavigableMap<Long, List<CompletableFuture<Void>>> waiting = sessionWaiters.get(origin);
+        if (waiting == null) {
+            return;
+        }
+        NavigableMap<Long, List<CompletableFuture<Void>>> covered = waiting.headMap(highWater, true);
+        for (List<CompletableFuture<Void>> waiters : covered.values()) {
+            waiters.forEach(waiter -> waiter.complete(null));
+        }
+        covered.clear();
+    }
+
     @Override
-    public String getSyncedBalance(String currency) throws RemoteException {
+    public String getSyncedBalance(String currency) throws RemoteException, OverloadedException {
+        ensureVoting("getSyncedBalance");
         if ("naive".equalsIgnoreCase(syncBalanceMode)) {
             // --- NAIVE IMPLEMENTATION ---
             // This version waits until the outstanding transaction list is empty before
             // calculating the balance. The PDF warns this can lead to deadlock if
             // new transactions are always being added.
-            System.out.println("Executing getSyncedBalance (NAIVE MODE): Waiting for outstanding transactions to clear...");
+            Log.debug(() -> "Executing getSyncedBalance (NAIVE MODE): Waiting for outstanding transactions to clear...");
             
             while (!outstandingCollection.isEmpty()) {
                 try {
@@ -212,7 +725,7 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
             }
             
             double balance = getQuickBalance(currency);
-            System.out.println("Naive Synced Balance for " + currency + ": " + balance);
+            Log.info("Naive Synced Balance for " + currency + ": " + balance);
             return "Naive balance for " + currency + " is: " + balance;
 
         } else {
@@ -220,15 +733,17 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
             // This version creates a special 'getSyncedBalance' transaction and sends it through
             // the same ordering system as deposit and addInterest.
             // The client call will block and wait until that specific transaction is processed.
-            System.out.println("Executing getSyncedBalance (CORRECT MODE) for " + currency);
+            Log.debug(() -> "Executing getSyncedBalance (CORRECT MODE) for " + currency);
             String command = "getSyncedBalance " + currency;
-            String txId = instanceName + " " + outstandingCounter++;
-            Transaction tx = new Transaction(command, txId, System.currentTimeMillis());
-
+            Transaction tx;
             CompletableFuture<Double> future = new CompletableFuture<>();
-            pendingSyncBalanceRequests.put(txId, future);
-            
-            outstandingCollection.add(tx);
+            synchronized (this) {
+                admit("getSyncedBalance");
+                tx = newTransaction(command);
+                pendingSyncBalanceRequests.put(tx.getUniqueId(), future);
+                outstandingCollection.add(tx);
+            }
+            String txId = tx.getUniqueId();
 
             try {
                 // Trigger an immediate broadcast so this sync query is processed without waiting for the timer.
@@ -237,29 +752,29 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
                 // Block and wait for the transaction to be processed by the applyTransaction method.
                 // A timeout is included to prevent waiting forever.
                 Double balance = future.get(30, TimeUnit.SECONDS); 
-                System.out.println("Correct Synced Balance for " + currency + ": " + balance);
+                Log.info("Correct Synced Balance for " + currency + ": " + balance);
                 return "Correct synced balance for " + currency + " is: " + balance;
             } catch (TimeoutException e) {
                 pendingSyncBalanceRequests.remove(txId);
                 String detail = "Timed out waiting for synced balance for " + currency;
-                System.err.println(detail);
+                Log.warn(detail);
                 throw new RemoteException(detail, e);
             } catch (InterruptedException e) {
                 pendingSyncBalanceRequests.remove(txId);
                 Thread.currentThread().interrupt();
                 String detail = "Interrupted while waiting for synced balance for " + currency;
-                System.err.println(detail);
+                Log.warn(detail);
                 throw new RemoteException(detail, e);
             } catch (ExecutionException e) {
                 pendingSyncBalanceRequests.remove(txId);
                 String detail = e.getCause() != null ? e.getCause().toString() : e.toString();
-                System.err.println("Execution failed while getting synced balance for " + currency + ": " + detail);
+                Log.warn("Execution failed while getting synced balance for " + currency + ": " + detail);
                 throw new RemoteException("Failed to get synced balance for " + currency + ": " + detail, e.getCause());
             }
             catch (Exception e) {
                 pendingSyncBalanceRequests.remove(txId); // Clean up on failure.
                 String detail = e.getMessage() != null ? e.getMessage() : e.toString();
-                System.err.println("Unexpected error getting synced balance for " + currency + ": " + detail);
+                Log.warn("Unexpected error getting synced balance for " + currency + ": " + detail);
                 throw new RemoteException("Failed to get synced balance for " + currency + ": " + detail, e);
             }
         }
@@ -268,24 +783,389 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
     // --- Message Handling & State Machine ---
     
     @Override
-    public void receiveMessage(Message msg) throws RemoteException {
+    public void receiveMessage(Message msg) throws RemoteException, StaleSequencerException {
         // This method is called by the MDServer
-        for (Transaction tx : msg.getTransactions()) {
-            synchronized (this) {
-                // Ensure a transaction is not applied more than once
-                boolean alreadyExecuted = executedList.stream().anyMatch(t -> t.getUniqueId().equals(tx.getUniqueId()));
-                if (!alreadyExecuted) {
-                    applyTransaction(tx);
-                    // Remove from outstanding after it has been ordered and applied
-                    outstandingCollection.removeIf(t -> t.getUniqueId().equals(tx.getUniqueId()));
+        checkGeneration(msg);
+        stampDelivered(msg);
+        if (role != ReplicaRole.VOTING) {
+            receiveObservedMessage(msg);
+            return;
+        }
+        if (host != null) {
+            // Hosted accounts are applied on the host's apply thread for this account; the ACKs follow from there.
+            host.applyExecutor(groupName).execute(() -> {
+                try {
+                    applyAndAck(msg);
+                } catch (RemoteException e) {
+                    Log.warn(instanceName + " failed to ACK message #" + msg.getSequence() + ": " + e.getMessage());
                 }
-            }
+            });
+            return;
+        }
+        applyAndAck(msg);
+    }
+
+    private void applyAndAck(Message msg) throws RemoteException {
+        closePromotionGap(msg);
+        for (Transaction tx : msg.getTransactions()) {
+            boolean applied = applyIfNew(tx);
             // ACK each transaction individually to satisfy the MDServer's logic.
             mdServer.ack(tx.getUniqueId(), this.instanceName);
+            if (applied) {
+                tx.stamp(TxStage.ACKED);
+                latencies.record(tx, TxStage.APPLIED, TxStage.ACKED);
+            }
+        }
+        synchronized (this) {
+            lastDeliveredSequence = Math.max(lastDeliveredSequence, msg.getSequence());
         }
     }
-    
-    private void applyTransaction(Transaction tx) {
+
+    /**
+     * Around a promotion, the last messages of our observer stream and the first ones sent to us
+     * as a member overlap or leave a gap. A gap is filled from the MDServer's retained messages
+     * before the member message is applied, and from then on we are a member like any other.
+     * Overlaps need nothing: applyIfNew skips what the stream already applied.
+     */
+    private void closePromotionGap(Message msg) throws RemoteException {
+        if (!promoted) {
+            return;
+        }
+        long expected;
+        synchronized (this) {
+            expected = lastDeliveredSequence + 1;
+        }
+        if (msg.getSequence() < expected) {
+            return; // still our observer stream draining
+        }
+        if (msg.getSequence() > expected) {
+            Log.info(instanceName + " was promoted before messages #" + expected + " to #" + (msg.getSequence() - 1) + ". Catching up.");
+            catchUpFrom(expected, msg.getSequence());
+        }
+        promoted = false;
+    }
+
+    /**
+     * Applies a message at the position agreed among the replicas. No MDServer delivered it, so
+     * there is nothing to ACK.
+     */
+    private void applyAgreed(Message msg) {
+        stampDelivered(msg);
+        for (Transaction tx : msg.getTransactions()) {
+            applyIfNew(tx);
+        }
+    }
+
+    /**
+     * Turns this standby into a voting replica. The MDServer calls it right before adding us to
+     * the group, so we already ACK the first message it sends us as a member.
+     */
+    @Override
+    public void promote() throws RemoteException {
+        synchronized (this) {
+            if (role != ReplicaRole.STANDBY) {
+                throw new RemoteException(instanceName + " is " + role + ", not a standby.");
+            }
+            promoted = true;
+            role = ReplicaRole.VOTING;
+            Log.info(instanceName + " promoted from standby after message #" + lastDeliveredSequence + " at order " + orderCounter + ".");
+        }
+        if (host == null) {
+            startBroadcastingTask();
+        }
+    }
+
+    @Override
+    public long proposeOrder(String messageId, Message msg) throws RemoteException {
+        return isis().propose(messageId, msg);
+    }
+
+    @Override
+    public void commitOrder(String messageId, long counter, String replica) throws RemoteException {
+        isis().commit(messageId, counter, replica);
+    }
+
+    @Override
+    public void withdrawOrder(String messageId) throws RemoteException {
+        isis().withdraw(messageId);
+    }
+
+    @Override
+    public OrderPosition agreedOrder(String messageId) throws RemoteException {
+        return isis().agreedOrder(messageId);
+    }
+
+    /**
+     * Asks the MDServer to check on a member that did not answer us, without waiting for it.
+     */
+    private void reportSuspect(String member) {
+        relayExecutor.execute(() -> {
+            try {
+                mdServer.suspect(groupName, member);
+            } catch (RemoteException e) {
+                Log.warn(instanceName + " could not report " + member + " to the MDServer: " + e.getMessage());
+            }
+        });
+    }
+
+    private IsisOrdering isis() throws RemoteException {
+        if (ordering instanceof IsisOrdering isis) {
+            return isis;
+        }
+        throw new RemoteException(instanceName + " is ordered by the MDServer, not by agreement among the replicas.");
+    }
+
+    @Override
+    public List<String> relayMessage(Message msg, long epoch, int fanout) throws RemoteException, StaleSequencerException {
+        checkGeneration(msg);
+        stampDelivered(msg);
+        // Without the same membership epoch we cannot derive the MDServer's tree, so we only
+        // apply the message ourselves and the MDServer sends to our subtree directly.
+        List<String> order;
+        synchronized (this) {
+            order = epoch == membershipEpoch ? DisseminationTree.layout(members) : List.of();
+        }
+        // One deadline for the whole reply, however many children are slow.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RELAY_TIMEOUT_MS);
+        List<Future<List<String>>> forwards = new ArrayList<>();
+        for (String child : DisseminationTree.children(order, fanout, instanceName)) {
+            forwards.add(relayExecutor.submit(() -> forwardTo(child, msg, epoch, fanout, order)));
+        }
+
+        // Hosted accounts apply on the host's apply thread, like messages that come straight from the MDServer.
+        Future<Message> own = host != null
+                ? CompletableFuture.supplyAsync(() -> applyRelayed(msg), host.applyExecutor(groupName))
+                : CompletableFuture.completedFuture(applyRelayed(msg));
+
+        // Aggregate our own and our children's ACKs into a single reply.
+        List<String> applied = new ArrayList<>();
+        if (awaitRelay(own, deadline) != null) {
+            applied.add(instanceName);
+        }
+        for (Future<List<String>> forward : forwards) {
+            List<String> subtree = awaitRelay(forward, deadline);
+            if (subtree != null) {
+                applied.addAll(subtree);
+            }
+        }
+        return applied;
+    }
+
+    private Message applyRelayed(Message msg) {
+        try {
+            closePromotionGap(msg);
+        } catch (RemoteException e) {
+            Log.warn(instanceName + " could not catch up before relayed message #" + msg.getSequence() + ": " + e.getMessage());
+            return null; // not applied; the MDServer resends to us directly
+        }
+        for (Transaction tx : msg.getTransactions()) {
+            applyIfNew(tx);
+        }
+        synchronized (this) {
+            lastDeliveredSequence = Math.max(lastDeliveredSequence, msg.getSequence());
+        }
+        return msg;
+    }
+
+    /**
+     * The result, or null if it is not there by the deadline. Whoever did not answer in time is
+     * left to the MDServer's own resend.
+     */
+    private static <T> T awaitRelay(Future<T> pending, long deadline) {
+        try {
+            return pending.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            pending.cancel(true);
+            return null;
+        }
+    }
+
+    private List<String> forwardTo(String child, Message msg, long epoch, int fanout, List<String> order) {
+        try {
+            return lookupPeer(child).relayMessage(msg, epoch, fanout);
+        } catch (Exception e) {
+            // Keep the failed child's subtree reachable by taking over its children until
+            // the MDServer evicts it and the next epoch rebuilds a balanced tree.
+            peerStubs.remove(child);
+            Log.warn(instanceName + " could not relay message #" + msg.getSequence() + " to " + child + ". Forwarding to its children.");
+            List<String> applied = new ArrayList<>();
+            for (String grandchild : DisseminationTree.children(order, fanout, child)) {
+                applied.addAll(forwardTo(grandchild, msg, epoch, fanout, order));
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * Refuses a message from an MDServer that a standby has taken over from, e.g. one that was
+     * only cut off from the standby and is still running. Its messages never reach the other
+     * replicas either, and the refusal tells it to stop ordering the group.
+     */
+    private synchronized void checkGeneration(Message msg) throws StaleSequencerException {
+        if (msg.getGeneration() < sequencerGeneration) {
+            throw new StaleSequencerException(instanceName + " follows MDServer generation " + sequencerGeneration
+                    + ", message #" + msg.getSequence() + " is from generation " + msg.getGeneration() + ".", sequencerGeneration);
+        }
+        sequencerGeneration = msg.getGeneration();
+    }
+
+    @Override
+    public synchronized long fenceSequencer(long generation) {
+        if (generation > sequencerGeneration) {
+            Log.info(instanceName + " follows MDServer generation " + generation + " from now on.");
+            sequencerGeneration = generation;
+            sequencerFenced = true; // ACKs and broadcasts go to the successor once we have rejoined it
+        }
+        return lastDeliveredSequence;
+    }
+
+    private void stampDelivered(Message msg) {
+        for (Transaction tx : msg.getTransactions()) {
+            tx.stamp(TxStage.DELIVERED);
+        }
+    }
+
+    /**
+     * Applies an ordered transaction unless it was applied before.
+     *
+     * Relies on each origin's transactions entering the total order in the order it created
+     * them, so that its highest applied counter covers every repeat: a replica flushes its
+     * outstanding transactions oldest first and keeps them until the flush succeeded, rejoin()
+     * puts what it sends again ahead of newer ones, and agreed ordering runs one round per
+     * sender at a time. A repeat can still come after newer transactions (a resend after a
+     * failover) and is skipped. A transaction that comes after a newer one without having been
+     * applied would be skipped on every replica alike, so state stays equal, but it is lost;
+     * the origin reports it, since only the origin knows it was never applied.
+     */
+    private synchronized boolean applyIfNew(Transaction tx) {
+        if (isBelowHighWater(tx.getUniqueId())) {
+            boolean neverApplied;
+            synchronized (awaitingOrder) {
+                neverApplied = awaitingOrder.remove(tx.getUniqueId()) != null;
+            }
+            if (neverApplied) {
+                Log.error(instanceName + ": transaction " + tx.getUniqueId() + " was ordered after a newer one of ours and is skipped everywhere.");
+            }
+            return false;
+        }
+        String txId = tx.getUniqueId();
+        int separator = txId.lastIndexOf(' ');
+        String origin = txId.substring(0, separator);
+        long counter = Long.parseLong(txId.substring(separator + 1));
+        appliedHighWater.put(origin, counter);
+        if (commutativeDeposits) {
+            depositLog.coveredUpTo(origin, counter);
+        }
+        applyTransaction(tx);
+        releaseSessionReads(origin, counter);
+        // Remove from outstanding after it has been ordered and applied
+        outstandingCollection.removeIf(t -> t.getUniqueId().equals(tx.getUniqueId()));
+        synchronized (awaitingOrder) {
+            awaitingOrder.remove(txId);
+        }
+        recordApplied(tx);
+        return true;
+    }
+
+    // Transaction ids are "<origin instance name> <counter>"
+    private boolean isBelowHighWater(String txId) {
+        int separator = txId.lastIndexOf(' ');
+        if (separator < 0) {
+            return false;
+        }
+        long counter = Long.parseLong(txId.substring(separator + 1));
+        return counter <= appliedHighWater.getOrDefault(txId.substring(0, separator), -1L);
+    }
+
+    private void recordApplied(Transaction tx) {
+        metrics.applied.increment();
+        tx.stamp(TxStage.APPLIED);
+        if (tx.getUniqueId().startsWith(instanceName)) {
+            // Only the origin knows how long the transaction waited to be flushed.
+            latencies.record(tx, TxStage.CREATED, TxStage.FLUSHED);
+        }
+        latencies.record(tx, TxStage.SENT, TxStage.DELIVERED);
+        latencies.record(tx, TxStage.DELIVERED, TxStage.APPLIED);
+        latencies.record(tx, TxStage.CREATED, TxStage.APPLIED);
+    }
+
+    @Override
+    public String getLatencyReport() throws RemoteException {
+        return latencies.report(instanceName);
+    }
+
+    /**
+     * Observers get the ordered stream best-effort, so messages can be missing or repeated.
+     * Anything already applied is skipped, and a gap is filled from the MDServer's retained messages
+     * (or, if we fell out of that window, by a fresh state transfer) before applying the message.
+     */
+    private void receiveObservedMessage(Message msg) throws RemoteException {
+        long expected;
+        synchronized (this) {
+            if (msg.getSequence() <= lastDeliveredSequence) {
+                return;
+            }
+            expected = lastDeliveredSequence + 1;
+        }
+        if (msg.getSequence() > expected) {
+            Log.info(instanceName + " missed messages #" + expected + " to #" + (msg.getSequence() - 1) + ". Catching up.");
+            catchUpFrom(expected, Long.MAX_VALUE);
+        }
+        applyObservedMessage(msg);
+    }
+
+    /**
+     * Applies the retained messages from fromSequence up to, not including, untilSequence.
+     */
+    private void catchUpFrom(long fromSequence, long untilSequence) throws RemoteException {
+        List<Message> missed = mdServer.getRetainedMessages(groupName, fromSequence);
+        if (missed.isEmpty() || missed.get(0).getSequence() > fromSequence) {
+            // The MDServer no longer has everything we need; start over from a voting member's state.
+            Log.warn(instanceName + " fell behind the retained messages. Re-transferring state.");
+            List<String> currentMembers = mdServer.getGroupMembers(groupName);
+            if (currentMembers.isEmpty()) {
+                return;
+            }
+            try {
+                transferStateFrom(currentMembers.get(0));
+            } catch (Exception e) {
+                throw new RemoteException("Observer resync failed for " + instanceName, e);
+            }
+            long resumeFrom;
+            synchronized (this) {
+                resumeFrom = lastDeliveredSequence + 1;
+            }
+            missed = mdServer.getRetainedMessages(groupName, resumeFrom);
+        }
+        for (Message m : missed) {
+            if (m.getSequence() >= untilSequence) {
+                break;
+            }
+            applyObservedMessage(m);
+        }
+    }
+
+    private synchronized void applyObservedMessage(Message msg) {
+        if (msg.getSequence() != lastDeliveredSequence + 1) {
+            return; // Duplicate, or still behind a gap that the next catch-up fills.
+        }
+        for (Transaction tx : msg.getTransactions()) {
+            applyIfNew(tx);
+        }
+        lastDeliveredSequence = msg.getSequence();
+    }
+
+    // Package-private so the benchmarks can drive the state machine directly.
+    void applyTransaction(Transaction tx) {
+        // A barrier first folds in the commutative deposits it covers, as if they were ordered right before it.
+        for (DepositEntry entry : depositLog.fold(tx.getCoveredDeposits())) {
+            applyTransaction(entry.toTransaction());
+            // Folded without going through applyIfNew; a deposit we never got lazily is only known from here on
+            synchronized (this) {
+                releaseSessionRead(entry.getTxId());
+            }
+        }
+
         String[] parts = tx.getCommand().split("\\s+");
         String command = parts[0];
 
@@ -293,76 +1173,71 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
             if (tx.getUniqueId().startsWith(this.instanceName)) {
                 String currency = parts[1];
                 try {
-                    double balance = getQuickBalance(currency);
+                    // Only the ordered state, never deposits that are not folded in yet.
+                    double balance = balanceIn(currency, false);
                     CompletableFuture<Double> future = pendingSyncBalanceRequests.remove(tx.getUniqueId());
                     if (future != null) {
                         future.complete(balance);
                     }
-                } catch (RemoteException e) {
+                } catch (IllegalArgumentException e) {
                     String detail = e.getMessage() != null ? e.getMessage() : e.toString();
-                    System.err.println("Error getting synced balance for " + currency + ": " + detail);
+                    Log.warn("Error getting synced balance for " + currency + ": " + detail);
                 }
             }
             return;
         }
 
-        System.out.println("Applying state change for command: " + tx.getCommand());
-        switch (command) {
-            case "deposit": {
-                String currency = parts[1].toUpperCase();
-                double amount = Double.parseDouble(parts[2]);
-                
-                // Add the amount directly to the specific currency's balance
-                balances.merge(currency, amount, Double::sum);
-                System.out.println("Deposited " + amount + " " + currency + ". New balance: " + balances.get(currency));
-                break;
-            }
-            case "addInterest": {
-                double percent = Double.parseDouble(parts[parts.length - 1]);
-                double factor = 1.0 + (percent / 100.0);
-                
-                // Case 1: A specific currency is provided
-                if (parts.length == 3 && !"ALL".equalsIgnoreCase(parts[1])) {
-                    String currency = parts[1].toUpperCase();
-                    balances.computeIfPresent(currency, (_, v) -> v * factor);
-                    System.out.println("Applied " + percent + "% interest to " + currency + ". New balance: " + balances.get(currency));
-                } 
-                // Case 2: No currency is specified, apply to all 
-                else {
-                    System.out.println("Applying " + percent + "% interest to ALL currencies.");
-                    balances.replaceAll((_, balance) -> balance * factor);
-                }
-                break;
-            }
+        Log.debug(() -> "Applying state change for command: " + tx.getCommand());
+        RateTable rates = converter.snapshot();
+        RateTable next = AccountStateMachine.rates(parts, rates);
+        if (next != rates) {
+            // Every replica switches here, at the same orderCounter.
+            converter.install(next);
+            Log.info(instanceName + " switched to trading rates " + next + " at order " + (orderCounter + 1));
         }
-        
+        AccountStateMachine.apply(parts, balances);
+
         orderCounter++;
-        executedList.add(tx);
+        history.add(tx);
+        historyIndex.add(orderCounter, tx);
+        checkpoints.afterOrder(orderCounter, balances, next);
     }
     
     // --- History and Status ---
     
+    @Override
+    public synchronized HistoryPage queryHistory(HistoryQuery query) throws RemoteException {
+        return historyIndex.query(query, history::get);
+    }
+
     @Override
     public void getHistory() throws RemoteException {
-        // Correctly formatted history output
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n--- Transaction History for ").append(instanceName).append(" ---\n");
-        
-        sb.append("Executed Transactions (orderCounter: ").append(orderCounter).append("):\n");
-        if (!executedList.isEmpty()) {
-            int startOrder = orderCounter - executedList.size() + 1;
-            SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss.SSS");
-            for (int i = 0; i < executedList.size(); i++) {
-                Transaction tx = executedList.get(i);
-                sb.append(String.format("%d. [%s] %s%n",
-                        startOrder + i,
-                        sdf.format(new Date(tx.getTimestamp())),
-                        tx.getCommand()));
+        // Printed a page at a time, so a long history is never built up in one string
+        Log.info("\n--- Transaction History for " + instanceName + " ---\n"
+                + "Executed Transactions (orderCounter: " + orderCounter + "):");
+        HistoryQuery query = new HistoryQuery();
+        query.pageSize = 1000;
+        HistoryPage page;
+        boolean empty = true;
+        do {
+            page = queryHistory(query);
+            if (!page.getEntries().isEmpty()) {
+                empty = false;
+                StringBuilder sb = new StringBuilder();
+                for (HistoryEntry entry : page.getEntries()) {
+                    sb.append(entry.getOrder()).append(". [").append(HISTORY_TIME.format(Instant.ofEpochMilli(entry.getTimestamp())))
+                            .append("] ").append(entry.getCommand()).append('\n');
+                }
+                sb.setLength(sb.length() - 1);
+                Log.info(sb.toString());
             }
-        } else {
+            query.cursor = page.getNextCursor();
+        } while (page.hasMore());
+
+        StringBuilder sb = new StringBuilder();
+        if (empty) {
             sb.append(" (empty)\n");
         }
-
         sb.append("\nOutstanding Transactions:\n");
         if (!outstandingCollection.isEmpty()) {
             for (Transaction tx : outstandingCollection) {
@@ -372,43 +1247,123 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
             sb.append(" (empty)\n");
         }
         sb.append("------------------------------------------\n");
-        System.out.println(sb.toString());
+        Log.info(sb.toString());
     }
     
+    /**
+     * Starts from the nearest checkpoint at or before the order and replays the history after it.
+     */
+    @Override
+    public synchronized BalanceSnapshot getBalancesAt(int order) throws RemoteException {
+        ensureServing("getBalancesAt");
+        if (order < 0 || order > orderCounter) {
+            throw new IllegalArgumentException("Order " + order + " is not applied on " + instanceName + ", which is at order " + orderCounter);
+        }
+        BalanceSnapshot start = checkpoints.floor(order);
+        if (start == null || (start.getOrder() < order && start.getOrder() + 1 < history.firstOrder())) {
+            throw new IllegalArgumentException("The history before order " + order + " was cleaned and no checkpoint covers it.");
+        }
+        Map<String, Double> replayed = start.getBalances();
+        RateTable rates = start.getRates();
+        for (int next = start.getOrder() + 1; next <= order; next++) {
+            String[] parts = history.get(next).getCommand().split("\\s+");
+            rates = AccountStateMachine.rates(parts, rates);
+            AccountStateMachine.apply(parts, replayed);
+        }
+        return new BalanceSnapshot(order, replayed, rates);
+    }
+
     @Override
     public synchronized void cleanHistory() {
-        executedList.clear();
+        history.clear(orderCounter + 1);
+        historyIndex.clear(orderCounter + 1);
+        checkpoints.record(orderCounter, balances, converter.snapshot()); // later orders can still be replayed from here
         // Note: order_counter and outstanding_counter are not reset
     }
 
     @Override
     public synchronized void checkTxStatus(String txId) {
-        boolean executed = executedList.stream().anyMatch(tx -> tx.getUniqueId().equals(txId));
+        boolean executed = history.recentlyContains(txId) || isBelowHighWater(txId);
         boolean outstanding = outstandingCollection.stream().anyMatch(tx -> tx.getUniqueId().equals(txId));
+        boolean unordered = depositLog.unfoldedEntries().stream().anyMatch(entry -> entry.getTxId().equals(txId));
 
-        if (executed) {
-            System.out.println("Transaction " + txId + " has been executed.");
-        } else if (outstanding) {
-            System.out.println("Transaction " + txId + " is outstanding.");
+        // Outstanding and commutative deposits first: their counters can be below the ordered high-water mark.
+        if (outstanding) {
+            Log.info("Transaction " + txId + " is outstanding.");
+        } else if (unordered) {
+            Log.info("Transaction " + txId + " is applied as a commutative deposit, not yet ordered.");
+        } else if (executed) {
+            Log.info("Transaction " + txId + " has been executed.");
         } else {
-            System.out.println("Transaction " + txId + " not found.");
+            Log.info("Transaction " + txId + " not found.");
         }
     }
 
     @Override
     public synchronized void printMembers() {
-        System.out.println("Current members: " + members);
+        Log.info("Current members (epoch " + membershipEpoch + "): " + members);
+    }
+
+    @Override
+    public void updateMembership(GroupInfo groupInfo) throws RemoteException {
+        synchronized (this) {
+            // Snapshots are pushed concurrently, so an older one may arrive after a newer one.
+            if (groupInfo.getEpoch() <= membershipEpoch) {
+                return;
+            }
+            members.clear();
+            members.addAll(groupInfo.getMembers());
+            membershipEpoch = groupInfo.getEpoch();
+            Log.info(instanceName + " membership updated (epoch " + membershipEpoch + "): " + members);
+            checkInitialGroupFormed();
+        }
+        // Outside our lock: the ordering engine may apply messages, which takes it.
+        ordering.membersChanged(memberSnapshot());
     }
 
     @Override
-    public synchronized void updateMembership(GroupInfo groupInfo) throws RemoteException {
-        members.clear();
-        members.addAll(groupInfo.getMembers());
-        System.out.println(instanceName + " membership updated: " + members);
+    public void updateMembershipDelta(MembershipDelta delta) throws RemoteException {
+        boolean needsResync = false;
+        boolean changed = false;
+        synchronized (this) {
+            if (delta.getEpoch() <= membershipEpoch) {
+                return; // Already covered by a snapshot or an earlier delta.
+            }
+            // A delta only applies on top of the epoch right before it, and has to agree with our member list.
+            boolean consistent = delta.getEpoch() == membershipEpoch + 1
+                    && delta.getJoined().stream().noneMatch(members::contains)
+                    && members.containsAll(delta.getLeft());
+            if (consistent) {
+                members.removeAll(delta.getLeft());
+                members.addAll(delta.getJoined());
+                membershipEpoch = delta.getEpoch();
+                Log.info(instanceName + " membership updated (epoch " + membershipEpoch + "): " + members);
+                checkInitialGroupFormed();
+                changed = true;
+            } else {
+                needsResync = true;
+            }
+        }
+
+        if (needsResync) {
+            // Fetched outside the lock so the MDServer is never blocked on us.
+            Log.info(instanceName + " missed a membership epoch (at " + membershipEpoch + ", got " + delta.getEpoch() + "). Requesting full resync.");
+            updateMembership(mdServer.getGroupInfo(groupName));
+        } else if (changed) {
+            ordering.membersChanged(memberSnapshot());
+        }
+    }
+
+    private List<String> memberSnapshot() {
+        synchronized (members) {
+            return new ArrayList<>(members);
+        }
+    }
 
+    private void checkInitialGroupFormed() {
         // Check if the initial group has formed
         if (members.size() >= initialReplicas && initialSyncLatch.getCount() > 0) {
-            System.out.println("Initial replica count of " + initialReplicas + " reached. Releasing sync latch.");
+            Log.info("Initial replica count of " + initialReplicas + " reached. Releasing sync latch.");
             initialSyncLatch.countDown(); // Release the latch
         }
     }
@@ -420,6 +1375,6 @@ public class BankServerImpl extends UnicastRemoteObject implements BankServerInt
 
     @Override
     public void ack(String messageId) {
-        System.out.println(instanceName + " ACK received for " + messageId);
+        Log.debug(() -> instanceName + " ACK received for " + messageId);
     }
 }
@@ -1,31 +1,76 @@
 package bankserver;
 
 import common.AccountState;
+import common.BalanceSnapshot;
+import common.DepositEntry;
 import common.GroupInfo;
+import common.HistoryPage;
+import common.HistoryQuery;
+import common.MembershipDelta;
 import common.Message;
+import common.OrderPosition;
+import common.OverloadedException;
+import common.StaleSequencerException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 
 public interface BankServerInterface extends Remote {
 
     // --- Transactions ---
-    String deposit(String currency, double amount) throws RemoteException;
-    String addInterest(String currency, double percent) throws RemoteException;
-    String getSyncedBalance(String currency) throws RemoteException;
+    // These three are rejected with OverloadedException while too many transactions are outstanding
+    String deposit(String currency, double amount) throws RemoteException, OverloadedException;
+    String addInterest(String currency, double percent) throws RemoteException, OverloadedException;
+    String getSyncedBalance(String currency) throws RemoteException, OverloadedException;
     double getQuickBalance(String currency) throws RemoteException;
+    // Balances right after the given orderCounter, with the rates in effect then; total() converts to any currency
+    BalanceSnapshot getBalancesAt(int order) throws RemoteException;
+    // Read-your-writes: the local balance once this replica has applied the transaction whose id is the
+    // session token, as returned by deposit/addInterest/updateRates. Waits for it without going to the MDServer
+    double getSessionBalance(String currency, String sessionToken) throws RemoteException;
+    // New trading rates, applied by every replica at the same point in the total order
+    String updateRates(Map<String, Double> rates) throws RemoteException, OverloadedException;
 
     // --- History / status ---
     void getHistory() throws RemoteException;
+    // One page of executed transactions matching the query; continue with the page's next cursor
+    HistoryPage queryHistory(HistoryQuery query) throws RemoteException;
     void cleanHistory() throws RemoteException;
     void checkTxStatus(String txId) throws RemoteException;
+    // p50/p99/p999 per transaction lifecycle stage, as seen by this replica
+    String getLatencyReport() throws RemoteException;
 
     // --- Membership ---
     void printMembers() throws RemoteException;
     void updateMembership(GroupInfo groupInfo) throws RemoteException;
+    void updateMembershipDelta(MembershipDelta delta) throws RemoteException;
+    // A standby becomes a voting replica; the MDServer calls this right before adding it to the group
+    void promote() throws RemoteException;
 
     // --- Messaging from MDServer ---
-    void receiveMessage(Message msg) throws RemoteException;
+    // Both reject messages of an MDServer generation older than one already seen
+    void receiveMessage(Message msg) throws RemoteException, StaleSequencerException;
+    // Tree dissemination: apply, forward to our children for that membership epoch, and
+    // return the names of every replica in our subtree that applied the message
+    List<String> relayMessage(Message msg, long epoch, int fanout) throws RemoteException, StaleSequencerException;
+    // A standby took over as the MDServer with this generation; older ones are refused from now on.
+    // Returns the last sequence number we were delivered, which the successor continues above
+    long fenceSequencer(long generation) throws RemoteException;
     void ack(String messageId) throws RemoteException;
+    // Commutative deposits from other replicas, outside the total order
+    void receiveDeposits(List<DepositEntry> entries) throws RemoteException;
+
+    // --- Agreed ordering among the replicas (--ordering=isis) ---
+    // Queues the message as not yet agreed and returns our proposed position for it
+    long proposeOrder(String messageId, Message msg) throws RemoteException;
+    // The agreed position: the highest proposal, and the replica that made it
+    void commitOrder(String messageId, long counter, String replica) throws RemoteException;
+    // The sender gave up on the message because a member did not propose
+    void withdrawOrder(String messageId) throws RemoteException;
+    // The agreed position of a message we have the commit of, or null. Asked by members whose
+    // commit got lost when the message's sender left the group
+    OrderPosition agreedOrder(String messageId) throws RemoteException;
 
     // --- State Transfer ---
     AccountState getAccountState() throws RemoteException;
@@ -0,0 +1,201 @@
+package bankserver;
+
+import common.DepositEntry;
+
+import java.util.*;
+
+/**
+ * Deposit log for the commutative fast path.
+ *
+ * Deposits commute with each other, so they are applied locally right away and spread
+ * lazily instead of going through the sequencer. Each replica keeps a grow-only set of
+ * the deposits it knows, per origin replica. Only the ordered barriers (addInterest and
+ * sync markers) fold deposits into the ordered balances: a barrier carries the unfolded
+ * deposits its issuer knew, and every replica folds exactly the same ones at the same
+ * point in the total order. The result is identical to a strict total order in which
+ * the folded deposits were placed right before the barrier.
+ */
+class CommutativeDeposits {
+    // origin -> deposits known but not folded yet, by seq
+    private final Map<String, NavigableMap<Long, DepositEntry>> unfolded = new HashMap<>();
+    // origin -> highest seq folded into the ordered balances
+    private final Map<String, Long> folded = new HashMap<>();
+    // origin -> counters of the folded deposits' session tokens, as ranges first -> last. Only those
+    // above the origin's ordered high-water mark are kept; the mark answers for the ones below it
+    private final Map<String, NavigableMap<Long, Long>> foldedTokens = new HashMap<>();
+    // our own deposits that have not been sent to the other replicas yet
+    private final List<DepositEntry> unsent = new ArrayList<>();
+    private long localSeq = 0;
+
+    synchronized DepositEntry recordLocal(String origin, String txId, String currency, double amount) {
+        DepositEntry entry = new DepositEntry(origin, ++localSeq, txId, currency, amount, System.currentTimeMillis());
+        add(entry);
+        unsent.add(entry);
+        return entry;
+    }
+
+    synchronized void merge(Collection<DepositEntry> entries) {
+        for (DepositEntry entry : entries) {
+            add(entry);
+        }
+    }
+
+    private void add(DepositEntry entry) {
+        if (entry.getSeq() > folded.getOrDefault(entry.getOrigin(), 0L)) {
+            unfolded.computeIfAbsent(entry.getOrigin(), _ -> new TreeMap<>()).putIfAbsent(entry.getSeq(), entry);
+        }
+    }
+
+    synchronized List<DepositEntry> drainUnsent() {
+        List<DepositEntry> drained = new ArrayList<>(unsent);
+        unsent.clear();
+        return drained;
+    }
+
+    synchronized void requeueUnsent(List<DepositEntry> entries) {
+        unsent.addAll(0, entries);
+    }
+
+    /**
+     * The payload of a new barrier: for each origin, the unfolded deposits we know without gaps.
+     */
+    synchronized List<DepositEntry> barrierPayload() {
+        List<DepositEntry> payload = new ArrayList<>();
+        for (Map.Entry<String, NavigableMap<Long, DepositEntry>> origin : unfolded.entrySet()) {
+            long next = folded.getOrDefault(origin.getKey(), 0L) + 1;
+            for (DepositEntry entry : origin.getValue().values()) {
+                if (entry.getSeq() != next) {
+                    break;
+                }
+                payload.add(entry);
+                next++;
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * Advances the folded vector to cover a barrier's payload and returns the deposits
+     * that now have to be applied to the ordered balances, in the same order on every replica.
+     * Deposits folded by an earlier barrier are skipped, so the cut only depends on the order
+     * of the barriers and not on what each replica happened to receive lazily.
+     */
+    synchronized List<DepositEntry> fold(List<DepositEntry> payload) {
+        List<DepositEntry> toApply = new ArrayList<>();
+        for (DepositEntry entry : payload) {
+            if (entry.getSeq() > folded.getOrDefault(entry.getOrigin(), 0L)) {
+                toApply.add(entry);
+            }
+        }
+        toApply.sort(Comparator.comparing(DepositEntry::getOrigin).thenComparingLong(DepositEntry::getSeq));
+        for (DepositEntry entry : toApply) {
+            folded.merge(entry.getOrigin(), entry.getSeq(), Math::max);
+            addFoldedToken(entry.getTxId());
+        }
+        for (Map.Entry<String, Long> origin : folded.entrySet()) {
+            NavigableMap<Long, DepositEntry> pending = unfolded.get(origin.getKey());
+            if (pending != null) {
+                pending.headMap(origin.getValue(), true).clear();
+            }
+        }
+        return toApply;
+    }
+
+    /**
+     * Per-currency sum of the deposits known but not folded yet; what getQuickBalance adds
+     * on top of the ordered balances.
+     */
+    synchronized Map<String, Double> unfoldedTotals() {
+        Map<String, Double> totals = new HashMap<>();
+        for (NavigableMap<Long, DepositEntry> origin : unfolded.values()) {
+            for (DepositEntry entry : origin.values()) {
+                totals.merge(entry.getCurrency(), entry.getAmount(), Double::sum);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Whether the deposit is known here but not folded yet, so it already counts in the unfolded totals.
+     */
+    synchronized boolean isUnfolded(String txId) {
+        for (NavigableMap<Long, DepositEntry> entries : unfolded.values()) {
+            for (DepositEntry entry : entries.values()) {
+                if (entry.getTxId().equals(txId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Counters grow with seq at the origin, so a run of deposits without ordered transactions in between is one range
+    private void addFoldedToken(String txId) {
+        int separator = txId.lastIndexOf(' ');
+        long counter = Long.parseLong(txId.substring(separator + 1));
+        NavigableMap<Long, Long> ranges = foldedTokens.computeIfAbsent(txId.substring(0, separator), _ -> new TreeMap<>());
+        Map.Entry<Long, Long> last = ranges.floorEntry(counter);
+        if (last != null && last.getValue() >= counter - 1) {
+            ranges.put(last.getKey(), Math.max(last.getValue(), counter));
+        } else {
+            ranges.put(counter, counter);
+        }
+    }
+
+    /**
+     * Whether the deposit with this session token was folded into the ordered balances here,
+     * and is not covered by its origin's ordered high-water mark yet.
+     */
+    synchronized boolean isFolded(String txId) {
+        int separator = txId.lastIndexOf(' ');
+        NavigableMap<Long, Long> ranges = foldedTokens.get(txId.substring(0, separator));
+        if (ranges == null) {
+            return false;
+        }
+        long counter = Long.parseLong(txId.substring(separator + 1));
+        Map.Entry<Long, Long> range = ranges.floorEntry(counter);
+        return range != null && counter <= range.getValue();
+    }
+
+    /**
+     * Forgets the folded tokens of an origin that its ordered high-water mark now covers.
+     */
+    synchronized void coveredUpTo(String origin, long highWater) {
+        NavigableMap<Long, Long> ranges = foldedTokens.get(origin);
+        if (ranges == null) {
+            return;
+        }
+        ranges.headMap(highWater, true).values().removeIf(last -> last <= highWater);
+        if (ranges.isEmpty()) {
+            foldedTokens.remove(origin);
+        }
+    }
+
+    synchronized Map<String, NavigableMap<Long, Long>> foldedTokens() {
+        Map<String, NavigableMap<Long, Long>> copy = new HashMap<>();
+        foldedTokens.forEach((origin, ranges) -> copy.put(origin, new TreeMap<>(ranges)));
+        return copy;
+    }
+
+    synchronized Map<String, Long> foldedVector() {
+        return new HashMap<>(folded);
+    }
+
+    synchronized List<DepositEntry> unfoldedEntries() {
+        List<DepositEntry> entries = new ArrayList<>();
+        unfolded.values().forEach(origin -> entries.addAll(origin.values()));
+        return entries;
+    }
+
+    /**
+     * Replaces the log with the one received in a state transfer.
+     */
+    synchronized void restore(Map<String, Long> foldedVector, Map<String, NavigableMap<Long, Long>> tokens, List<DepositEntry> unfoldedEntries) {
+        folded.clear();
+        unfolded.clear();
+        foldedTokens.clear();
+        folded.putAll(foldedVector);
+        tokens.forEach((origin, ranges) -> foldedTokens.put(origin, new TreeMap<>(ranges)));
+        merge(unfoldedEntries);
+    }
+}
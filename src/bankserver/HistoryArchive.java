@@ -0,0 +1,150 @@
+package bankserver;
+
+import common.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executed transactions that fell out of a replica's in-heap window, in two memory-mapped files.
+ *
+ * The data file holds one record per transaction: creation time, id and command, with the
+ * strings as length-prefixed UTF-8. The index file holds the data offset of each record, 8 bytes
+ * per order, so any order is found without a scan. Both files are mapped in fixed segments that
+ * are added as the archive grows; a record never straddles two segments. Only the heap-free
+ * parts of a transaction are kept: stage stamps and the covered deposits of a barrier are not
+ * needed once it has been applied.
+ */
+class HistoryArchive implements Closeable {
+    private static final int DATA_SEGMENT_BYTES = 8 << 20;
+    private static final int INDEX_SEGMENT_ENTRIES = 1 << 18; // 2 MB of offsets
+
+    private final Path dataPath;
+    private final Path indexPath;
+    private final FileChannel data;
+    private final FileChannel index;
+    private final List<MappedByteBuffer> dataSegments = new ArrayList<>();
+    private final List<MappedByteBuffer> indexSegments = new ArrayList<>();
+    private long dataEnd = 0; // offset where the next record goes
+    private int firstOrder = 1;
+    private int count = 0;
+
+    HistoryArchive(Path directory, String name) throws IOException {
+        Files.createDirectories(directory);
+        this.dataPath = Files.createTempFile(directory, name + "-", ".history");
+        this.indexPath = Files.createTempFile(directory, name + "-", ".index");
+        dataPath.toFile().deleteOnExit();
+        indexPath.toFile().deleteOnExit();
+        this.data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    synchronized int firstOrder() {
+        return firstOrder;
+    }
+
+    /**
+     * One past the last archived order.
+     */
+    synchronized int endOrder() {
+        return firstOrder + count;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized long bytes() {
+        return dataEnd;
+    }
+
+    /**
+     * Appends the transactions that have orders endOrder(), endOrder() + 1, and so on.
+     */
+    synchronized void append(List<Transaction> transactions) throws IOException {
+        for (Transaction tx : transactions) {
+            byte[] id = tx.getUniqueId().getBytes(StandardCharsets.UTF_8);
+            byte[] command = tx.getCommand().getBytes(StandardCharsets.UTF_8);
+            if (id.length > Short.MAX_VALUE || command.length > Short.MAX_VALUE) {
+                throw new IOException("Transaction " + tx.getUniqueId() + " is too large to archive.");
+            }
+            int length = 8 + 2 + id.length + 2 + command.length;
+            long segmentStart = dataEnd / DATA_SEGMENT_BYTES * DATA_SEGMENT_BYTES;
+            if (dataEnd + length > segmentStart + DATA_SEGMENT_BYTES) {
+                dataEnd = segmentStart + DATA_SEGMENT_BYTES; // start the next segment
+            }
+            MappedByteBuffer segment = dataSegment(dataEnd);
+            int at = (int) (dataEnd % DATA_SEGMENT_BYTES);
+            segment.putLong(at, tx.getTimestamp());
+            segment.putShort(at + 8, (short) id.length);
+            segment.put(at + 10, id);
+            segment.putShort(at + 10 + id.length, (short) command.length);
+            segment.put(at + 12 + id.length, command);
+
+            indexSegment(count).putLong(count % INDEX_SEGMENT_ENTRIES * 8, dataEnd);
+            dataEnd += length;
+            count++;
+        }
+    }
+
+    /**
+     * The archived transaction with the given order, rebuilt from its record.
+     */
+    synchronized Transaction read(int order) {
+        if (order < firstOrder || order >= firstOrder + count) {
+            throw new IndexOutOfBoundsException("Order " + order + " is not archived (" + firstOrder + " to " + (firstOrder + count - 1) + ").");
+        }
+        int position = order - firstOrder;
+        long offset = indexSegments.get(position / INDEX_SEGMENT_ENTRIES).getLong(position % INDEX_SEGMENT_ENTRIES * 8);
+        MappedByteBuffer segment = dataSegments.get((int) (offset / DATA_SEGMENT_BYTES));
+        int at = (int) (offset % DATA_SEGMENT_BYTES);
+        long timestamp = segment.getLong(at);
+        byte[] id = new byte[segment.getShort(at + 8)];
+        segment.get(at + 10, id);
+        byte[] command = new byte[segment.getShort(at + 10 + id.length)];
+        segment.get(at + 12 + id.length, command);
+        return new Transaction(new String(command, StandardCharsets.UTF_8), new String(id, StandardCharsets.UTF_8), timestamp);
+    }
+
+    /**
+     * Drops everything; the next transaction appended will have order nextOrder.
+     * The mapped segments are kept and overwritten.
+     */
+    synchronized void clear(int nextOrder) {
+        firstOrder = nextOrder;
+        count = 0;
+        dataEnd = 0;
+    }
+
+    private MappedByteBuffer dataSegment(long offset) throws IOException {
+        int segment = (int) (offset / DATA_SEGMENT_BYTES);
+        while (dataSegments.size() <= segment) {
+            dataSegments.add(data.map(FileChannel.MapMode.READ_WRITE, (long) dataSegments.size() * DATA_SEGMENT_BYTES, DATA_SEGMENT_BYTES));
+        }
+        return dataSegments.get(segment);
+    }
+
+    private MappedByteBuffer indexSegment(int position) throws IOException {
+        int segment = position / INDEX_SEGMENT_ENTRIES;
+        while (indexSegments.size() <= segment) {
+            indexSegments.add(index.map(FileChannel.MapMode.READ_WRITE, (long) indexSegments.size() * INDEX_SEGMENT_ENTRIES * 8, (long) INDEX_SEGMENT_ENTRIES * 8));
+        }
+        return indexSegments.get(segment);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        data.close();
+        index.close();
+        Files.deleteIfExists(dataPath);
+        Files.deleteIfExists(indexPath);
+    }
+}
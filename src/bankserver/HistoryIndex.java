@@ -0,0 +1,186 @@
+package bankserver;
+
+import common.HistoryEntry;
+import common.HistoryPage;
+import common.HistoryQuery;
+import common.Transaction;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Secondary indexes over the executed transactions, kept up to date as transactions are applied.
+ *
+ * Each index maps a key (currency or operation) to the ascending order numbers of the
+ * transactions that have it. A query walks the most selective index that applies, or the
+ * order range itself, and checks the remaining filters on each candidate. The transactions
+ * themselves stay in the replica's TieredHistory; the index only holds order numbers.
+ * Not thread-safe; the replica calls it while holding its own lock.
+ */
+class HistoryIndex {
+    static final int MAX_PAGE_SIZE = 10_000;
+    private static final String ALL = "ALL";
+
+    private final Map<String, OrderList> byCurrency = new HashMap<>();
+    private final Map<String, OrderList> byOperation = new HashMap<>();
+    private int firstOrder = 1; // lowest order still held by the replica
+    private int lastOrder = 0;  // highest order indexed
+
+    void add(int order, Transaction tx) {
+        String[] parts = tx.getCommand().split("\\s+");
+        byOperation.computeIfAbsent(parts[0], _ -> new OrderList()).add(order);
+        for (String currency : currencies(parts)) {
+            byCurrency.computeIfAbsent(currency, _ -> new OrderList()).add(order);
+        }
+        lastOrder = order;
+    }
+
+    /**
+     * Drops everything; the next transaction indexed will have order nextOrder.
+     */
+    void clear(int nextOrder) {
+        byCurrency.clear();
+        byOperation.clear();
+        firstOrder = nextOrder;
+        lastOrder = nextOrder - 1;
+    }
+
+    /**
+     * Rebuilds the indexes from the whole history, e.g. after a state transfer.
+     */
+    void rebuild(TieredHistory history) {
+        clear(history.firstOrder());
+        for (int order = history.firstOrder(); order < history.endOrder(); order++) {
+            add(order, history.get(order));
+        }
+    }
+
+    HistoryPage query(HistoryQuery query, IntFunction<Transaction> byOrder) {
+        int pageSize = Math.clamp(query.pageSize, 1, MAX_PAGE_SIZE);
+        int start = Math.max(Math.max(query.fromOrder, query.cursor), firstOrder);
+        int end = Math.min(query.toOrder, lastOrder);
+
+        PrimitiveIterator.OfInt candidates = candidates(query, start, end);
+        List<HistoryEntry> entries = new ArrayList<>(Math.min(pageSize, 64));
+        while (candidates.hasNext()) {
+            int order = candidates.nextInt();
+            if (order > end) {
+                break;
+            }
+            Transaction tx = byOrder.apply(order);
+            if (tx.getTimestamp() < query.fromTime || tx.getTimestamp() > query.toTime) {
+                continue;
+            }
+            String[] parts = tx.getCommand().split("\\s+");
+            List<String> currencies = currencies(parts);
+            if (query.operation != null && !query.operation.equals(parts[0])) {
+                continue;
+            }
+            if (query.currency != null && !currencies.contains(query.currency) && !currencies.contains(ALL)) {
+                continue;
+            }
+            entries.add(new HistoryEntry(order, tx.getUniqueId(), tx.getTimestamp(), parts[0], currencies, tx.getCommand()));
+            if (entries.size() == pageSize) {
+                return new HistoryPage(entries, order < end ? order + 1 : -1);
+            }
+        }
+        return new HistoryPage(entries, -1);
+    }
+
+    /**
+     * Ascending candidate orders from start: the shorter of the operation and currency
+     * postings when those filters are set, otherwise every order.
+     */
+    private PrimitiveIterator.OfInt candidates(HistoryQuery query, int start, int end) {
+        OrderList byOp = query.operation == null ? null : byOperation.getOrDefault(query.operation, OrderList.EMPTY);
+        if (query.currency != null) {
+            OrderList exact = byCurrency.getOrDefault(query.currency, OrderList.EMPTY);
+            OrderList all = byCurrency.getOrDefault(ALL, OrderList.EMPTY);
+            if (byOp == null || exact.size() + all.size() < byOp.size()) {
+                return merge(exact.from(start), all.from(start));
+            }
+        }
+        if (byOp != null) {
+            return byOp.from(start);
+        }
+        return IntStream.rangeClosed(start, Math.max(start - 1, end)).iterator();
+    }
+
+    private static PrimitiveIterator.OfInt merge(PrimitiveIterator.OfInt a, PrimitiveIterator.OfInt b) {
+        return new PrimitiveIterator.OfInt() {
+            private int nextA = a.hasNext() ? a.nextInt() : Integer.MAX_VALUE;
+            private int nextB = b.hasNext() ? b.nextInt() : Integer.MAX_VALUE;
+
+            @Override
+            public boolean hasNext() {
+                return nextA != Integer.MAX_VALUE || nextB != Integer.MAX_VALUE;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int result;
+                if (nextA <= nextB) {
+                    result = nextA;
+                    nextA = a.hasNext() ? a.nextInt() : Integer.MAX_VALUE;
+                } else {
+                    result = nextB;
+                    nextB = b.hasNext() ? b.nextInt() : Integer.MAX_VALUE;
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * The currencies a command touches: the one it names, ALL for interest on every currency,
+     * or each currency of a rate update.
+     */
+    static List<String> currencies(String[] parts) {
+        switch (parts[0]) {
+            case "deposit":
+                return List.of(parts[1].toUpperCase());
+            case "addInterest":
+                return parts.length == 3 ? List.of(parts[1].toUpperCase()) : List.of(ALL);
+            case "updateRates": {
+                List<String> currencies = new ArrayList<>();
+                for (int i = 1; i + 1 < parts.length; i += 2) {
+                    currencies.add(parts[i]);
+                }
+                return currencies;
+            }
+            default:
+                return List.of();
+        }
+    }
+
+    /**
+     * A growable, ascending list of order numbers.
+     */
+    private static class OrderList {
+        static final OrderList EMPTY = new OrderList();
+
+        private int[] orders = new int[16];
+        private int size = 0;
+
+        void add(int order) {
+            if (size == orders.length) {
+                orders = Arrays.copyOf(orders, size * 2);
+            }
+            orders[size++] = order;
+        }
+
+        int size() {
+            return size;
+        }
+
+        PrimitiveIterator.OfInt from(int start) {
+            int index = Arrays.binarySearch(orders, 0, size, start);
+            int first = index >= 0 ? index : -index - 1;
+            return Arrays.stream(orders, first, size).iterator();
+        }
+    }
+}
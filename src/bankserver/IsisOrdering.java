@@ -0,0 +1,391 @@
+package bankserver;
+
+import common.Log;
+import common.Message;
+import common.OrderPosition;
+
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Agreed order among the replicas themselves, after the ISIS total-order protocol.
+ *
+ * The sender asks every member of the group to propose a position for its message, takes the
+ * highest proposal as the agreed position and sends that to everyone. Each replica keeps the
+ * messages it proposed for in a queue sorted by position and delivers from the head as soon as
+ * the head's position is agreed. A position is a counter plus the name of the replica that
+ * proposed it, so no two are equal. Every proposal is above any position the replica has
+ * already seen. An agreed position can therefore never end up before a message delivered
+ * earlier.
+ *
+ * That is two round trips between the replicas per message, with no MDServer hop and no ACK
+ * polling. The MDServer only keeps the membership. Meant for small groups that are formed before
+ * transactions flow: a member that joins later only sees messages proposed after it joined.
+ *
+ * A member whose commit or withdrawal got lost would keep the message unagreed at the head of
+ * its queue and stop delivering, so both are sent again until they arrive or the member has
+ * left. Nothing evicts a member here the way the MDServer's ACK timeout does, so a member that
+ * does not answer a call of a round is reported to the MDServer as suspect. The MDServer
+ * probes it and evicts it if it is gone, and the rounds go on without it.
+ *
+ * A sender can leave in the middle of its commits, so that only some members got one. A member
+ * left with the message unagreed asks the others for the agreed position and adopts it; only
+ * when none of them has a commit is the message dropped, which then happens everywhere.
+ *
+ * Message ids carry a nonce drawn at start, so a replica that restarts under the same name never
+ * reuses the id of a round the others still remember.
+ */
+final class IsisOrdering implements OrderingEngine {
+    private static final long ROUND_TIMEOUT_MS = 4000L;
+    private static final long RESEND_MS = 500L; // between attempts to deliver a lost commit or withdrawal
+    private static final int DECIDED_KEPT = 10_000; // delivered positions kept for members that lost the commit
+    private static final Comparator<Proposal> POSITION = Comparator.<Proposal>comparingLong(p -> p.counter)
+            .thenComparing(p -> p.replica).thenComparing(p -> p.messageId);
+
+    private final String self;
+    private final BankServerInterface local; // our own replica, called directly
+    private final Transport transport;
+    private final ExecutorService calls;
+    private final Supplier<List<String>> members;
+    private final Consumer<Message> deliver;
+    private final Consumer<String> suspect; // reports a member that did not answer to the MDServer
+    private final Map<String, BankServerInterface> peerStubs = new ConcurrentHashMap<>();
+
+    // One round at a time, so each replica's own messages are agreed in the order it sent them.
+    // Locks rather than monitors: a virtual thread waiting for the round inside synchronized
+    // would pin its carrier, which the calls of the round may need.
+    private final ReentrantLock submitting = new ReentrantLock();
+    private final String incarnation = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private long rounds = 0;
+    // Batches that became deliverable are applied in the order they became deliverable
+    private final ReentrantLock delivering = new ReentrantLock();
+
+    // Guarded by this
+    private long highest = 0; // highest counter proposed or agreed here
+    private final Map<String, Proposal> proposals = new HashMap<>(); // by message id
+    private final NavigableSet<Proposal> queue = new TreeSet<>(POSITION);
+    private final Set<String> withdrawn = new HashSet<>(); // withdrawn before the proposal reached us; kept while the sender is a member
+    // Positions of the latest messages delivered here, by message id
+    private final Map<String, OrderPosition> decided = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OrderPosition> eldest) {
+            return size() > DECIDED_KEPT;
+        }
+    };
+
+    private static final class Proposal {
+        final String messageId;
+        final Message message;
+        long counter;
+        String replica;
+        boolean agreed;
+
+        Proposal(String messageId, Message message, long counter, String replica) {
+            this.messageId = messageId;
+            this.message = message;
+            this.counter = counter;
+            this.replica = replica;
+        }
+    }
+
+    @FunctionalInterface
+    private interface PeerCall<T> {
+        T call(BankServerInterface peer) throws Exception;
+    }
+
+    IsisOrdering(String self, BankServerInterface local, Transport transport, ExecutorService calls,
+                 Supplier<List<String>> members, Consumer<Message> deliver, Consumer<String> suspect) {
+        this.self = self;
+        this.local = local;
+        this.transport = transport;
+        this.calls = calls;
+        this.members = members;
+        this.deliver = deliver;
+        this.suspect = suspect;
+    }
+
+    /**
+     * Runs one round for the message. If a member does not propose in time, the message is
+     * withdrawn everywhere and this throws: its transactions stay outstanding and go out again
+     * with the next flush. The group only moves on without that member once the membership drops
+     * it, which the suspect report asks the MDServer to do.
+     */
+    @Override
+    public void submit(Message message) throws RemoteException {
+        submitting.lock();
+        try {
+            String messageId = self + "#" + incarnation + "." + ++rounds;
+            List<String> group = new ArrayList<>(members.get());
+            if (!group.contains(self)) {
+                group.add(self);
+            }
+            Map<String, Future<Long>> asked = new LinkedHashMap<>();
+            for (String member : group) {
+                asked.put(member, ask(member, peer -> peer.proposeOrder(messageId, message)));
+            }
+
+            long counter = -1;
+            String replica = null;
+            String missing = null;
+            for (Map.Entry<String, Future<Long>> proposal : asked.entrySet()) {
+                String member = proposal.getKey();
+                try {
+                    long proposed = proposal.getValue().get(ROUND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (proposed > counter || (proposed == counter && member.compareTo(replica) > 0)) {
+                        counter = proposed;
+                        replica = member;
+                    }
+                } catch (Exception e) {
+                    proposal.getValue().cancel(true);
+                    peerStubs.remove(member);
+                    missing = member;
+                    suspect.accept(member);
+                }
+            }
+
+            if (missing != null) {
+                awaitAll(group, messageId, peer -> {
+                    peer.withdrawOrder(messageId);
+                    return null;
+                });
+                throw new RemoteException(self + " got no proposal from " + missing + " for " + messageId + "; withdrawn.");
+            }
+            long agreedCounter = counter;
+            String agreedReplica = replica;
+            awaitAll(group, messageId, peer -> {
+                peer.commitOrder(messageId, agreedCounter, agreedReplica);
+                return null;
+            });
+        } finally {
+            submitting.unlock();
+        }
+    }
+
+    /**
+     * Makes the call at every member and waits for the round's timeout. Members that did not
+     * get it are suspected and sent it again in the background.
+     */
+    private void awaitAll(List<String> group, String messageId, PeerCall<Void> call) {
+        List<Future<Void>> sent = new ArrayList<>();
+        for (String member : group) {
+            sent.add(ask(member, call));
+        }
+        for (int i = 0; i < sent.size(); i++) {
+            String member = group.get(i);
+            try {
+                sent.get(i).get(ROUND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                sent.get(i).cancel(true);
+                peerStubs.remove(member);
+                Log.warn(self + " could not finish " + messageId + " at " + member + ", sending it again: " + e);
+                suspect.accept(member);
+                calls.execute(() -> resend(member, messageId, call));
+            }
+        }
+    }
+
+    /**
+     * Repeats a commit or withdrawal until the member has it or is no longer in the group.
+     * Both are idempotent at the receiver.
+     */
+    private void resend(String member, String messageId, PeerCall<Void> call) {
+        while (members.get().contains(member)) {
+            try {
+                Thread.sleep(RESEND_MS);
+                call.call(peer(member));
+                Log.info(self + " finished " + messageId + " at " + member + " after all.");
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                peerStubs.remove(member);
+            }
+        }
+    }
+
+    private <T> Future<T> ask(String member, PeerCall<T> call) {
+        return calls.submit(() -> call.call(member.equals(self) ? local : peer(member)));
+    }
+
+    private BankServerInterface peer(String member) throws Exception {
+        BankServerInterface stub = peerStubs.get(member);
+        if (stub == null) {
+            stub = transport.lookup(member);
+            peerStubs.put(member, stub);
+        }
+        return stub;
+    }
+
+    // --- Receiving side ---
+
+    /**
+     * Queues the message as not yet agreed and returns our proposed counter for it.
+     */
+    synchronized long propose(String messageId, Message message) {
+        Proposal known = proposals.get(messageId);
+        if (known != null) {
+            return known.counter;
+        }
+        if (withdrawn.remove(messageId)) {
+            return ++highest; // the sender gave up on it already; nothing to queue
+        }
+        Proposal proposal = new Proposal(messageId, message, ++highest, self);
+        proposals.put(messageId, proposal);
+        queue.add(proposal);
+        return proposal.counter;
+    }
+
+    void commit(String messageId, long counter, String replica) {
+        delivering.lock();
+        try {
+            List<Message> ready;
+            synchronized (this) {
+                highest = Math.max(highest, counter);
+                Proposal proposal = proposals.get(messageId);
+                if (proposal == null || proposal.agreed) {
+                    return;
+                }
+                queue.remove(proposal);
+                proposal.counter = counter;
+                proposal.replica = replica;
+                proposal.agreed = true;
+                queue.add(proposal);
+                ready = takeReady();
+            }
+            ready.forEach(deliver);
+        } finally {
+            delivering.unlock();
+        }
+    }
+
+    void withdraw(String messageId) {
+        discard(messageId, true);
+    }
+
+    /**
+     * Takes an unagreed message out of the queue. remember keeps the id of one not proposed yet,
+     * so its proposal is not queued when it arrives after all.
+     */
+    private void discard(String messageId, boolean remember) {
+        delivering.lock();
+        try {
+            List<Message> ready;
+            synchronized (this) {
+                Proposal proposal = proposals.get(messageId);
+                if (proposal == null) {
+                    if (remember) {
+                        withdrawn.add(messageId);
+                    }
+                    return;
+                }
+                if (proposal.agreed) {
+                    return; // a commit got here first
+                }
+                proposals.remove(messageId);
+                queue.remove(proposal);
+                ready = takeReady();
+            }
+            ready.forEach(deliver);
+        } finally {
+            delivering.unlock();
+        }
+    }
+
+    /**
+     * The agreed position of a message we have the commit of, delivered or not, or null.
+     */
+    synchronized OrderPosition agreedOrder(String messageId) {
+        Proposal proposal = proposals.get(messageId);
+        if (proposal != null) {
+            return proposal.agreed ? new OrderPosition(proposal.counter, proposal.replica) : null;
+        }
+        return decided.get(messageId);
+    }
+
+    /**
+     * Settles the unagreed messages of senders that left: nobody will send their commits any
+     * more, and they would hold up the queue for good. The calls to the other members run in the
+     * background, not on the thread that brought the membership change.
+     */
+    @Override
+    public void membersChanged(List<String> current) {
+        List<String> orphans = new ArrayList<>();
+        synchronized (this) {
+            for (Proposal proposal : queue) {
+                if (!proposal.agreed && !current.contains(sender(proposal.messageId))) {
+                    orphans.add(proposal.messageId);
+                }
+            }
+            // No more rounds of theirs can be proposed
+            withdrawn.removeIf(messageId -> !current.contains(sender(messageId)));
+        }
+        if (!orphans.isEmpty()) {
+            calls.execute(() -> settleOrphans(orphans, current));
+        }
+    }
+
+    /**
+     * Adopts the agreed position of each message if any member has its commit. Only a message
+     * no member committed is dropped; all of them drop it then.
+     */
+    private void settleOrphans(List<String> orphans, List<String> current) {
+        for (String messageId : orphans) {
+            OrderPosition agreed = askAgreed(messageId, current);
+            if (agreed != null) {
+                Log.info(self + " adopted position " + agreed + " of " + messageId + " from the group: " + sender(messageId) + " left before its commit got here.");
+                commit(messageId, agreed.getCounter(), agreed.getReplica());
+            } else {
+                Log.info(self + " dropped " + messageId + ": " + sender(messageId) + " left and no member has its commit.");
+                discard(messageId, false);
+            }
+        }
+    }
+
+    private OrderPosition askAgreed(String messageId, List<String> current) {
+        Map<String, Future<OrderPosition>> asked = new LinkedHashMap<>();
+        for (String member : current) {
+            if (!member.equals(self)) {
+                asked.put(member, ask(member, peer -> peer.agreedOrder(messageId)));
+            }
+        }
+        OrderPosition agreed = null;
+        for (Map.Entry<String, Future<OrderPosition>> answer : asked.entrySet()) {
+            try {
+                OrderPosition position = answer.getValue().get(ROUND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (position != null) {
+                    agreed = position;
+                }
+            } catch (Exception e) {
+                answer.getValue().cancel(true);
+                peerStubs.remove(answer.getKey());
+                Log.warn(self + " could not ask " + answer.getKey() + " about " + messageId + ": " + e);
+            }
+        }
+        return agreed;
+    }
+
+    private static String sender(String messageId) {
+        return messageId.substring(0, messageId.lastIndexOf('#'));
+    }
+
+    // Must hold this
+    private List<Message> takeReady() {
+        List<Message> ready = new ArrayList<>();
+        while (!queue.isEmpty() && queue.first().agreed) {
+            Proposal head = queue.pollFirst();
+            proposals.remove(head.messageId);
+            decided.put(head.messageId, new OrderPosition(head.counter, head.replica));
+            ready.add(head.message);
+        }
+        return ready;
+    }
+}
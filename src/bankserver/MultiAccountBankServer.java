@@ -0,0 +1,48 @@
+package bankserver;
+
+import common.CurrencyConverter;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Starts one replica for each of many accounts in a single JVM, sharing a ReplicaHost.
+ * Clients reach each account through its own name in the RMI registry, as with BankServer.
+ */
+public class MultiAccountBankServer {
+    public static void main(String[] args) throws Exception {
+        ReplicaOptions options = new ReplicaOptions();
+        args = options.parse(args).toArray(new String[0]);
+
+        if (args.length < 4) {
+            System.out.println("Usage: MultiAccountBankServer <MDServer host:port> <account,account,...|@accounts file> <#replicas> <currency file> " + ReplicaOptions.usage());
+            return;
+        }
+
+        String mdServerHostPort = args[0];
+        List<String> accountNames = args[1].startsWith("@")
+                ? Files.readAllLines(Paths.get(args[1].substring(1)))
+                : Arrays.asList(args[1].split(","));
+        int replicas = Integer.parseInt(args[2]);
+        CurrencyConverter converter = new CurrencyConverter(args[3]);
+
+        Transport transport = new RmiTransport(mdServerHostPort);
+        ReplicaHost host = new ReplicaHost(transport, options.applyThreads, options.flushIntervalMs, options.executionModel, options.sequencerCheckMs);
+        List<BankServerImpl> started = new ArrayList<>();
+        for (String accountName : accountNames) {
+            accountName = accountName.trim();
+            if (accountName.isEmpty()) {
+                continue;
+            }
+            String instanceName = accountName + "_" + UUID.randomUUID();
+            BankServerImpl bankServer = new BankServerImpl(instanceName, accountName, converter, host, replicas, "correct", options);
+            transport.bind(instanceName, bankServer);
+            started.add(bankServer);
+        }
+        System.out.println("Hosting " + started.size() + " accounts on " + options.applyThreads + " apply threads.");
+    }
+}
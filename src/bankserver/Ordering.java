@@ -0,0 +1,12 @@
+package bankserver;
+
+/**
+ * How a replica group agrees on the order of its transactions.
+ * SEQUENCER sends every flush through the MDServer's queue for the group, which numbers it.
+ * ISIS has the voting replicas agree on positions among themselves, without the MDServer hop;
+ * the MDServer still keeps the group's membership.
+ */
+public enum Ordering {
+    SEQUENCER,
+    ISIS
+}
@@ -0,0 +1,25 @@
+package bankserver;
+
+import common.Message;
+import common.OverloadedException;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Puts a replica's flushed transactions into its group's total order. Whatever the engine,
+ * every voting replica of the group applies the ordered messages in the same order.
+ */
+interface OrderingEngine {
+    /**
+     * Hands a flushed message over to be ordered. Once this returns, the engine is responsible
+     * for it and its transactions leave the replica's outstanding list.
+     */
+    void submit(Message message) throws RemoteException, OverloadedException;
+
+    /**
+     * The group's membership changed; called outside the replica's lock.
+     */
+    default void membersChanged(List<String> members) {
+    }
+}
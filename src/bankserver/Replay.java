@@ -0,0 +1,140 @@
+package bankserver;
+
+import common.CurrencyConverter;
+import common.Log;
+import common.RateTable;
+import common.Transaction;
+import common.TransactionLog;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+
+/**
+ * Replays a transaction log offline through the replicas' state machine, with no RMI and no MDServer.
+ * The log is either an MDServer's --record file or a replica's exportHistory file.
+ *
+ * Accounts are replayed in parallel, each one on a single thread in log order. The tool prints
+ * the apply throughput of every round, then the fingerprint of each account's state at every
+ * checkpoint. These are the same fingerprints a replica reports for getBalancesAt. With --diff,
+ * a second log is replayed too, and the first order where the two disagree is printed per account.
+ */
+public class Replay {
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int checkpointEvery = new ReplicaOptions().checkpointEvery;
+        int rounds = 3;
+        Path diff = null;
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            switch (option[0]) {
+                case "--threads" -> threads = Integer.parseInt(option[1]);
+                case "--checkpoint-every" -> checkpointEvery = Integer.parseInt(option[1]);
+                case "--rounds" -> rounds = Integer.parseInt(option[1]);
+                case "--diff" -> diff = Path.of(option[1]);
+                case "--log-level" -> Log.setLevel(Log.Level.valueOf(option[1].toUpperCase()));
+                default -> positional.add(arg);
+            }
+        }
+        if (positional.size() < 2 || checkpointEvery < 1) {
+            System.out.println("Usage: Replay <log file> <currency file> [--threads=N] [--checkpoint-every=N] [--rounds=N] [--diff=other log file] [--log-level=debug|info|warn|error]");
+            return;
+        }
+        RateTable rates = new CurrencyConverter(positional.get(1)).snapshot();
+
+        long readStart = System.nanoTime();
+        TransactionLog.Contents log = TransactionLog.read(Path.of(positional.get(0)));
+        int total = log.getByAccount().values().stream().mapToInt(List::size).sum();
+        System.out.println("Read " + total + " transactions of " + log.getByAccount().size() + " accounts ("
+                + log.getKind() + ") in " + (System.nanoTime() - readStart) / 1_000_000 + " ms.");
+
+        int every = checkpointEvery;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Map<String, AccountReplay> replayed = null;
+        // The first rounds include the JIT warming up; the last one is closest to steady state.
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            replayed = replayAll(pool, log, rates, order -> order % every == 0);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("Round %d: %d transactions in %.1f ms on %d threads, %.0f tx/s%n",
+                    round, total, nanos / 1e6, threads, total / (nanos / 1e9));
+        }
+
+        for (Map.Entry<String, AccountReplay> account : replayed.entrySet()) {
+            AccountReplay replay = account.getValue();
+            System.out.println(account.getKey() + ": " + replay.order() + " orders, final fingerprint "
+                    + replay.snapshot().fingerprint() + ", " + replay.snapshot());
+            for (Map.Entry<Integer, String> checkpoint : replay.fingerprints().entrySet()) {
+                System.out.println("checkpoint " + account.getKey() + " " + checkpoint.getKey() + " " + checkpoint.getValue());
+            }
+        }
+
+        if (diff != null) {
+            TransactionLog.Contents other = TransactionLog.read(diff);
+            Map<String, AccountReplay> otherReplayed = replayAll(pool, other, rates, order -> order % every == 0);
+            for (Map.Entry<String, AccountReplay> account : replayed.entrySet()) {
+                AccountReplay theirs = otherReplayed.get(account.getKey());
+                if (theirs == null) {
+                    System.out.println("diff " + account.getKey() + ": not in " + diff);
+                } else {
+                    System.out.println("diff " + account.getKey() + ": " + firstDivergence(account.getKey(), log, account.getValue(), other, theirs, rates, every));
+                }
+            }
+        }
+        pool.shutdown();
+    }
+
+    private static Map<String, AccountReplay> replayAll(ExecutorService pool, TransactionLog.Contents log, RateTable rates,
+                                                        IntPredicate fingerprintAt) throws Exception {
+        Map<String, Future<AccountReplay>> running = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Transaction>> account : log.getByAccount().entrySet()) {
+            running.put(account.getKey(), pool.submit(() -> {
+                AccountReplay replay = new AccountReplay(rates, log.getKind(), fingerprintAt);
+                replay.replay(account.getValue());
+                return replay;
+            }));
+        }
+        Map<String, AccountReplay> replayed = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<AccountReplay>> account : running.entrySet()) {
+            replayed.put(account.getKey(), account.getValue().get());
+        }
+        return replayed;
+    }
+
+    /**
+     * Narrows a difference down to one order: the first checkpoint where the fingerprints
+     * differ bounds it, then both logs are replayed again with a fingerprint at every order
+     * since the last checkpoint that matched.
+     */
+    private static String firstDivergence(String account, TransactionLog.Contents ours, AccountReplay ourReplay,
+                                          TransactionLog.Contents theirs, AccountReplay theirReplay, RateTable rates, int every) {
+        int end = Math.min(ourReplay.order(), theirReplay.order());
+        int to = end;
+        for (Map.Entry<Integer, String> checkpoint : ourReplay.fingerprints().headMap(end, true).entrySet()) {
+            if (!checkpoint.getValue().equals(theirReplay.fingerprints().get(checkpoint.getKey()))) {
+                to = checkpoint.getKey();
+                break;
+            }
+        }
+        int from = (to - 1) / every * every; // last checkpoint before, which matched
+        int last = to;
+        IntPredicate window = order -> order > from && order <= last;
+        AccountReplay mine = new AccountReplay(rates, ours.getKind(), window);
+        mine.replay(ours.getByAccount().get(account));
+        AccountReplay other = new AccountReplay(rates, theirs.getKind(), window);
+        other.replay(theirs.getByAccount().get(account));
+        for (int order = from + 1; order <= to; order++) {
+            if (!mine.fingerprints().get(order).equals(other.fingerprints().get(order))) {
+                return "first differs at order " + order + ": " + mine.appliedAt(order) + " against " + other.appliedAt(order);
+            }
+        }
+        if (ourReplay.order() == theirReplay.order()) {
+            return "identical through order " + end;
+        }
+        return "identical through order " + end + ", where the " + (ourReplay.order() < theirReplay.order() ? "first" : "second") + " log ends";
+    }
+}
@@ -0,0 +1,170 @@
+package bankserver;
+
+import common.ExecutionModel;
+import common.Log;
+import common.Message;
+import common.OverloadedException;
+import mdserver.MDServerInterface;
+
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Shared runtime for a process that hosts replicas of many accounts.
+ *
+ * Instead of a MDServer connection, broadcast timer and thread pool per account, the hosted
+ * replicas share one of each. Accounts are partitioned over a fixed set of apply threads by
+ * the hash of their group name, so one account is always applied on the same thread and in
+ * order, and a single flush timer sends the outstanding transactions of all accounts to the
+ * MDServer in shared frames.
+ */
+public class ReplicaHost {
+    private static final int MAX_MESSAGES_PER_FRAME = 500;
+
+    private final Transport transport;
+    private final ExecutorService[] applyThreads;
+    private final ExecutorService relayExecutor;
+    private final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor();
+    private final List<BankServerImpl> accounts = new CopyOnWriteArrayList<>();
+
+    public ReplicaHost(Transport transport, int applyThreadCount, long flushIntervalMs, ExecutionModel executionModel, long sequencerCheckMs) throws Exception {
+        this.transport = transport;
+        this.relayExecutor = executionModel.newExecutor("host-relay");
+        this.applyThreads = new ExecutorService[applyThreadCount];
+        for (int i = 0; i < applyThreadCount; i++) {
+            applyThreads[i] = Executors.newSingleThreadExecutor();
+        }
+        flushTimer.scheduleAtFixedRate(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (sequencerCheckMs > 0) {
+            flushTimer.scheduleAtFixedRate(this::checkSequencer, sequencerCheckMs, sequencerCheckMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    Transport transport() {
+        return transport;
+    }
+
+    ExecutorService relayExecutor() {
+        return relayExecutor;
+    }
+
+    Executor applyExecutor(String groupName) {
+        return applyThreads[Math.floorMod(groupName.hashCode(), applyThreads.length)];
+    }
+
+    void add(BankServerImpl account) {
+        accounts.add(account);
+    }
+
+    public int accountCount() {
+        return accounts.size();
+    }
+
+    /**
+     * Collects the outstanding transactions of every hosted account and sends them in as few
+     * calls as possible: one frame per MDServer shard, split at MAX_MESSAGES_PER_FRAME.
+     */
+    private void flushAll() {
+        Map<MDServerInterface, Frame> frames = new HashMap<>();
+        for (BankServerImpl account : accounts) {
+            Message message = account.prepareFlush();
+            if (message == null) {
+                continue;
+            }
+            MDServerInterface target;
+            try {
+                target = transport.mdServer(account.groupName());
+            } catch (Exception e) {
+                // Stays outstanding; the sequencer check finds the account an MDServer.
+                continue;
+            }
+            Frame frame = frames.computeIfAbsent(target, _ -> new Frame(new ArrayList<>(), new ArrayList<>()));
+            frame.senders().add(account);
+            frame.messages().add(message);
+            if (frame.messages().size() == MAX_MESSAGES_PER_FRAME) {
+                sendFrame(target, frame.senders(), frame.messages());
+                frames.remove(target);
+            }
+        }
+        frames.forEach((target, frame) -> sendFrame(target, frame.senders(), frame.messages()));
+    }
+
+    private record Frame(List<BankServerImpl> senders, List<Message> messages) {}
+
+    /**
+     * One probe per MDServer for all hosted accounts. The accounts of one that stopped answering,
+     * and those whose group it handed to another shard, rejoin wherever the registry has them now.
+     */
+    private void checkSequencer() {
+        Map<MDServerInterface, List<BankServerImpl>> byServer = new HashMap<>();
+        for (BankServerImpl account : accounts) {
+            try {
+                byServer.computeIfAbsent(transport.mdServer(account.groupName()), _ -> new ArrayList<>()).add(account);
+            } catch (Exception e) {
+                Log.debug(() -> "No MDServer for " + account.getinstanceName() + " yet: " + e.getMessage());
+            }
+        }
+        for (Map.Entry<MDServerInterface, List<BankServerImpl>> entry : byServer.entrySet()) {
+            MDServerInterface current = entry.getKey();
+            List<BankServerImpl> leaving = new ArrayList<>();
+            try {
+                Set<String> moved = current.movedGroups();
+                for (BankServerImpl account : entry.getValue()) {
+                    if (moved.contains(account.groupName()) || account.sequencerFenced()) {
+                        leaving.add(account);
+                    }
+                }
+            } catch (RemoteException e) {
+                Log.debug(() -> "No heartbeat from an MDServer: " + e.getMessage());
+                leaving.addAll(entry.getValue());
+            }
+            if (!leaving.isEmpty()) {
+                rejoin(current, leaving);
+            }
+        }
+    }
+
+    private void rejoin(MDServerInterface stale, List<BankServerImpl> leaving) {
+        try {
+            transport.reconnect(leaving.get(0).groupName(), stale);
+        } catch (Exception e) {
+            Log.debug(() -> "No MDServer to rejoin yet: " + e.getMessage());
+            return;
+        }
+        int rejoined = 0;
+        for (BankServerImpl account : leaving) {
+            try {
+                account.rejoin(transport.mdServer(account.groupName()));
+                rejoined++;
+            } catch (Exception e) {
+                // Tried again at the next check.
+                Log.debug(() -> account.getinstanceName() + " failed to rejoin the MDServer: " + e.getMessage());
+            }
+        }
+        Log.info("Rejoined " + rejoined + " of " + leaving.size() + " accounts at their MDServer " + transport + ".");
+    }
+
+    private void sendFrame(MDServerInterface target, List<BankServerImpl> senders, List<Message> frame) {
+        try {
+            target.broadcastMessages(frame);
+            for (int i = 0; i < frame.size(); i++) {
+                senders.get(i).flushed(frame.get(i));
+            }
+            Log.debug(() -> "Flushed " + frame.size() + " accounts in one frame.");
+        } catch (OverloadedException e) {
+            // Messages of accounts whose group queue is full stay outstanding; the rest were accepted.
+            Set<String> rejected = new HashSet<>(e.getRejectedSenders());
+            for (int i = 0; i < frame.size(); i++) {
+                if (rejected.contains(frame.get(i).getSenderId())) {
+                    senders.get(i).overloaded(e.getRetryAfterMs());
+                } else {
+                    senders.get(i).flushed(frame.get(i));
+                }
+            }
+        } catch (Exception e) {
+            // The transactions stay outstanding and go out with the next flush.
+            Log.warn("Failed to flush a frame of " + frame.size() + " accounts: " + e.getMessage());
+        }
+    }
+}
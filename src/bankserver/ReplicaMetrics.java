@@ -0,0 +1,176 @@
+package bankserver;
+
+import common.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one replica. The hot paths only bump striped LongAdders; sizes are read
+ * from the replica when JMX asks for them.
+ */
+public class ReplicaMetrics implements ReplicaMetricsMBean {
+    static final long RATE_SAMPLE_MS = 1000;
+    // Time constant of the apply rate average: a step change shows up about two thirds after 5s
+    static final double RATE_TIME_CONSTANT_NANOS = 5e9;
+
+    // One sampler for all replicas of the JVM; sampling is a couple of reads, it never blocks
+    private static final ScheduledExecutorService sampler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("replica-metrics").daemon(true).factory());
+
+    private final BankServerImpl replica;
+    final LongAdder applied = new LongAdder();
+    final LongAdder flushes = new LongAdder();
+    final LongAdder flushRejections = new LongAdder();
+    final LongAdder rejectedSubmissions = new LongAdder();
+    final LongAdder flushedTransactions = new LongAdder();
+    volatile int lastFlushBatchSize;
+
+    // Apply rate: an exponentially weighted average of the rate between samples, so that reading
+    // it (from any number of JMX clients) does not change it
+    private long lastSampleCount;
+    private long lastSampleNanos;
+    private boolean sampled;
+    private volatile double applyRate;
+
+    ReplicaMetrics(BankServerImpl replica) {
+        this.replica = replica;
+        this.lastSampleNanos = System.nanoTime();
+    }
+
+    /**
+     * Samples the apply rate every RATE_SAMPLE_MS until the replica is gone.
+     */
+    void startSampling() {
+        new RateSampler(this).start();
+    }
+
+    // Only the sampler thread (or a test) calls this
+    void sample(long nanos) {
+        long count = applied.sum();
+        long elapsed = nanos - lastSampleNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        double instant = (count - lastSampleCount) * 1e9 / elapsed;
+        if (sampled) {
+            double weight = 1 - Math.exp(-elapsed / RATE_TIME_CONSTANT_NANOS);
+            applyRate = applyRate + weight * (instant - applyRate);
+        } else {
+            applyRate = instant;
+            sampled = true;
+        }
+        lastSampleCount = count;
+        lastSampleNanos = nanos;
+    }
+
+    void recordFlush(int batchSize) {
+        flushes.increment();
+        flushedTransactions.add(batchSize);
+        lastFlushBatchSize = batchSize;
+    }
+
+    @Override
+    public int getOutstandingSize() {
+        return replica.outstandingSize();
+    }
+
+    @Override
+    public int getExecutedSize() {
+        return replica.executedSize();
+    }
+
+    @Override
+    public int getArchivedSize() {
+        return replica.archivedSize();
+    }
+
+    @Override
+    public int getCheckpointCount() {
+        return replica.checkpointCount();
+    }
+
+    @Override
+    public int getOrderCounter() {
+        return replica.orderCounter();
+    }
+
+    @Override
+    public int getPendingSyncBalanceRequests() {
+        return replica.pendingSyncBalanceRequestCount();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    @Override
+    public int getLastFlushBatchSize() {
+        return lastFlushBatchSize;
+    }
+
+    @Override
+    public double getAverageFlushBatchSize() {
+        long count = flushes.sum();
+        return count == 0 ? 0.0 : (double) flushedTransactions.sum() / count;
+    }
+
+    @Override
+    public long getAppliedTransactions() {
+        return applied.sum();
+    }
+
+    @Override
+    public double getApplyRatePerSecond() {
+        return applyRate;
+    }
+
+    @Override
+    public int getOutstandingCredits() {
+        return replica.outstandingCredits();
+    }
+
+    @Override
+    public long getFlushRejections() {
+        return flushRejections.sum();
+    }
+
+    @Override
+    public long getRejectedSubmissions() {
+        return rejectedSubmissions.sum();
+    }
+
+    @Override
+    public long getDroppedLogLines() {
+        return Log.dropped();
+    }
+
+    // Holds the metrics weakly, so that a replica that is dropped (e.g. in tests) stops being sampled
+    private static final class RateSampler implements Runnable {
+        private final WeakReference<ReplicaMetrics> metrics;
+        private volatile ScheduledFuture<?> future;
+
+        RateSampler(ReplicaMetrics metrics) {
+            this.metrics = new WeakReference<>(metrics);
+        }
+
+        void start() {
+            future = sampler.scheduleAtFixedRate(this, RATE_SAMPLE_MS, RATE_SAMPLE_MS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            ReplicaMetrics target = metrics.get();
+            if (target != null) {
+                target.sample(System.nanoTime());
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package bankserver;
+
+/**
+ * JMX view of a BankServer replica, registered as bankserver:type=Replica,name=<instance name>.
+ */
+public interface ReplicaMetricsMBean {
+    int getOutstandingSize();
+    int getOutstandingCredits(); // submissions accepted before throttling starts
+    long getFlushRejections();
+    long getRejectedSubmissions();
+    int getExecutedSize(); // executed transactions on the heap
+    int getArchivedSize(); // older executed transactions in the memory-mapped archive
+    int getCheckpointCount(); // balance checkpoints kept for getBalancesAt
+    int getOrderCounter();
+    int getPendingSyncBalanceRequests();
+    long getFlushCount();
+    int getLastFlushBatchSize();
+    double getAverageFlushBatchSize();
+    long getAppliedTransactions();
+    double getApplyRatePerSecond();
+    long getDroppedLogLines(); // for the whole process
+}
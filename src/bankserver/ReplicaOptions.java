@@ -0,0 +1,78 @@
+package bankserver;
+
+import common.ExecutionModel;
+import common.Log;
+import common.ReplicaRole;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional replica settings, given on the BankServer command line as --name=value.
+ * Every replica of a group should be started with the same ordering-related options.
+ */
+public class ReplicaOptions {
+    public ReplicaRole role = ReplicaRole.VOTING;
+    // Deposits bypass the sequencer and are folded in by the ordered addInterest/sync barriers
+    public boolean commutativeDeposits = false;
+    // How often outstanding transactions are sent to the MDServer
+    public long flushIntervalMs = 10000L;
+    // Apply threads shared by all accounts of a MultiAccountBankServer
+    public int applyThreads = Runtime.getRuntime().availableProcessors();
+    // Transactions that may wait for the MDServer before submissions are throttled
+    public int maxOutstanding = 10_000;
+    // How long a throttled deposit/addInterest/getSyncedBalance waits for room before it is rejected
+    public long submitTimeoutMs = 1000L;
+    // Threads that forward messages to our children in tree dissemination
+    public ExecutionModel executionModel = ExecutionModel.VIRTUAL;
+    // Executed transactions kept as objects on the heap; older ones go to a memory-mapped archive. 0 keeps all on the heap
+    public int historyWindow = 10_000;
+    // Where the history archives are created
+    public Path historyDir = Path.of(System.getProperty("java.io.tmpdir"), "bankserver-history");
+    // How often the MDServer is probed; when it stops answering, the replica rejoins whichever MDServer the registry has then
+    public long sequencerCheckMs = 500L;
+    // Who orders the group's transactions: the MDServer, or the voting replicas among themselves (standalone replicas only)
+    public Ordering ordering = Ordering.SEQUENCER;
+    // Orders between balance checkpoints for getBalancesAt: fewer means more memory, more means longer replays. 0 turns them off
+    public int checkpointEvery = 1000;
+    // Standbys only: synthetic transactions run through the apply and marshalling code at start-up, so the JIT has compiled it before a promotion
+    public int warmupTransactions = 200_000;
+
+    /**
+     * Reads the --name=value options from args into this object and returns the positional arguments.
+     */
+    public List<String> parse(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            String[] option = arg.substring(2).split("=", 2);
+            String value = option.length > 1 ? option[1] : "true";
+            switch (option[0]) {
+                case "role" -> role = ReplicaRole.valueOf(value.toUpperCase());
+                case "commutative-deposits" -> commutativeDeposits = Boolean.parseBoolean(value);
+                case "flush-interval-ms" -> flushIntervalMs = Long.parseLong(value);
+                case "apply-threads" -> applyThreads = Integer.parseInt(value);
+                case "max-outstanding" -> maxOutstanding = Integer.parseInt(value);
+                case "submit-timeout-ms" -> submitTimeoutMs = Long.parseLong(value);
+                case "executor" -> executionModel = ExecutionModel.valueOf(value.toUpperCase());
+                case "history-window" -> historyWindow = Integer.parseInt(value);
+                case "history-dir" -> historyDir = Path.of(value);
+                case "sequencer-check-ms" -> sequencerCheckMs = Long.parseLong(value);
+                case "ordering" -> ordering = Ordering.valueOf(value.toUpperCase());
+                case "checkpoint-every" -> checkpointEvery = Integer.parseInt(value);
+                case "warmup-transactions" -> warmupTransactions = Integer.parseInt(value);
+                case "log-level" -> Log.setLevel(Log.Level.valueOf(value.toUpperCase()));
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return positional;
+    }
+
+    public static String usage() {
+        return "[--role=voting|observer|standby] [--commutative-deposits] [--flush-interval-ms=N] [--apply-threads=N] [--max-outstanding=N] [--submit-timeout-ms=N] [--executor=platform|virtual] [--history-window=N] [--history-dir=path] [--sequencer-check-ms=N] [--ordering=sequencer|isis] [--checkpoint-every=N] [--warmup-transactions=N] [--log-level=debug|info|warn|error]";
+    }
+}
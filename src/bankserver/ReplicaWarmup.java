@@ -0,0 +1,77 @@
+package bankserver;
+
+import common.Log;
+import common.Message;
+import common.RateTable;
+import common.Transaction;
+import common.TransactionLog;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs synthetic transactions through a replica's hot code before it serves anyone, so a standby
+ * is JIT-compiled by the time it is promoted. A promoted standby then starts at full speed
+ * instead of interpreting its first seconds of load.
+ *
+ * Covers the state machine (parsing and applying deposits, interest and rate updates), balance
+ * conversion and fingerprints, and the serialization RMI uses for messages. The ordered stream
+ * the standby tails keeps the same code warm afterwards.
+ */
+final class ReplicaWarmup {
+    private static final int BATCH = 100;
+
+    private ReplicaWarmup() {
+    }
+
+    static void start(String instanceName, RateTable rates, int transactions) {
+        if (transactions <= 0) {
+            return;
+        }
+        Thread.ofPlatform().name(instanceName + "-warmup").daemon(true).start(() -> {
+            long start = System.nanoTime();
+            try {
+                run(instanceName, rates, transactions);
+                Log.info(instanceName + " warmed up with " + transactions + " transactions in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+            } catch (IOException | ClassNotFoundException e) {
+                Log.warn(instanceName + " could not finish its warm-up: " + e);
+            }
+        });
+    }
+
+    private static void run(String instanceName, RateTable rates, int transactions) throws IOException, ClassNotFoundException {
+        AccountReplay replay = new AccountReplay(rates, TransactionLog.Kind.ORDERED, order -> order % 1000 == 0);
+        String[] currencies = rates.asMap().keySet().toArray(new String[0]);
+        String origin = instanceName + "-warmup";
+        long counter = 0;
+        for (int done = 0; done < transactions; done += BATCH) {
+            List<Transaction> batch = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                String currency = currencies[(int) (counter % currencies.length)];
+                String command = switch ((int) (counter % 20)) {
+                    case 0 -> "addInterest " + currency + " 0.01";
+                    case 1 -> "addInterest 0.01";
+                    case 2 -> "updateRates " + currency + " " + rates.toUSD(rates.requireIndex(currency), 1.0);
+                    case 3 -> "getSyncedBalance " + currency;
+                    default -> "deposit " + currency + " " + (1 + counter % 100) + ".0";
+                };
+                batch.add(new Transaction(command, origin + " " + counter++, System.currentTimeMillis()));
+            }
+            Message message = roundTrip(new Message(origin, batch));
+            replay.replay(message.getTransactions());
+            replay.snapshot().total("USD");
+        }
+    }
+
+    // What RMI does to every message on its way to us
+    private static Message roundTrip(Message message) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Message) in.readObject();
+        }
+    }
+}
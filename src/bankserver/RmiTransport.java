@@ -0,0 +1,75 @@
+package bankserver;
+
+import mdserver.MDServerInterface;
+import mdserver.ShardDirectoryInterface;
+import mdserver.ShardMap;
+
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transport through the RMI registry that also hosts the MDServer, e.g. "localhost:1099".
+ * If a shard directory is bound there, each group's MDServer is the shard the directory's map
+ * names for it; otherwise it is the one bound as "MDServer".
+ */
+public class RmiTransport implements Transport {
+    private final String registryHostPort;
+    private ShardMap shardMap; // fetched on first use and again after a reconnect
+    // Looked up once per registry name and shared by every replica using this transport
+    private final Map<String, MDServerInterface> mdServers = new HashMap<>();
+
+    public RmiTransport(String registryHostPort) {
+        this.registryHostPort = registryHostPort;
+    }
+
+    @Override
+    public synchronized MDServerInterface mdServer(String groupName) throws Exception {
+        String name = shardMap().registryNameFor(groupName);
+        MDServerInterface server = mdServers.get(name);
+        if (server == null) {
+            server = (MDServerInterface) Naming.lookup(urlOf(name));
+            mdServers.put(name, server);
+        }
+        return server;
+    }
+
+    @Override
+    public synchronized MDServerInterface reconnect(String groupName, MDServerInterface stale) throws Exception {
+        // The group may have moved to another shard, or a standby may have replaced its MDServer.
+        shardMap = null;
+        mdServers.values().removeIf(server -> server == stale);
+        return mdServer(groupName);
+    }
+
+    private ShardMap shardMap() throws Exception {
+        if (shardMap == null) {
+            try {
+                shardMap = ((ShardDirectoryInterface) Naming.lookup(urlOf(ShardDirectoryInterface.REGISTRY_NAME))).shardMap();
+            } catch (NotBoundException e) {
+                shardMap = ShardMap.single();
+            }
+        }
+        return shardMap;
+    }
+
+    @Override
+    public BankServerInterface lookup(String instanceName) throws Exception {
+        return (BankServerInterface) Naming.lookup(urlOf(instanceName));
+    }
+
+    @Override
+    public void bind(String instanceName, BankServerInterface replica) throws Exception {
+        Naming.rebind(urlOf(instanceName), replica);
+    }
+
+    private String urlOf(String name) {
+        return "rmi://" + registryHostPort + "/" + name;
+    }
+
+    @Override
+    public String toString() {
+        return "rmi://" + registryHostPort;
+    }
+}
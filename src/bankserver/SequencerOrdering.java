@@ -0,0 +1,25 @@
+package bankserver;
+
+import common.Message;
+import common.OverloadedException;
+import mdserver.MDServerInterface;
+
+import java.rmi.RemoteException;
+import java.util.function.Supplier;
+
+/**
+ * The MDServer orders: it queues the message in the group's stop-and-wait queue, numbers it and
+ * delivers it through receiveMessage or relayMessage, which the replicas ACK.
+ */
+final class SequencerOrdering implements OrderingEngine {
+    private final Supplier<MDServerInterface> mdServer; // the replica's current one, replaced when it rejoins
+
+    SequencerOrdering(Supplier<MDServerInterface> mdServer) {
+        this.mdServer = mdServer;
+    }
+
+    @Override
+    public void submit(Message message) throws RemoteException, OverloadedException {
+        mdServer.get().broadcastMessage(message);
+    }
+}
@@ -0,0 +1,206 @@
+package bankserver;
+
+import common.Log;
+import common.Transaction;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A replica's executed transactions by order: the most recent ones as objects on the heap,
+ * older ones in a HistoryArchive.
+ *
+ * Adding never does I/O. Once the heap window is a quarter over its size, a task on the shared
+ * archiver thread copies the oldest transactions into the archive and only then drops them from
+ * the window, so every order stays readable throughout. The archive files are created on the
+ * first eviction. A window of 0 keeps everything on the heap.
+ */
+class TieredHistory {
+    // One thread archives for every replica in the process
+    private static final ExecutorService archiver =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("history-archiver").daemon(true).factory());
+
+    private final String name;
+    private final int window;
+    private final Path directory;
+    private final List<Transaction> recent = new ArrayList<>();
+    private int recentFirstOrder = 1;
+    private int archivedFirstOrder = 1; // archived orders are archivedFirstOrder to recentFirstOrder - 1
+    private HistoryArchive archive; // null until the first eviction
+    private boolean evicting = false;
+    private boolean archiveFailed = false;
+    private volatile long generation = 0; // bumped by clear() and restore() so a running eviction discards its batch
+
+    TieredHistory(String name, int window, Path directory) {
+        this.name = name;
+        this.window = window;
+        this.directory = directory;
+    }
+
+    synchronized void add(Transaction tx) {
+        recent.add(tx);
+        if (window > 0 && !evicting && !archiveFailed && recent.size() >= window + Math.max(1, window / 4)) {
+            evicting = true;
+            long current = generation;
+            List<Transaction> batch = new ArrayList<>(recent.subList(0, recent.size() - window));
+            archiver.execute(() -> evict(batch, current));
+        }
+    }
+
+    private void evict(List<Transaction> batch, long expectedGeneration) {
+        try {
+            HistoryArchive target = archive();
+            synchronized (target) {
+                if (generation != expectedGeneration) {
+                    return;
+                }
+                target.append(batch);
+            }
+            synchronized (this) {
+                if (generation == expectedGeneration) {
+                    recent.subList(0, batch.size()).clear();
+                    recentFirstOrder += batch.size();
+                }
+            }
+        } catch (IOException e) {
+            // Keep the transactions on the heap and stop archiving rather than losing history.
+            Log.warn(name + " could not archive history, keeping it on the heap: " + e.getMessage());
+            synchronized (this) {
+                archiveFailed = true;
+            }
+        } finally {
+            synchronized (this) {
+                evicting = false;
+            }
+        }
+    }
+
+    private HistoryArchive archive() throws IOException {
+        synchronized (this) {
+            if (archive != null) {
+                return archive;
+            }
+        }
+        // Files are created outside the lock; a concurrent add() must not wait for them.
+        HistoryArchive created = new HistoryArchive(directory, name);
+        synchronized (this) {
+            if (archive == null) {
+                archive = created;
+                archive.clear(archivedFirstOrder);
+                return archive;
+            }
+        }
+        created.close();
+        synchronized (this) {
+            return archive;
+        }
+    }
+
+    /**
+     * The transaction with the given order, between firstOrder() and endOrder() - 1.
+     * The archive is read outside our lock, so adding never waits behind an archive read or write.
+     */
+    Transaction get(int order) {
+        HistoryArchive current;
+        synchronized (this) {
+            if (order >= recentFirstOrder) {
+                return recent.get(order - recentFirstOrder);
+            }
+            current = archive;
+        }
+        return current.read(order);
+    }
+
+    synchronized int firstOrder() {
+        return archivedFirstOrder;
+    }
+
+    /**
+     * One past the last order added.
+     */
+    synchronized int endOrder() {
+        return recentFirstOrder + recent.size();
+    }
+
+    synchronized int recentSize() {
+        return recent.size();
+    }
+
+    synchronized int archivedSize() {
+        return recentFirstOrder - archivedFirstOrder;
+    }
+
+    /**
+     * Scans the heap window only; archived transactions are found through the replica's high-water marks.
+     */
+    synchronized boolean recentlyContains(String txId) {
+        return recent.stream().anyMatch(tx -> tx.getUniqueId().equals(txId));
+    }
+
+    /**
+     * Drops everything; the next transaction added will have order nextOrder.
+     */
+    void clear(int nextOrder) {
+        HistoryArchive current;
+        synchronized (this) {
+            generation++;
+            recent.clear();
+            recentFirstOrder = nextOrder;
+            archivedFirstOrder = nextOrder;
+            current = archive;
+        }
+        if (current != null) {
+            current.clear(nextOrder);
+        }
+    }
+
+    /**
+     * The bounds of the history and a copy of the heap window, taken together so that an
+     * eviction cannot move transactions between the two parts in between.
+     */
+    synchronized Snapshot snapshot() {
+        return new Snapshot(archivedFirstOrder, recentFirstOrder, new ArrayList<>(recent));
+    }
+
+    record Snapshot(int firstOrder, int archivedEndOrder, List<Transaction> recent) {
+    }
+
+    /**
+     * Reads the transactions from fromOrder on, up to toOrder inclusive; may return fewer.
+     */
+    @FunctionalInterface
+    interface Source {
+        List<Transaction> read(int fromOrder, int toOrder) throws IOException;
+    }
+
+    /**
+     * Replaces everything with a donor's history: the orders firstOrder to archivedEndOrder - 1,
+     * read from the source a batch at a time straight into the archive, followed by its heap window.
+     * Only one batch is on the heap at a time.
+     */
+    void restore(int firstOrder, int archivedEndOrder, Source archived, List<Transaction> recentTransactions) throws IOException {
+        clear(firstOrder);
+        if (archivedEndOrder > firstOrder) {
+            HistoryArchive target = archive();
+            for (int next = firstOrder; next < archivedEndOrder; ) {
+                List<Transaction> batch = archived.read(next, archivedEndOrder - 1);
+                if (batch.isEmpty()) {
+                    throw new IOException("The donor's history stopped at order " + next + " of " + (archivedEndOrder - 1) + ".");
+                }
+                synchronized (target) {
+                    target.append(batch);
+                }
+                next += batch.size();
+            }
+        }
+        synchronized (this) {
+            archivedFirstOrder = firstOrder;
+            recentFirstOrder = archivedEndOrder;
+            recent.addAll(recentTransactions);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package bankserver;
+
+import mdserver.MDServerInterface;
+
+/**
+ * How a replica reaches the MDServer and the other replicas of its group, and how it makes
+ * itself reachable for clients and peers. RmiTransport goes through the RMI registry;
+ * embedded.LocalTransport connects objects living in the same JVM.
+ */
+public interface Transport {
+    /**
+     * The MDServer that orders the given group; with a single MDServer, the same one for every group.
+     */
+    MDServerInterface mdServer(String groupName) throws Exception;
+
+    /**
+     * The MDServer to use for the group after stale stopped answering or turned the group away,
+     * e.g. because a standby took over or the group moved to another shard. This can be stale
+     * again until the takeover or move has happened.
+     */
+    default MDServerInterface reconnect(String groupName, MDServerInterface stale) throws Exception {
+        return mdServer(groupName);
+    }
+
+    BankServerInterface lookup(String instanceName) throws Exception;
+
+    void bind(String instanceName, BankServerInterface replica) throws Exception;
+}
@@ -1,25 +1,41 @@
 package bankserver.utils;
 
 import bankserver.BankServerInterface;
+import common.BalanceSnapshot;
+import common.CurrencyConverter;
+import common.HistoryEntry;
+import common.HistoryPage;
+import common.HistoryQuery;
+import common.Log;
+import common.OverloadedException;
+import common.Transaction;
+import common.TransactionLog;
 import java.io.*;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 public class CommandProcessor {
     private final BankServerInterface bankServer;
+    private final String accountName;
+    private String sessionToken; // id of our last write, so getSessionBalance reads our own writes
 
     // Logging
-    private final PrintWriter logWriter;
+    private final Writer logWriter; // written only by the background log writer
 
-    public CommandProcessor(BankServerInterface bankServer, String serverName) throws IOException {
+    public CommandProcessor(BankServerInterface bankServer, String serverName, String accountName) throws IOException {
         this.bankServer = bankServer;
+        this.accountName = accountName;
 
         // Ensure logs directory exists
         File logDir = new File("logs");
         if (!logDir.exists()) logDir.mkdirs();
 
         // Each replica writes to its own log
-        this.logWriter = new PrintWriter(new FileWriter("logs/" + serverName + ".log", true), true);
+        this.logWriter = new BufferedWriter(new FileWriter("logs/" + serverName + ".log", true));
         log("=== Replica " + serverName + " started ===");
     }
 
@@ -36,8 +52,7 @@ public class CommandProcessor {
         } catch (Exception e) {
             String detail = e.getMessage() != null ? e.getMessage() : e.toString();
             String error = "Error in interactive mode: " + detail;
-            System.err.println(error);
-            e.printStackTrace();
+            Log.error(error, e);
             log(error);
         }finally{
             scanner.close();
@@ -80,6 +95,12 @@ public class CommandProcessor {
                     }
                 }
 
+                case "getSessionBalance" -> {
+                    String currency = parts.length < 2 ? "USD" : parts[1];
+                    double bal = sessionToken == null ? bankServer.getQuickBalance(currency) : bankServer.getSessionBalance(currency, sessionToken);
+                    log("Session balance for " + currency + ": " + bal + (sessionToken == null ? " (nothing written yet)" : " (after " + sessionToken + ")"));
+                }
+
                 case "getSyncedBalance" -> {
                     if (parts.length < 2) {
                         log("ERROR: Missing currency for getSyncedBalance, defaulting to USD");
@@ -95,6 +116,7 @@ public class CommandProcessor {
                     } else {
                         try {
                             String txId = bankServer.deposit(parts[1].toUpperCase(), Double.parseDouble(parts[2]));
+                            sessionToken = txId;
                             log("Deposit " + parts[2] + " " + parts[1] + " (txId=" + txId + ")");
                         } catch (IllegalArgumentException e) {
                             log("Error processing command: deposit " + parts[1] + " " + parts[2] + " -> " + e.getMessage());
@@ -114,6 +136,17 @@ public class CommandProcessor {
                             txId = bankServer.addInterest(parts[1].toUpperCase(), Double.parseDouble(parts[2]));
                             log("AddInterest " + parts[2] + "% to " + parts[1] + " (txId=" + txId + ")");
                         }
+                        sessionToken = txId;
+                    }
+                }
+
+                case "updateRates" -> {
+                    if (parts.length < 2) {
+                        log("ERROR: Missing rate file for updateRates");
+                    } else {
+                        String txId = bankServer.updateRates(CurrencyConverter.readRates(parts[1]));
+                        sessionToken = txId;
+                        log("UpdateRates from " + parts[1] + " (txId=" + txId + ")");
                     }
                 }
 
@@ -121,6 +154,35 @@ public class CommandProcessor {
                     bankServer.getHistory();
                 }
 
+                case "queryHistory" -> {
+                    HistoryQuery query = new HistoryQuery().parse(Arrays.copyOfRange(parts, 1, parts.length));
+                    HistoryPage page = bankServer.queryHistory(query);
+                    StringBuilder sb = new StringBuilder("History matching " + commandLine.substring(cmd.length()).trim() + ":\n");
+                    for (HistoryEntry entry : page.getEntries()) {
+                        sb.append(entry.getOrder()).append(". ").append(entry.getCommand()).append(" (ID: ").append(entry.getTxId()).append(")\n");
+                    }
+                    sb.append(page.hasMore() ? "More with cursor=" + page.getNextCursor() : "(end)");
+                    log(sb.toString());
+                }
+
+                case "getBalancesAt" -> {
+                    if (parts.length < 2) {
+                        log("ERROR: Missing order for getBalancesAt");
+                    } else {
+                        BalanceSnapshot snapshot = bankServer.getBalancesAt(Integer.parseInt(parts[1]));
+                        String currency = parts.length > 2 ? parts[2] : "USD";
+                        log(snapshot + "\nTotal in " + currency + ": " + snapshot.total(currency) + "\nFingerprint: " + snapshot.fingerprint());
+                    }
+                }
+
+                case "exportHistory" -> {
+                    if (parts.length < 2) {
+                        log("ERROR: Missing file for exportHistory");
+                    } else {
+                        log("Exported " + exportHistory(Path.of(parts[1])) + " transactions to " + parts[1]);
+                    }
+                }
+
                 case "checkTxStatus" -> {
                     if (parts.length < 2) {
                         log("ERROR: Missing txId for checkTxStatus");
@@ -129,6 +191,21 @@ public class CommandProcessor {
                     }
                 }
 
+                case "latencyStats" -> {
+                    log(bankServer.getLatencyReport());
+                }
+
+                case "load" -> {
+                    if (parts.length < 5) {
+                        log("ERROR: Usage: load <clients> <seconds> <ops per second|closed> <mix spec|@mix file>");
+                    } else {
+                        double rate = "closed".equals(parts[3]) ? 0 : Double.parseDouble(parts[3]);
+                        LoadGenerator generator = new LoadGenerator(List.of(bankServer), LoadGenerator.parseMix(parts[4]), Integer.parseInt(parts[1]), rate);
+                        log("Running load: " + commandLine);
+                        log(generator.run(Long.parseLong(parts[2]) * 1000));
+                    }
+                }
+
                 case "cleanHistory" -> {
                     bankServer.cleanHistory();
                     log("Transaction history cleaned");
@@ -150,6 +227,7 @@ public class CommandProcessor {
 
                 case "exit" -> {
                     log("Exiting.");
+                    Log.flush();
                     logWriter.close();
                     System.exit(0);
                     return false;
@@ -157,19 +235,44 @@ public class CommandProcessor {
 
                 default -> log("Unknown command: " + cmd);
             }
+        } catch (OverloadedException e) {
+            log("Rejected, server overloaded: " + commandLine + " -> " + e.getMessage() + " Retry after " + e.getRetryAfterMs() + " ms.");
         } catch (Exception e) {
             String detail = e.getMessage() != null ? e.getMessage() : e.toString();
             String error = "Error processing command: " + commandLine + " -> " + detail;
-            System.err.println(error);
-            e.printStackTrace();
+            Log.error(error, e);
             log(error);
         }
         return true;
     }
 
-    // Logging helper
+    // Writes the whole history as an APPLIED transaction log, for bankserver.Replay
+    private int exportHistory(Path file) throws IOException {
+        HistoryQuery query = new HistoryQuery();
+        query.pageSize = 1000;
+        int exported = 0;
+        try (TransactionLog.Writer writer = new TransactionLog.Writer(file, TransactionLog.Kind.APPLIED)) {
+            HistoryPage page;
+            do {
+                page = bankServer.queryHistory(query);
+                List<Transaction> transactions = new ArrayList<>();
+                for (HistoryEntry entry : page.getEntries()) {
+                    if (entry.getOrder() != exported + 1) {
+                        throw new IOException("History starts at order " + entry.getOrder() + " after cleanHistory; a replay needs it from order 1.");
+                    }
+                    transactions.add(new Transaction(entry.getCommand(), entry.getTxId(), entry.getTimestamp()));
+                    exported++;
+                }
+                writer.append(accountName, transactions);
+                query.cursor = page.getNextCursor();
+            } while (page.hasMore());
+        }
+        return exported;
+    }
+
+    // Logging helper: console and the replica's log file, both written asynchronously
     private void log(String msg) {
-        System.out.println(msg);
-        logWriter.println("[" + System.currentTimeMillis() + "] " + msg);
+        Log.info(msg);
+        Log.write(logWriter, "[" + System.currentTimeMillis() + "] " + msg);
     }
 }
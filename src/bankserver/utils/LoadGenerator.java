@@ -0,0 +1,239 @@
+package bankserver.utils;
+
+import bankserver.BankServerInterface;
+import common.LatencyHistogram;
+import common.OverloadedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a weighted mix of client commands against one or more replicas from many concurrent
+ * clients, each on its own virtual thread.
+ *
+ * In closed loop each client issues its next command as soon as the previous one returns. In
+ * open loop the clients share a target rate and every command has an intended start time on a
+ * fixed schedule; when the servers fall behind, the commands queue up behind their schedule
+ * instead of silently lowering the load.
+ *
+ * Two latencies are recorded per command type, in microseconds. Service time runs from the
+ * actual call to its return. Latency is corrected for coordinated omission. In open loop it is
+ * measured from the intended start time. In closed loop a slow call also stands for the calls
+ * the client would have made during it, spaced by the client's mean service time, as HdrHistogram's
+ * recordValueWithExpectedInterval does.
+ */
+public class LoadGenerator {
+    // Command line used for each operation name in a mix spec
+    private static final Map<String, String> DEFAULT_COMMANDS = Map.of(
+            "deposit", "deposit USD 10",
+            "addInterest", "addInterest USD 0.01",
+            "addInterestAll", "addInterest 0.01",
+            "getQuickBalance", "getQuickBalance USD",
+            "getSessionBalance", "getSessionBalance USD",
+            "getSyncedBalance", "getSyncedBalance USD");
+
+    private final List<? extends BankServerInterface> targets;
+    private final List<String> commands = new ArrayList<>();
+    private final int[] cumulativeWeights;
+    private final int clients;
+    private final double targetRate; // commands per second over all clients, 0 for closed loop
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> serviceTimes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>(); // OverloadedException
+
+    public LoadGenerator(List<? extends BankServerInterface> targets, Map<String, Integer> mix, int clients) {
+        this(targets, mix, clients, 0);
+    }
+
+    /**
+     * @param mix weight per command line, e.g. {"deposit USD 10": 80, "getSyncedBalance USD": 20}
+     * @param clients concurrent clients; client i talks to targets.get(i % targets.size())
+     * @param targetRate commands per second over all clients, or 0 to run in closed loop
+     */
+    public LoadGenerator(List<? extends BankServerInterface> targets, Map<String, Integer> mix, int clients, double targetRate) {
+        if (targets.isEmpty() || mix.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one target and one command");
+        }
+        this.targets = targets;
+        this.clients = clients;
+        this.targetRate = targetRate;
+        this.cumulativeWeights = new int[mix.size()];
+        int total = 0;
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            total += entry.getValue();
+            cumulativeWeights[commands.size()] = total;
+            commands.add(entry.getKey());
+        }
+    }
+
+    /**
+     * Parses a spec such as "deposit:80,addInterest:15,getSyncedBalance:5" into command lines.
+     * Known names are deposit, addInterest, addInterestAll, getQuickBalance, getSessionBalance and getSyncedBalance.
+     * "@file" reads a mix file instead, with one "weight command" per line, e.g. "80 deposit EUR 25".
+     */
+    public static Map<String, Integer> parseMix(String spec) throws IOException {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        if (spec.startsWith("@")) {
+            for (String line : Files.readAllLines(Paths.get(spec.substring(1)))) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] weightAndCommand = line.split("\\s+", 2);
+                mix.merge(weightAndCommand[1], Integer.parseInt(weightAndCommand[0]), Integer::sum);
+            }
+            return mix;
+        }
+        for (String part : spec.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            String command = DEFAULT_COMMANDS.get(nameAndWeight[0]);
+            if (command == null || nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry '" + part + "', expected one of " + DEFAULT_COMMANDS.keySet() + " with :weight");
+            }
+            mix.put(command, Integer.parseInt(nameAndWeight[1]));
+        }
+        return mix;
+    }
+
+    /**
+     * Runs the clients for the given time and returns a report of throughput and latency per command type.
+     */
+    public String run(long durationMs) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            BankServerInterface target = targets.get(i % targets.size());
+            int client = i;
+            threads.add(Thread.ofVirtual().name("load-client-" + i).start(() -> runClient(client, target, start, deadline)));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return report(System.nanoTime() - start);
+    }
+
+    private void runClient(int client, BankServerInterface target, long start, long deadline) {
+        // In open loop each client owns every clients-th slot of the shared schedule.
+        long intervalNanos = targetRate > 0 ? (long) (1e9 * clients / targetRate) : 0;
+        long intended = start + (intervalNanos / clients) * client;
+        long calls = 0;
+        long totalServiceMicros = 0;
+        String sessionToken = null; // id of this client's last write, for getSessionBalance
+        while (true) {
+            if (intervalNanos > 0) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            long begin = System.nanoTime();
+            if (begin >= deadline) {
+                break;
+            }
+            String[] parts = nextCommand().split("\\s+");
+            String type = parts[0];
+            try {
+                String written = execute(target, parts, sessionToken);
+                if (written != null) {
+                    sessionToken = written;
+                }
+                long end = System.nanoTime();
+                long service = (end - begin) / 1000;
+                serviceTimes.computeIfAbsent(type, _ -> new LatencyHistogram()).record(service);
+                calls++;
+                totalServiceMicros += service;
+                LatencyHistogram latency = latencies.computeIfAbsent(type, _ -> new LatencyHistogram());
+                if (intervalNanos > 0) {
+                    latency.record((end - intended) / 1000);
+                } else {
+                    recordCorrected(latency, service, totalServiceMicros / calls);
+                }
+            } catch (OverloadedException e) {
+                rejections.computeIfAbsent(type, _ -> new LongAdder()).increment();
+            } catch (Exception e) {
+                errors.computeIfAbsent(type, _ -> new LongAdder()).increment();
+            }
+            intended += intervalNanos;
+        }
+    }
+
+    private static void recordCorrected(LatencyHistogram histogram, long value, long expectedInterval) {
+        histogram.record(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missed = value - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+            histogram.record(missed);
+        }
+    }
+
+    private String nextCommand() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return commands.get(i);
+            }
+        }
+        return commands.get(commands.size() - 1);
+    }
+
+    // Returns the transaction id of a write, or null for a read
+    private static String execute(BankServerInterface target, String[] parts, String sessionToken) throws Exception {
+        switch (parts[0]) {
+            case "deposit" -> {
+                return target.deposit(parts[1], Double.parseDouble(parts[2]));
+            }
+            case "addInterest" -> {
+                if (parts.length == 2) {
+                    return target.addInterest(null, Double.parseDouble(parts[1]));
+                }
+                return target.addInterest(parts[1], Double.parseDouble(parts[2]));
+            }
+            case "getQuickBalance" -> target.getQuickBalance(parts[1]);
+            case "getSessionBalance" -> {
+                if (sessionToken == null) {
+                    target.getQuickBalance(parts[1]); // nothing written yet
+                } else {
+                    target.getSessionBalance(parts[1], sessionToken);
+                }
+            }
+            case "getSyncedBalance" -> target.getSyncedBalance(parts[1]);
+            default -> throw new IllegalArgumentException("Unsupported load command: " + parts[0]);
+        }
+        return null;
+    }
+
+    private String report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder sb = new StringBuilder();
+        String mode = targetRate > 0 ? String.format("open loop at %.0f ops/s", targetRate) : "closed loop";
+        sb.append(String.format("--- Load: %d clients, %s, for %.1fs (microseconds, latency corrected for coordinated omission) ---%n", clients, mode, seconds));
+        long totalOps = 0;
+        Set<String> types = new TreeSet<>(latencies.keySet());
+        types.addAll(errors.keySet());
+        types.addAll(rejections.keySet());
+        for (String type : types) {
+            LatencyHistogram service = serviceTimes.getOrDefault(type, new LatencyHistogram());
+            LatencyHistogram latency = latencies.getOrDefault(type, new LatencyHistogram());
+            long failed = errors.containsKey(type) ? errors.get(type).sum() : 0;
+            long rejected = rejections.containsKey(type) ? rejections.get(type).sum() : 0;
+            totalOps += service.count();
+            sb.append(String.format("%-18s %8.1f ops/s errors=%d rejected=%d%n", type, service.count() / seconds, failed, rejected));
+            sb.append(String.format("  %-16s %s%n", "service time", service.summary()));
+            sb.append(String.format("  %-16s p50=%d p99=%d p999=%d max=%d%n", "latency", latency.percentile(50),
+                    latency.percentile(99), latency.percentile(99.9), latency.max()));
+        }
+        sb.append(String.format("%-18s %8.1f ops/s%n", "total", totalOps / seconds));
+        return sb.toString();
+    }
+}
@@ -3,19 +3,47 @@ package common;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 
 public class AccountState implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 8L;
 
     public final Map<String, Double> balances;
-    public final List<Transaction> executedList;
+    public final List<Transaction> executedList; // the donor's heap window of its history
+    // Older history stays with the donor: orders historyFirstOrder to archivedEndOrder - 1 are paged
+    // through queryHistory, executedList starts at archivedEndOrder
+    public final int historyFirstOrder;
+    public final int archivedEndOrder;
+    // Highest transaction counter applied per origin replica, to skip duplicates
+    public final Map<String, Long> appliedHighWater;
     public final List<Transaction> outstandingCollection;
     public final int orderCounter;
+    public final long lastSequence; // last ordered message sequence reflected in this state
+    // Commutative deposit log: highest folded deposit per origin, and the deposits not folded yet
+    public final Map<String, Long> foldedDeposits;
+    // Session token counters of folded deposits above each origin's high-water mark, as ranges first -> last
+    public final Map<String, NavigableMap<Long, Long>> foldedDepositTokens;
+    public final List<DepositEntry> unfoldedDeposits;
+    // Trading rates in effect at orderCounter
+    public final RateTable rates;
+    // Balance checkpoints for point-in-time queries, oldest first
+    public final List<BalanceSnapshot> checkpoints;
 
-    public AccountState(Map<String, Double> balances, List<Transaction> executed, List<Transaction> outstanding, int orderCounter) {
+    public AccountState(Map<String, Double> balances, List<Transaction> executed, List<Transaction> outstanding, int orderCounter, long lastSequence,
+                        Map<String, Long> foldedDeposits, Map<String, NavigableMap<Long, Long>> foldedDepositTokens, List<DepositEntry> unfoldedDeposits, RateTable rates,
+                        int historyFirstOrder, int archivedEndOrder, Map<String, Long> appliedHighWater, List<BalanceSnapshot> checkpoints) {
         this.balances = balances;
         this.executedList = executed;
         this.outstandingCollection = outstanding;
         this.orderCounter = orderCounter;
+        this.lastSequence = lastSequence;
+        this.foldedDeposits = foldedDeposits;
+        this.foldedDepositTokens = foldedDepositTokens;
+        this.unfoldedDeposits = unfoldedDeposits;
+        this.rates = rates;
+        this.historyFirstOrder = historyFirstOrder;
+        this.archivedEndOrder = archivedEndOrder;
+        this.appliedHighWater = appliedHighWater;
+        this.checkpoints = checkpoints;
     }
 }
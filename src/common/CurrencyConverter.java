@@ -2,9 +2,14 @@ package common;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Converts between currencies using the current RateTable snapshot. The snapshot is replaced
+ * as a whole when new rates are applied, so readers never see a half-updated table.
+ */
 public class CurrencyConverter {
-    private final Map<String, Double> rates = new HashMap<>();
+    private final AtomicReference<RateTable> rates;
 
     /**
      * Constructor that loads trading rates from a file.
@@ -18,20 +23,65 @@ public class CurrencyConverter {
      */
     public CurrencyConverter(String filename) throws IOException {
         // Add USD as the default currency with a rate of 1.0
-        rates.put("USD", 1.0);
+        Map<String, Double> initial = new HashMap<>(readRates(filename));
+        initial.put("USD", 1.0);
+        this.rates = new AtomicReference<>(new RateTable(1, initial));
+    }
+
+    /**
+     * A converter of its own that starts from the given snapshot, e.g. one per replica so that
+     * each switches rates at its own point in the ordered stream.
+     */
+    public CurrencyConverter(RateTable snapshot) {
+        this.rates = new AtomicReference<>(snapshot);
+    }
 
-        // Load trading rates from the file
+    /**
+     * Reads a rate file: lines of "<Currency> <RateToUSD>", other lines are skipped.
+     */
+    public static Map<String, Double> readRates(String filename) throws IOException {
+        Map<String, Double> rates = new LinkedHashMap<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\s+");
+                String[] parts = line.trim().split("\\s+");
                 if (parts.length == 2) {
                     String currency = parts[0].toUpperCase();
                     double rateToUSD = Double.parseDouble(parts[1]);
+                    if (rateToUSD <= 0) {
+                        throw new IOException("Rate for " + currency + " must be positive: " + line);
+                    }
                     rates.put(currency, rateToUSD);
                 }
             }
         }
+        return rates;
+    }
+
+    public RateTable snapshot() {
+        return rates.get();
+    }
+
+    /**
+     * Installs the snapshot unless we already have that version or a newer one.
+     * Returns whether it was installed.
+     */
+    public boolean install(RateTable snapshot) {
+        RateTable current;
+        do {
+            current = rates.get();
+            if (snapshot.version() <= current.version()) {
+                return false;
+            }
+        } while (!rates.compareAndSet(current, snapshot));
+        return true;
+    }
+
+    /**
+     * Takes over another replica's snapshot regardless of version, e.g. on state transfer.
+     */
+    public void replace(RateTable snapshot) {
+        rates.set(snapshot);
     }
 
     /**
@@ -41,11 +91,8 @@ public class CurrencyConverter {
      * @return The equivalent amount in USD.
      */
     public double toUSD(String currency, double amount) {
-        Double rate = rates.get(currency.toUpperCase());
-        if (rate == null) {
-            throw new IllegalArgumentException("Unsupported currency: " + currency);
-        }
-        return amount * rate;
+        RateTable table = rates.get();
+        return table.toUSD(table.requireIndex(currency), amount);
     }
 
     /**
@@ -55,11 +102,16 @@ public class CurrencyConverter {
      * @return The equivalent amount in the specified currency.
      */
     public double fromUSD(String currency, double amount) {
-        Double rate = rates.get(currency.toUpperCase());
-        if (rate == null) {
-            throw new IllegalArgumentException("Unsupported currency: " + currency);
-        }
-        return amount / rate;
+        RateTable table = rates.get();
+        return table.fromUSD(table.requireIndex(currency), amount);
+    }
+
+    /**
+     * Converts an amount between two currencies with the precomputed cross rate.
+     */
+    public double convert(String from, String to, double amount) {
+        RateTable table = rates.get();
+        return table.convert(table.requireIndex(from), table.requireIndex(to), amount);
     }
 
     /**
@@ -67,14 +119,14 @@ public class CurrencyConverter {
      * @return A set of supported currency codes.
      */
     public Set<String> supportedCurrencies() {
-        return rates.keySet();
+        return rates.get().asMap().keySet();
     }
 
     /**
      * Prints all the loaded trading rates for debugging purposes.
      */
     public void printRates() {
-        System.out.println("Loaded trading rates:");
-        rates.forEach((currency, rate) -> System.out.println(currency + " -> USD: " + rate));
+        System.out.println("Loaded trading rates (version " + rates.get().version() + "):");
+        rates.get().asMap().forEach((currency, rate) -> System.out.println(currency + " -> USD: " + rate));
     }
 }
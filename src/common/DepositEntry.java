@@ -0,0 +1,64 @@
+package common;
+
+import java.io.Serializable;
+
+/**
+ * A deposit in commutative mode. Deposits are numbered per origin replica,
+ * so a replica's knowledge of them is a vector of (origin, seq) and the
+ * ordered barriers can refer to exactly which deposits they cover.
+ */
+public class DepositEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String origin;   // replica that accepted the deposit
+    private final long seq;        // 1-based, consecutive per origin
+    private final String txId;     // the id returned to the client
+    private final String currency;
+    private final double amount;
+    private final long timestamp;
+
+    public DepositEntry(String origin, long seq, String txId, String currency, double amount, long timestamp) {
+        this.origin = origin;
+        this.seq = seq;
+        this.txId = txId;
+        this.currency = currency;
+        this.amount = amount;
+        this.timestamp = timestamp;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The equivalent ordered transaction, as it appears in the history once folded.
+     */
+    public Transaction toTransaction() {
+        return new Transaction("deposit " + currency + " " + amount, txId, timestamp);
+    }
+
+    @Override
+    public String toString() {
+        return origin + "#" + seq + " " + currency + " " + amount;
+    }
+}
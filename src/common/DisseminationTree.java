@@ -0,0 +1,58 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Balanced k-ary dissemination tree over a group's members, used when the MDServer
+ * hands messages to a few relay replicas instead of sending to everyone itself.
+ *
+ * The tree is never shipped around: the MDServer and every replica derive it from
+ * the same sorted member list of a membership epoch. Members are laid out like a heap
+ * with the MDServer at position 0, so the children of position p are k*p+1 .. k*p+k.
+ */
+public final class DisseminationTree {
+
+    private DisseminationTree() {
+    }
+
+    /**
+     * Returns the members in the order the tree is laid out in.
+     */
+    public static List<String> layout(Collection<String> members) {
+        List<String> order = new ArrayList<>(members);
+        Collections.sort(order);
+        return order;
+    }
+
+    /**
+     * Returns the children of a node, or the relay roots when node is null (the MDServer).
+     * A node that is not in the tree has no children.
+     */
+    public static List<String> children(List<String> order, int fanout, String node) {
+        List<String> children = new ArrayList<>();
+        int index = node == null ? -1 : order.indexOf(node);
+        if ((node != null && index < 0) || fanout <= 0) {
+            return children;
+        }
+        int position = index + 1;
+        for (int child = fanout * position + 1; child <= fanout * position + fanout && child <= order.size(); child++) {
+            children.add(order.get(child - 1));
+        }
+        return children;
+    }
+
+    /**
+     * Returns the node itself followed by all of its descendants.
+     */
+    public static List<String> subtree(List<String> order, int fanout, String node) {
+        List<String> result = new ArrayList<>();
+        result.add(node);
+        for (int i = 0; i < result.size(); i++) {
+            result.addAll(children(order, fanout, result.get(i)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,23 @@
+package common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Which threads run blocking remote calls such as the MDServer's fan-out sends.
+ *
+ * PLATFORM is a cached pool of OS threads, so every call blocked on a slow replica holds an OS
+ * thread. VIRTUAL runs each call on its own virtual thread, and a blocked call only holds a
+ * small heap object. (Calls that block inside a synchronized block still pin their carrier thread
+ * on JDK 21.)
+ */
+public enum ExecutionModel {
+    PLATFORM, VIRTUAL;
+
+    public ExecutorService newExecutor(String threadNamePrefix) {
+        return switch (this) {
+            case PLATFORM -> Executors.newCachedThreadPool(Thread.ofPlatform().name(threadNamePrefix + "-", 0).factory());
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix + "-", 0).factory());
+        };
+    }
+}
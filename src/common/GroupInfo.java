@@ -2,27 +2,36 @@ package common;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Represents the current membership of a replica group.
+ * The epoch is bumped by the MDServer on every join or leave, so replicas can
+ * tell a full snapshot apart from an older one that arrived late.
  */
 public class GroupInfo implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
+    private final long epoch;
     private final List<String> members;
 
-    public GroupInfo(List<String> members) {
+    public GroupInfo(long epoch, Collection<String> members) {
+        this.epoch = epoch;
         this.members = new ArrayList<>(members); // defensive copy
     }
 
+    public long getEpoch() {
+        return epoch;
+    }
+
     public List<String> getMembers() {
         return Collections.unmodifiableList(members);
     }
 
     @Override
     public String toString() {
-        return "GroupInfo: " + members;
+        return "GroupInfo(epoch " + epoch + "): " + members;
     }
 }
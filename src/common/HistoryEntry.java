@@ -0,0 +1,51 @@
+package common;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One executed transaction as returned by a history query.
+ */
+public class HistoryEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int order;               // position in the total order, 1-based
+    private final String txId;
+    private final long timestamp;          // creation time at the origin replica
+    private final String operation;        // first word of the command
+    private final List<String> currencies; // currencies it touched, "ALL" for interest on every currency
+    private final String command;
+
+    public HistoryEntry(int order, String txId, long timestamp, String operation, List<String> currencies, String command) {
+        this.order = order;
+        this.txId = txId;
+        this.timestamp = timestamp;
+        this.operation = operation;
+        this.currencies = currencies;
+        this.command = command;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public List<String> getCurrencies() {
+        return currencies;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+}
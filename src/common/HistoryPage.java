@@ -0,0 +1,31 @@
+package common;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of history query results, in order.
+ */
+public class HistoryPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<HistoryEntry> entries;
+    private final int nextCursor; // order to continue from, or -1 if there are no more matches
+
+    public HistoryPage(List<HistoryEntry> entries, int nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<HistoryEntry> getEntries() {
+        return entries;
+    }
+
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor >= 0;
+    }
+}
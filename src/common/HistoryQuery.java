@@ -0,0 +1,60 @@
+package common;
+
+import java.io.Serializable;
+
+/**
+ * A filter over a replica's executed transactions, returned a page at a time in order.
+ * Unset filters match everything. Given on the command line as name=value pairs.
+ */
+public class HistoryQuery implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Order numbers, inclusive
+    public int fromOrder = 1;
+    public int toOrder = Integer.MAX_VALUE;
+    // Transaction creation time in epoch milliseconds, inclusive
+    public long fromTime = 0;
+    public long toTime = Long.MAX_VALUE;
+    // Matches transactions that touch this currency, including interest on ALL currencies
+    public String currency = null;
+    // deposit, addInterest or updateRates
+    public String operation = null;
+    // Order number to continue from, taken from HistoryPage.getNextCursor()
+    public int cursor = 0;
+    public int pageSize = 100;
+
+    /**
+     * Reads order=a-b, time=a-b, currency=X, op=Y, cursor=N and limit=N into this query.
+     */
+    public HistoryQuery parse(String[] args) {
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length < 2) {
+                throw new IllegalArgumentException("Expected name=value: " + arg);
+            }
+            String value = option[1];
+            switch (option[0]) {
+                case "order" -> {
+                    String[] range = value.split("-", 2);
+                    fromOrder = range[0].isEmpty() ? fromOrder : Integer.parseInt(range[0]);
+                    toOrder = range.length < 2 || range[1].isEmpty() ? toOrder : Integer.parseInt(range[1]);
+                }
+                case "time" -> {
+                    String[] range = value.split("-", 2);
+                    fromTime = range[0].isEmpty() ? fromTime : Long.parseLong(range[0]);
+                    toTime = range.length < 2 || range[1].isEmpty() ? toTime : Long.parseLong(range[1]);
+                }
+                case "currency" -> currency = value.toUpperCase();
+                case "op" -> operation = value;
+                case "cursor" -> cursor = Integer.parseInt(value);
+                case "limit" -> pageSize = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown history filter: " + option[0]);
+            }
+        }
+        return this;
+    }
+
+    public static String usage() {
+        return "[order=from-to] [time=fromMillis-toMillis] [currency=CUR] [op=deposit|addInterest|updateRates] [cursor=N] [limit=N]";
+    }
+}
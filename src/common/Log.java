@@ -0,0 +1,167 @@
+package common;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous logging for the servers and the command processor.
+ *
+ * Callers only format the line and put it in a bounded lock-free ring; a background thread
+ * drains the ring in batches and writes each batch with one flush per destination. A full ring
+ * drops the line and counts it instead of blocking the caller. Lines below the current level are
+ * discarded before formatting, and the Supplier variants do not even build the string, so
+ * per-transaction debug messages cost nothing when debug is off.
+ *
+ * DEBUG and INFO go to stdout, WARN and ERROR to stderr. The level comes from -Dlog.level or
+ * setLevel and defaults to INFO.
+ */
+public final class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int MAX_BATCH = 4096;
+
+    private record Line(Writer destination, String text) {}
+
+    private static final Writer STDOUT = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), 1 << 16);
+    private static final Writer STDERR = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.err)), 1 << 16);
+
+    private static final LogRing<Line> ring = new LogRing<>(CAPACITY);
+    private static final LongAdder dropped = new LongAdder();
+    private static final AtomicLong written = new AtomicLong(); // ring positions that are written and flushed
+    private static volatile Level level = Level.valueOf(System.getProperty("log.level", "INFO").toUpperCase());
+    private static final Thread writer = new Thread(Log::drainForever, "log-writer");
+
+    static {
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000)));
+    }
+
+    private Log() {
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static boolean isEnabled(Level candidate) {
+        return candidate.compareTo(level) >= 0;
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, message.get());
+        }
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void error(String message, Throwable cause) {
+        if (isEnabled(Level.ERROR)) {
+            StringWriter trace = new StringWriter();
+            cause.printStackTrace(new PrintWriter(trace));
+            enqueue(STDERR, message + System.lineSeparator() + trace);
+        }
+    }
+
+    /**
+     * Appends a line to the given writer from the background thread, regardless of the level.
+     * The writer must not be used by anyone else until flush() has returned.
+     */
+    public static void write(Writer destination, String line) {
+        enqueue(destination, line);
+    }
+
+    /**
+     * Lines dropped since startup because the ring was full.
+     */
+    public static long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Waits until every line logged before this call is written, e.g. before closing a log file.
+     */
+    public static void flush() {
+        flush(Long.MAX_VALUE);
+    }
+
+    private static void flush(long timeoutMs) {
+        long target = ring.claimed();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(timeoutMs, TimeUnit.DAYS.toMillis(1)));
+        while (written.get() < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static void log(Level lineLevel, String message) {
+        if (isEnabled(lineLevel)) {
+            enqueue(lineLevel.compareTo(Level.WARN) >= 0 ? STDERR : STDOUT, message);
+        }
+    }
+
+    private static void enqueue(Writer destination, String text) {
+        if (!ring.offer(new Line(destination, text))) {
+            dropped.increment();
+        }
+    }
+
+    private static void drainForever() {
+        List<Line> batch = new ArrayList<>(MAX_BATCH);
+        Set<Writer> touched = new LinkedHashSet<>();
+        while (true) {
+            Line line;
+            while (batch.size() < MAX_BATCH && (line = ring.poll()) != null) {
+                batch.add(line);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            for (Line each : batch) {
+                try {
+                    each.destination().write(each.text());
+                    each.destination().write(System.lineSeparator());
+                    touched.add(each.destination());
+                } catch (IOException e) {
+                    // Nowhere left to report it; the line is lost like a dropped one.
+                    dropped.increment();
+                }
+            }
+            for (Writer destination : touched) {
+                try {
+                    destination.flush();
+                } catch (IOException e) {
+                    // Same as above.
+                }
+            }
+            written.addAndGet(batch.size());
+            batch.clear();
+            touched.clear();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer queue (Vyukov's array queue).
+ *
+ * Every slot carries a sequence number that says whether it is free for the producer at a given
+ * position or holds an item for the consumer at that position, so producers and consumers only
+ * contend on a CAS of the tail or head. offer never blocks and fails when the ring is full.
+ */
+class LogRing<T> {
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(); // next position to take
+    private final AtomicLong tail = new AtomicLong(); // next position to fill
+
+    LogRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.items = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offer(T item) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position & mask);
+            long diff = sequences.get(slot) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items.lazySet(slot, item);
+                    sequences.set(slot, position + 1); // publishes the item
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false; // the slot still holds an item from one lap ago: full
+            } else {
+                position = tail.get(); // another producer took this position
+            }
+        }
+    }
+
+    T poll() {
+        long position = head.get();
+        while (true) {
+            int slot = (int) (position & mask);
+            long diff = sequences.get(slot) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T item = items.get(slot);
+                    items.lazySet(slot, null);
+                    sequences.set(slot, position + mask + 1); // free for the producer one lap later
+                    return item;
+                }
+                position = head.get();
+            } else if (diff < 0) {
+                return null; // empty, or the producer of this slot has not published yet
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Positions claimed by producers so far.
+     */
+    long claimed() {
+        return tail.get();
+    }
+}
@@ -0,0 +1,43 @@
+package common;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The change between membership epoch (epoch - 1) and epoch of a replica group.
+ * Only replicas already at epoch - 1 can apply it; everyone else asks the
+ * MDServer for a full GroupInfo instead.
+ */
+public class MembershipDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long epoch;
+    private final List<String> joined;
+    private final List<String> left;
+
+    public MembershipDelta(long epoch, Collection<String> joined, Collection<String> left) {
+        this.epoch = epoch;
+        this.joined = new ArrayList<>(joined);
+        this.left = new ArrayList<>(left);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public List<String> getJoined() {
+        return Collections.unmodifiableList(joined);
+    }
+
+    public List<String> getLeft() {
+        return Collections.unmodifiableList(left);
+    }
+
+    @Override
+    public String toString() {
+        return "MembershipDelta(epoch " + epoch + "): +" + joined + " -" + left;
+    }
+}
@@ -8,14 +8,34 @@ import java.util.List;
  * Contains a list of transactions to be applied in total order.
  */
 public class Message implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 3L;
 
     private final String senderId;                 // sender replica ID
     private final List<Transaction> transactions; // transactions in this message
+    private final long sequence;                  // position in the group's total order, 0 until assigned by the MDServer
+    private final long generation;                // of the MDServer that assigned it; a standby that takes over is one higher
 
     public Message(String senderId, List<Transaction> transactions) {
+        this(senderId, transactions, 0L);
+    }
+
+    public Message(String senderId, List<Transaction> transactions, long sequence) {
+        this(senderId, transactions, sequence, 0L);
+    }
+
+    public Message(String senderId, List<Transaction> transactions, long sequence, long generation) {
         this.senderId = senderId;
         this.transactions = transactions;
+        this.sequence = sequence;
+        this.generation = generation;
+    }
+
+    /**
+     * Returns a copy of this message stamped with its position in the group's total order and
+     * the generation of the MDServer that ordered it.
+     */
+    public Message withSequence(long sequence, long generation) {
+        return new Message(senderId, transactions, sequence, generation);
     }
 
     public String getSenderId() {
@@ -26,8 +46,16 @@ public class Message implements Serializable {
         return transactions;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
     @Override
     public String toString() {
-        return "Message from " + senderId + " with " + transactions.size() + " transactions";
+        return "Message #" + sequence + " from " + senderId + " with " + transactions.size() + " transactions";
     }
 }
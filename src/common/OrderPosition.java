@@ -0,0 +1,32 @@
+package common;
+
+import java.io.Serializable;
+
+/**
+ * A position in the order agreed among the replicas (--ordering=isis): a counter, and the
+ * replica that proposed it to break ties.
+ */
+public class OrderPosition implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long counter;
+    private final String replica;
+
+    public OrderPosition(long counter, String replica) {
+        this.counter = counter;
+        this.replica = replica;
+    }
+
+    public long getCounter() {
+        return counter;
+    }
+
+    public String getReplica() {
+        return replica;
+    }
+
+    @Override
+    public String toString() {
+        return counter + "@" + replica;
+    }
+}
@@ -0,0 +1,37 @@
+package common;
+
+import java.util.List;
+
+/**
+ * Thrown when a queue is at its bound and the submission was not accepted.
+ * Nothing was applied or enqueued; the caller may retry after retryAfterMs.
+ *
+ * This is deliberately not a RemoteException, which RMI would wrap in a ServerException.
+ */
+public class OverloadedException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMs;
+    private final List<String> rejectedSenders;
+
+    public OverloadedException(String message, long retryAfterMs) {
+        this(message, retryAfterMs, List.of());
+    }
+
+    public OverloadedException(String message, long retryAfterMs, List<String> rejectedSenders) {
+        super(message);
+        this.retryAfterMs = retryAfterMs;
+        this.rejectedSenders = List.copyOf(rejectedSenders);
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * For broadcastMessages: the senders whose messages were not enqueued. All others were.
+     */
+    public List<String> getRejectedSenders() {
+        return rejectedSenders;
+    }
+}
@@ -0,0 +1,104 @@
+package common;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * An immutable snapshot of the trading rates: one dense array of rates to USD, indexed by
+ * currency, and the cross rate between every pair of currencies computed once up front.
+ * Conversions on a snapshot are array reads; a new rate file produces a new snapshot.
+ */
+public final class RateTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long version;        // 1 for the file loaded at startup, +1 for every ordered update
+    private final String[] currencies; // index -> upper case currency code, sorted
+    private final double[] toUsd;      // index -> USD per unit
+    private final double[][] cross;    // [from][to] -> units of "to" per unit of "from"
+    private final Map<String, Integer> indexes;
+
+    RateTable(long version, Map<String, Double> rates) {
+        this.version = version;
+        this.currencies = rates.keySet().stream().sorted().toArray(String[]::new);
+        this.toUsd = new double[currencies.length];
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < currencies.length; i++) {
+            toUsd[i] = rates.get(currencies[i]);
+            indexes.put(currencies[i], i);
+        }
+        this.cross = new double[currencies.length][currencies.length];
+        for (int from = 0; from < currencies.length; from++) {
+            for (int to = 0; to < currencies.length; to++) {
+                cross[from][to] = toUsd[from] / toUsd[to];
+            }
+        }
+    }
+
+    /**
+     * The next version: the given rates replace ours, currencies they leave out keep their rate,
+     * so balances held in a currency never become unconvertible.
+     */
+    public RateTable next(Map<String, Double> updates) {
+        Map<String, Double> rates = new HashMap<>(asMap());
+        updates.forEach((currency, rate) -> rates.put(currency.toUpperCase(), rate));
+        rates.put("USD", 1.0);
+        return new RateTable(version + 1, rates);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Index of the currency in this snapshot, or -1 if unsupported. Upper case codes are found
+     * without allocating; anything else is upper-cased once and retried.
+     */
+    public int indexOf(String currency) {
+        Integer index = indexes.get(currency);
+        if (index == null) {
+            index = indexes.get(currency.toUpperCase());
+        }
+        return index == null ? -1 : index;
+    }
+
+    public int requireIndex(String currency) {
+        int index = indexOf(currency);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unsupported currency: " + currency);
+        }
+        return index;
+    }
+
+    public double toUSD(int currency, double amount) {
+        return amount * toUsd[currency];
+    }
+
+    public double fromUSD(int currency, double amount) {
+        return amount / toUsd[currency];
+    }
+
+    public double convert(int from, int to, double amount) {
+        return amount * cross[from][to];
+    }
+
+    public String currency(int index) {
+        return currencies[index];
+    }
+
+    public int size() {
+        return currencies.length;
+    }
+
+    public Map<String, Double> asMap() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (int i = 0; i < currencies.length; i++) {
+            rates.put(currencies[i], toUsd[i]);
+        }
+        return rates;
+    }
+
+    @Override
+    public String toString() {
+        return "v" + version + " " + asMap();
+    }
+}
@@ -0,0 +1,14 @@
+package common;
+
+/**
+ * The role a BankServer replica registers with.
+ * VOTING replicas accept client transactions and have to ACK every ordered message.
+ * OBSERVER replicas only consume the ordered stream to serve read-only queries.
+ * STANDBY replicas consume the ordered stream like observers but serve no clients at all,
+ * until the MDServer promotes them to VOTING.
+ */
+public enum ReplicaRole {
+    VOTING,
+    OBSERVER,
+    STANDBY
+}
@@ -0,0 +1,47 @@
+package common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms between pairs of transaction stages, in microseconds.
+ * Each server records the stage pairs it can observe and exports p50/p99/p999 per pair.
+ */
+public class StageLatencies {
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Records the time between two stamped stages; skipped if either stage was never stamped.
+     */
+    public void record(Transaction tx, TxStage from, TxStage to) {
+        record("", tx, from, to);
+    }
+
+    /**
+     * Like record(tx, from, to), but into a histogram whose name starts with the given class label.
+     */
+    public void record(String label, Transaction tx, TxStage from, TxStage to) {
+        long start = tx.getStageMicros(from);
+        long end = tx.getStageMicros(to);
+        if (start == 0 || end == 0) {
+            return;
+        }
+        histogram(label + from.name() + "->" + to.name()).record(end - start);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, _ -> new LatencyHistogram());
+    }
+
+    public String report(String title) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- Latency per stage for ").append(title).append(" (microseconds) ---\n");
+        if (histograms.isEmpty()) {
+            sb.append(" (no transactions yet)\n");
+        }
+        histograms.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> sb.append(String.format("%-28s %s%n", entry.getKey(), entry.getValue().summary())));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package common;
+
+/**
+ * Thrown by a replica to an MDServer that a standby has taken over from: the message comes
+ * from an older sequencer generation than one the replica already follows. Nothing was applied.
+ *
+ * Like OverloadedException, this is deliberately not a RemoteException, which RMI would wrap in
+ * a ServerException.
+ */
+public class StaleSequencerException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final long currentGeneration;
+
+    public StaleSequencerException(String message, long currentGeneration) {
+        super(message);
+        this.currentGeneration = currentGeneration;
+    }
+
+    public long getCurrentGeneration() {
+        return currentGeneration;
+    }
+}
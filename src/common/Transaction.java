@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -20,11 +22,19 @@ public class Transaction implements Serializable {
     private final String command;     // e.g., "deposit USD 100"
     private final String uniqueId;    // e.g., "Replica1_0"
     private final long timestamp;     // creation time in milliseconds
+    private final List<DepositEntry> coveredDeposits; // commutative deposits folded in right before this barrier, or null
+    private final long[] stageMicros = new long[TxStage.values().length]; // lifecycle stamps, 0 = not reached
 
     public Transaction(String command, String uniqueId, long timestamp) {
+        this(command, uniqueId, timestamp, null);
+    }
+
+    public Transaction(String command, String uniqueId, long timestamp, List<DepositEntry> coveredDeposits) {
         this.command = command;
         this.uniqueId = uniqueId;
         this.timestamp = timestamp; // for logging purposes
+        this.coveredDeposits = coveredDeposits;
+        this.stageMicros[TxStage.CREATED.ordinal()] = TxStage.nowMicros();
     }
 
     public String getCommand() {
@@ -39,6 +49,22 @@ public class Transaction implements Serializable {
         return timestamp;
     }
 
+    /**
+     * Stamps the current time for a stage. The stamps travel with the transaction, so each
+     * process stamps the stages it performs and reads the ones stamped upstream.
+     */
+    public void stamp(TxStage stage) {
+        stageMicros[stage.ordinal()] = TxStage.nowMicros();
+    }
+
+    public long getStageMicros(TxStage stage) {
+        return stageMicros[stage.ordinal()];
+    }
+
+    public List<DepositEntry> getCoveredDeposits() {
+        return coveredDeposits == null ? Collections.emptyList() : coveredDeposits;
+    }
+
     @Override
     public String toString() {
         return "[" + uniqueId + "] " + command + " @ " + formatter.format(Instant.ofEpochMilli(timestamp));
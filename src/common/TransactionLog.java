@@ -0,0 +1,140 @@
+package common;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recorded stream of transactions per account, for replaying offline.
+ *
+ * The file starts with a header that says which kind of stream it holds:
+ * - ORDERED is what a sequencer sent, in its order. It can repeat transactions, and a barrier
+ *   carries the commutative deposits it covers, so a replay applies it the way a replica
+ *   receives it.
+ * - APPLIED is a replica's history. Each entry was applied exactly once, with the folded
+ *   deposits already in place.
+ *
+ * After the header come records of account, id, creation time, command and the covered
+ * deposits, with the strings as modified UTF-8.
+ */
+public final class TransactionLog {
+    private static final int MAGIC = 0x42414e4b; // "BANK"
+    private static final int FORMAT = 1;
+
+    public enum Kind {
+        ORDERED, APPLIED
+    }
+
+    private TransactionLog() {
+    }
+
+    /**
+     * Appends records to a new log file. Each append is flushed, so a log cut short by a
+     * crash loses at most the record being written.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+
+        public Writer(Path path, Kind kind) throws IOException {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeUTF(kind.name());
+            out.flush();
+        }
+
+        public synchronized void append(String account, List<Transaction> transactions) throws IOException {
+            for (Transaction tx : transactions) {
+                out.writeUTF(account);
+                out.writeUTF(tx.getUniqueId());
+                out.writeLong(tx.getTimestamp());
+                out.writeUTF(tx.getCommand());
+                List<DepositEntry> covered = tx.getCoveredDeposits();
+                out.writeInt(covered.size());
+                for (DepositEntry entry : covered) {
+                    out.writeUTF(entry.getOrigin());
+                    out.writeLong(entry.getSeq());
+                    out.writeUTF(entry.getTxId());
+                    out.writeUTF(entry.getCurrency());
+                    out.writeDouble(entry.getAmount());
+                    out.writeLong(entry.getTimestamp());
+                }
+            }
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * A whole log in memory: its kind and each account's transactions in log order.
+     */
+    public static final class Contents {
+        private final Kind kind;
+        private final Map<String, List<Transaction>> byAccount;
+
+        Contents(Kind kind, Map<String, List<Transaction>> byAccount) {
+            this.kind = kind;
+            this.byAccount = byAccount;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Accounts in the order they first appear in the log.
+         */
+        public Map<String, List<Transaction>> getByAccount() {
+            return byAccount;
+        }
+    }
+
+    /**
+     * Reads a whole log. A record cut off at the end, as a crash leaves it, is dropped.
+     */
+    public static Contents read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a transaction log.");
+            }
+            int format = in.readInt();
+            if (format != FORMAT) {
+                throw new IOException(path + " has log format " + format + "; this build reads " + FORMAT + ".");
+            }
+            Kind kind = Kind.valueOf(in.readUTF());
+            Map<String, List<Transaction>> byAccount = new LinkedHashMap<>();
+            while (true) {
+                String account;
+                Transaction tx;
+                try {
+                    account = in.readUTF();
+                    String id = in.readUTF();
+                    long timestamp = in.readLong();
+                    String command = in.readUTF();
+                    int coveredCount = in.readInt();
+                    List<DepositEntry> covered = coveredCount == 0 ? null : new ArrayList<>(coveredCount);
+                    for (int i = 0; i < coveredCount; i++) {
+                        covered.add(new DepositEntry(in.readUTF(), in.readLong(), in.readUTF(), in.readUTF(), in.readDouble(), in.readLong()));
+                    }
+                    tx = new Transaction(command, id, timestamp, covered);
+                } catch (EOFException e) {
+                    break;
+                }
+                byAccount.computeIfAbsent(account, _ -> new ArrayList<>()).add(tx);
+            }
+            return new Contents(kind, byAccount);
+        }
+    }
+}
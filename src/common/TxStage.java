@@ -0,0 +1,25 @@
+package common;
+
+/**
+ * The points in a transaction's life that get a timestamp, in the order they happen.
+ */
+public enum TxStage {
+    CREATED,    // accepted by deposit/addInterest/getSyncedBalance
+    FLUSHED,    // left outstandingCollection towards the MDServer
+    ENQUEUED,   // added to the group's queue in the MDServer
+    SENT,       // first delivery attempt by the MDServer
+    DELIVERED,  // arrived at a replica
+    APPLIED,    // applied to a replica's state
+    ACKED;      // ACK sent (replica) or all ACKs received (MDServer)
+
+    private static final long START_NANOS = System.nanoTime();
+    private static final long START_EPOCH_MICROS = System.currentTimeMillis() * 1000L;
+
+    /**
+     * Wall-clock time in microseconds, with nanoTime resolution within one process.
+     * Stamps from different processes are only as comparable as their system clocks.
+     */
+    public static long nowMicros() {
+        return START_EPOCH_MICROS + (System.nanoTime() - START_NANOS) / 1000L;
+    }
+}
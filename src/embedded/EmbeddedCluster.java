@@ -0,0 +1,73 @@
+package embedded;
+
+import bankserver.BankServerImpl;
+import bankserver.BankServerInterface;
+import bankserver.ReplicaOptions;
+import common.CurrencyConverter;
+import mdserver.MDServerImpl;
+import mdserver.MDServerInterface;
+import mdserver.MDServerOptions;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An MDServer and any number of replica groups in one JVM, connected through a LocalTransport
+ * instead of an RMI registry. Useful for repeatable end-to-end experiments.
+ */
+public class EmbeddedCluster {
+    private final LocalTransport transport;
+
+    public EmbeddedCluster(long latencyMicros, long jitterMicros, MDServerOptions mdServerOptions) throws RemoteException {
+        this.transport = new LocalTransport(latencyMicros, jitterMicros);
+        transport.bindMDServer(new MDServerImpl(mdServerOptions));
+    }
+
+    /**
+     * Starts the given number of replicas for an account and waits until the group is formed.
+     * Returns the replicas as clients see them, i.e. through the transport.
+     */
+    public List<BankServerInterface> startGroup(String accountName, int replicas, CurrencyConverter converter, ReplicaOptions options) throws Exception {
+        List<BankServerImpl> started = new ArrayList<>();
+        List<BankServerInterface> clientViews = new ArrayList<>();
+        for (int i = 0; i < replicas; i++) {
+            String instanceName = accountName + "_" + UUID.randomUUID();
+            BankServerImpl replica = new BankServerImpl(instanceName, accountName, converter, transport, replicas, "correct", options);
+            transport.bind(instanceName, replica);
+            started.add(replica);
+            clientViews.add(transport.lookup(instanceName));
+        }
+        for (BankServerImpl replica : started) {
+            replica.awaitInitialSync();
+        }
+        return clientViews;
+    }
+
+    /**
+     * Stops a replica from answering, as if its process had died; the MDServer evicts it when
+     * it misses an ACK.
+     */
+    public void crash(String instanceName) {
+        transport.crash(instanceName);
+    }
+
+    /**
+     * Loses the next count calls of a method to a replica, e.g. a commit of the agreed order.
+     */
+    public void loseCalls(String instanceName, String method, int count) {
+        transport.loseCalls(instanceName, method, count);
+    }
+
+    /**
+     * Points every later lookup of the MDServer at another one, as a standby does when it takes over.
+     */
+    public void bindMDServer(MDServerInterface server) {
+        transport.bindMDServer(server);
+    }
+
+    public MDServerInterface mdServer() throws Exception {
+        return transport.mdServer();
+    }
+}
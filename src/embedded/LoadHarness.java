@@ -0,0 +1,67 @@
+package embedded;
+
+import bankserver.BankServerInterface;
+import bankserver.ReplicaOptions;
+import bankserver.utils.LoadGenerator;
+import common.CurrencyConverter;
+import mdserver.MDServerOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts an embedded cluster with one account, drives a command mix against its replicas and
+ * prints client-side throughput and latency, followed by the servers' own stage latencies.
+ */
+public class LoadHarness {
+    public static void main(String[] args) throws Exception {
+        // Harness and MDServer options are taken here; every other --name=value goes to the replicas.
+        MDServerOptions mdServerOptions = new MDServerOptions();
+        long latencyMicros = 0;
+        long jitterMicros = 0;
+        int clients = 16;
+        double rate = 0; // closed loop
+        long durationMs = 30_000;
+        String mix = "deposit:80,addInterest:15,getSyncedBalance:5";
+        List<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            switch (option[0]) {
+                case "--latency-us" -> latencyMicros = Long.parseLong(option[1]);
+                case "--jitter-us" -> jitterMicros = Long.parseLong(option[1]);
+                case "--clients" -> clients = Integer.parseInt(option[1]);
+                case "--rate" -> rate = Double.parseDouble(option[1]);
+                case "--duration-s" -> durationMs = Long.parseLong(option[1]) * 1000;
+                case "--mix" -> mix = option[1];
+                default -> {
+                    if (!arg.startsWith("--") || !mdServerOptions.apply(arg)) {
+                        rest.add(arg);
+                    }
+                }
+            }
+        }
+        ReplicaOptions options = new ReplicaOptions();
+        options.flushIntervalMs = 100; // the command line default of 10s would leave the sequencer idle
+        args = options.parse(rest.toArray(new String[0])).toArray(new String[0]);
+
+        if (args.length < 2) {
+            System.out.println("Usage: LoadHarness <#replicas> <currency file> [--latency-us=N] [--jitter-us=N] "
+                    + "[--clients=N] [--rate=ops per second] [--duration-s=N] [--mix=deposit:80,addInterest:15,getSyncedBalance:5|@file] "
+                    + MDServerOptions.usage() + " " + ReplicaOptions.usage());
+            return;
+        }
+        int replicas = Integer.parseInt(args[0]);
+        CurrencyConverter converter = new CurrencyConverter(args[1]);
+
+        EmbeddedCluster cluster = new EmbeddedCluster(latencyMicros, jitterMicros, mdServerOptions);
+        List<BankServerInterface> group = cluster.startGroup("load", replicas, converter, options);
+        System.out.println("Embedded cluster with " + replicas + " replicas is up. Running " + mix + " with " + clients + " clients.");
+
+        String report = new LoadGenerator(group, LoadGenerator.parseMix(mix), clients, rate).run(durationMs);
+
+        System.out.println(report);
+        System.out.println(cluster.mdServer().getLatencyReport());
+        System.out.println(group.get(0).getLatencyReport());
+        System.exit(0);
+    }
+}
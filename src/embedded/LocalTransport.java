@@ -0,0 +1,170 @@
+package embedded;
+
+import bankserver.BankServerInterface;
+import bankserver.Transport;
+import mdserver.MDServerInterface;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory transport for an MDServer and replicas in the same JVM.
+ *
+ * Every object handed out is a dynamic proxy implementing the same remote interface, so the
+ * servers run unchanged. Like RMI, a call copies its serializable arguments and result, and
+ * remote objects passed as arguments (a replica registering itself) are handed over as proxies
+ * too. Each call is delayed by the configured latency plus a uniformly random jitter, on the
+ * calling thread, which models a synchronous RMI round trip.
+ */
+public class LocalTransport implements Transport {
+    private final long latencyMicros;
+    private final long jitterMicros;
+    private final Map<String, BankServerInterface> replicas = new ConcurrentHashMap<>();
+    private final Map<String, Object> boundTargets = new ConcurrentHashMap<>();
+    private final Map<Object, String> crashed = new ConcurrentHashMap<>(); // target -> instance name
+    private final Map<Object, Map<String, AtomicInteger>> lost = new ConcurrentHashMap<>(); // target -> method -> calls left to lose
+    private volatile MDServerInterface mdServer;
+
+    public LocalTransport(long latencyMicros, long jitterMicros) {
+        this.latencyMicros = latencyMicros;
+        this.jitterMicros = jitterMicros;
+    }
+
+    public void bindMDServer(MDServerInterface server) {
+        this.mdServer = connect(MDServerInterface.class, server);
+    }
+
+    @Override
+    public MDServerInterface mdServer(String groupName) throws NotBoundException {
+        return mdServer();
+    }
+
+    public MDServerInterface mdServer() throws NotBoundException {
+        MDServerInterface server = mdServer;
+        if (server == null) {
+            throw new NotBoundException("MDServer");
+        }
+        return server;
+    }
+
+    @Override
+    public BankServerInterface lookup(String instanceName) throws NotBoundException {
+        BankServerInterface replica = replicas.get(instanceName);
+        if (replica == null) {
+            throw new NotBoundException(instanceName);
+        }
+        return replica;
+    }
+
+    @Override
+    public void bind(String instanceName, BankServerInterface replica) {
+        replicas.put(instanceName, connect(BankServerInterface.class, replica));
+        boundTargets.put(instanceName, replica);
+    }
+
+    /**
+     * Every later call to the replica fails, through any proxy, as if its process had died.
+     */
+    public void crash(String instanceName) {
+        Object target = boundTargets.get(instanceName);
+        if (target != null) {
+            crashed.put(target, instanceName);
+        }
+    }
+
+    /**
+     * The next count calls of the named method to the replica fail before reaching it, as if
+     * the network lost them. Other calls go through.
+     */
+    public void loseCalls(String instanceName, String method, int count) {
+        Object target = boundTargets.get(instanceName);
+        if (target != null) {
+            lost.computeIfAbsent(target, _ -> new ConcurrentHashMap<>()).computeIfAbsent(method, _ -> new AtomicInteger()).addAndGet(count);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "local transport (latency " + latencyMicros + "us, jitter " + jitterMicros + "us)";
+    }
+
+    private <T> T connect(Class<T> remoteInterface, T target) {
+        InvocationHandler handler = (proxy, method, args) -> invoke(target, method, args);
+        return remoteInterface.cast(Proxy.newProxyInstance(remoteInterface.getClassLoader(), new Class<?>[]{remoteInterface}, handler));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(target, args); // toString, equals and hashCode stay local
+        }
+        delay();
+        String down = crashed.get(target);
+        if (down != null) {
+            throw new RemoteException("Connection refused: " + down + " crashed");
+        }
+        Map<String, AtomicInteger> losing = lost.get(target);
+        AtomicInteger left = losing == null ? null : losing.get(method.getName());
+        if (left != null && left.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            throw new RemoteException("Connection reset: " + method.getName() + " lost on the way");
+        }
+        Object[] copied = null;
+        if (args != null) {
+            copied = new Object[args.length];
+            Class<?>[] types = method.getParameterTypes();
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] != null && Remote.class.isAssignableFrom(types[i]) && !Proxy.isProxyClass(args[i].getClass())) {
+                    copied[i] = connect((Class<Object>) types[i], args[i]);
+                } else {
+                    copied[i] = copy(args[i]);
+                }
+            }
+        }
+        Object result;
+        try {
+            result = method.invoke(target, copied);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        return copy(result);
+    }
+
+    private void delay() {
+        long micros = latencyMicros + (jitterMicros > 0 ? ThreadLocalRandom.current().nextLong(jitterMicros + 1) : 0);
+        if (micros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+    }
+
+    private static Object copy(Object value) throws RemoteException {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Enum<?>) {
+            return value; // immutable, nothing to copy
+        }
+        if (value instanceof Remote) {
+            return value;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(value);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RemoteException("Could not marshal " + value.getClass().getName(), e);
+        }
+    }
+}
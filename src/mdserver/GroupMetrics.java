@@ -0,0 +1,86 @@
+package mdserver;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one replica group. Retries and evictions are striped LongAdders so the
+ * send path never contends on them; everything else is read from the MDServer on demand.
+ */
+public class GroupMetrics implements GroupMetricsMBean {
+    private final String groupName;
+    private final MDServerImpl server;
+    final LongAdder retries = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder promotions = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+
+    GroupMetrics(String groupName, MDServerImpl server) {
+        this.groupName = groupName;
+        this.server = server;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return server.queueDepth(groupName);
+    }
+
+    @Override
+    public int getQueuedTransactions() {
+        return server.queuedTransactions(groupName);
+    }
+
+    @Override
+    public int getCredits() {
+        return Math.max(0, server.options().maxQueuedPerGroup - server.queuedTransactions(groupName));
+    }
+
+    @Override
+    public long getRejectedBroadcasts() {
+        return rejected.sum();
+    }
+
+    @Override
+    public int getPendingAcks() {
+        return server.pendingAckCount(groupName);
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getLastSequence() {
+        return server.lastSequence(groupName);
+    }
+
+    @Override
+    public long getMembershipEpoch() {
+        return server.membershipEpoch(groupName);
+    }
+
+    @Override
+    public int getMembers() {
+        return server.memberCount(groupName);
+    }
+
+    @Override
+    public int getObservers() {
+        return server.observerCount(groupName);
+    }
+
+    @Override
+    public int getStandbys() {
+        return server.standbyCount(groupName);
+    }
+
+    @Override
+    public long getPromotions() {
+        return promotions.sum();
+    }
+}
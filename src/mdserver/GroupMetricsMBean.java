@@ -0,0 +1,20 @@
+package mdserver;
+
+/**
+ * JMX view of one replica group in the MDServer, registered as mdserver:type=Group,name=<group>.
+ */
+public interface GroupMetricsMBean {
+    int getQueueDepth();
+    int getQueuedTransactions();
+    int getCredits(); // transactions the queue still accepts; 0 means broadcasts are being rejected
+    long getRejectedBroadcasts();
+    int getPendingAcks();
+    long getRetries();
+    long getEvictions();
+    long getLastSequence();
+    long getMembershipEpoch();
+    int getMembers();
+    int getObservers();
+    int getStandbys();
+    long getPromotions();
+}
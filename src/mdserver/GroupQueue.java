@@ -0,0 +1,100 @@
+package mdserver;
+
+import common.Message;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The sequencer queue of one group: a FIFO queue per sender, scheduled by priority.
+ *
+ * Messages of one sender always leave in the order they arrived. Across senders, the sender
+ * holding the oldest CONTROL message goes first, and that sender's older BULK messages go first
+ * with it: they inherit the priority, because the control message may not overtake them. Without
+ * control messages the oldest head across senders goes first, which is plain FIFO. After
+ * MAX_CONSECUTIVE_CONTROL priority picks one FIFO pick is forced, so bulk traffic is never starved.
+ *
+ * Reordering only happens among messages that have no sequence number yet, so every replica still
+ * applies one total order that respects each sender's order.
+ */
+class GroupQueue {
+    private static final int MAX_CONSECUTIVE_CONTROL = 8;
+
+    private record Entry(Message msg, long arrival, Priority priority) {}
+
+    private final int controlMaxTransactions;
+    private final Map<String, ArrayDeque<Entry>> bySender = new HashMap<>();
+    private final TreeMap<Long, String> headsByArrival = new TreeMap<>();   // arrival of each sender's head -> sender
+    private final TreeMap<Long, String> controlByArrival = new TreeMap<>(); // arrival of each queued CONTROL message -> sender
+    private long arrivals = 0;
+    private int size = 0;
+    private int transactions = 0;
+    private int consecutiveControl = 0;
+
+    GroupQueue(int controlMaxTransactions) {
+        this.controlMaxTransactions = controlMaxTransactions;
+    }
+
+    /**
+     * Enqueues the message unless that would exceed maxTransactions; an empty queue accepts any message.
+     */
+    synchronized boolean offer(Message msg, int maxTransactions) {
+        int count = msg.getTransactions().size();
+        if (transactions > 0 && transactions + count > maxTransactions) {
+            return false;
+        }
+        Entry entry = new Entry(msg, arrivals++, Priority.of(msg, controlMaxTransactions));
+        ArrayDeque<Entry> senderQueue = bySender.computeIfAbsent(msg.getSenderId(), _ -> new ArrayDeque<>());
+        if (senderQueue.isEmpty()) {
+            headsByArrival.put(entry.arrival(), msg.getSenderId());
+        }
+        senderQueue.addLast(entry);
+        if (entry.priority() == Priority.CONTROL) {
+            controlByArrival.put(entry.arrival(), msg.getSenderId());
+        }
+        size++;
+        transactions += count;
+        return true;
+    }
+
+    /**
+     * Removes and returns the next message to sequence, or null if the queue is empty.
+     */
+    synchronized Message poll() {
+        if (size == 0) {
+            return null;
+        }
+        String sender;
+        if (!controlByArrival.isEmpty() && consecutiveControl < MAX_CONSECUTIVE_CONTROL) {
+            sender = controlByArrival.firstEntry().getValue();
+            consecutiveControl++;
+        } else {
+            sender = headsByArrival.firstEntry().getValue();
+            consecutiveControl = 0;
+        }
+        ArrayDeque<Entry> senderQueue = bySender.get(sender);
+        Entry head = senderQueue.pollFirst();
+        headsByArrival.remove(head.arrival());
+        if (head.priority() == Priority.CONTROL) {
+            controlByArrival.remove(head.arrival());
+        }
+        if (senderQueue.isEmpty()) {
+            bySender.remove(sender);
+        } else {
+            headsByArrival.put(senderQueue.peekFirst().arrival(), sender);
+        }
+        size--;
+        transactions -= head.msg().getTransactions().size();
+        return head.msg();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized int transactions() {
+        return transactions;
+    }
+}
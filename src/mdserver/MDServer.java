@@ -5,8 +5,12 @@ import java.rmi.Naming;
 
 public class MDServer {
     public static void main(String[] args) throws Exception {
+        // Options of the form --name=value may appear anywhere; the rest are positional.
+        MDServerOptions options = new MDServerOptions();
+        args = options.parse(args).toArray(new String[0]);
+
         if (args.length < 1) {
-            System.out.println("Usage: MDServer <host:port> or <port> (defaults to localhost)");
+            System.out.println("Usage: MDServer <host:port> or <port> (defaults to localhost) " + MDServerOptions.usage());
             return;
         }
 
@@ -26,11 +30,15 @@ public class MDServer {
             port = Integer.parseInt(args[0]);
         }
 
-        MDServerImpl server = new MDServerImpl();
+        MDServerImpl server = new MDServerImpl(options);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(server.latencyReport())));
 
         // Bind to the specified host and port
-        Naming.rebind("rmi://" + host + ":" + port + "/MDServer", server);
-        System.out.println("Message Delivery Server running on " + host + ":" + port);
+        Naming.rebind("rmi://" + host + ":" + port + "/" + ShardMap.registryName(options.shard), server);
+        System.out.println("Message Delivery Server running on " + host + ":" + port
+                + (options.shard != null ? " as shard " + options.shard : "")
+                + (options.treeFanout > 0 ? " (tree dissemination, fan-out " + options.treeFanout + ")" : "")
+                + ", sending on " + options.executionModel.name().toLowerCase() + " threads");
     }
 }
 
@@ -1,17 +1,34 @@
 package mdserver;
 
 import bankserver.BankServerInterface;
+import common.DepositEntry;
+import common.DisseminationTree;
 import common.GroupInfo;
+import common.Log;
+import common.MembershipDelta;
 import common.Message;
+import common.OverloadedException;
+import common.StaleSequencerException;
+import common.StageLatencies;
 import common.Transaction;
+import common.TransactionLog;
+import common.TxStage;
 import mdserver.utils.TimerUtils;
 
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * MDServerImpl manages multiple groups of bank server replicas.
@@ -33,7 +50,7 @@ public class MDServerImpl extends UnicastRemoteObject implements MDServerInterfa
      * Key: groupName
      * Value: A queue of messages waiting to be broadcast to that group.
      */
-    private final Map<String, Queue<Message>> messageQueues = new ConcurrentHashMap<>();
+    private final Map<String, GroupQueue> messageQueues = new ConcurrentHashMap<>();
 
     /**
      * Tracks if a broadcast is currently in progress for a specific group.
@@ -49,24 +66,644 @@ public class MDServerImpl extends UnicastRemoteObject implements MDServerInterfa
      */
     private final Map<String, Set<String>> pendingAcks = new ConcurrentHashMap<>();
 
-    private final ExecutorService sendExecutor = Executors.newCachedThreadPool();
+    /**
+     * Current membership epoch of each group, bumped on every join and leave.
+     * Only modified while holding the MDServerImpl lock, together with groups.
+     * Key: groupName
+     * Value: epoch of the latest membership change
+     */
+    private final Map<String, Long> membershipEpochs = new ConcurrentHashMap<>();
+
+    /**
+     * Last sequence number assigned in each group. Sequences start at 1 and are assigned
+     * when a message leaves the queue, so they follow delivery order.
+     */
+    private final Map<String, Long> sequenceNumbers = new ConcurrentHashMap<>();
+
+    /**
+     * Generation of this MDServer for each group: 0 for the first primary, one higher for each
+     * standby that took over (or shard that adopted the group). Replicas refuse messages from an
+     * older generation than one they have seen, which fences a primary that was taken over from.
+     */
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+    /**
+     * The most recently ordered messages of each group, oldest first.
+     * Observers that fall behind catch up from here.
+     */
+    private final Map<String, Deque<Message>> retainedMessages = new ConcurrentHashMap<>();
+    private static final int RETAINED_MESSAGES_PER_GROUP = 10_000;
+
+    /**
+     * Non-voting observer replicas of each group. They are never part of groups or pendingAcks.
+     * Key: groupName
+     * Value: observer name -> its delivery stream
+     */
+    private final Map<String, Map<String, ObserverStream>> observers = new ConcurrentHashMap<>();
+
+    // Observers that are standby replicas, by group, oldest first; promoted into the group on demand
+    // or when a member is evicted. Guarded by this
+    private final Map<String, Map<String, BankServerInterface>> standbyReplicas = new HashMap<>();
+
+    // Runs every call to a replica: fan-out sends, relays, deposits and membership pushes
+    private final ExecutorService sendExecutor;
+
+    // Take the next message of a group off its queue and order it: standby replication, the
+    // recording and the start of its delivery. Groups are partitioned over these by the hash of
+    // their name, so a group's messages stay in order and a slow standby never holds up the timer
+    // thread the ACK checks run on.
+    private final ExecutorService[] orderingThreads;
+
+    /**
+     * Limits the calls in flight to each replica, so a slow replica cannot tie up an unbounded
+     * number of send threads. Key: replica name. Value: permits of options.maxSendsPerReplica.
+     */
+    private final Map<String, Semaphore> sendPermits = new ConcurrentHashMap<>();
+    private static final long SEND_PERMIT_WAIT_MS = 2000L; // as long as the resend timer
+    private final LongAdder activeSends = new LongAdder();
+    private final LongAdder throttledSends = new LongAdder();
+
+    /**
+     * The transaction each group is currently waiting on ACKs for (one at a time per group).
+     * Key: groupName
+     * Value: transaction uniqueId, the key into pendingAcks
+     */
+    private final Map<String, String> inFlightTx = new ConcurrentHashMap<>();
+
+    /**
+     * Groups handed off to another shard, and which one. Their broadcasts are turned away as
+     * overloaded, so the senders keep them outstanding until they have rejoined the new shard.
+     */
+    private final Map<String, String> movedGroups = new ConcurrentHashMap<>();
+    private final Set<String> draining = ConcurrentHashMap.newKeySet(); // moved, but still finishing what is queued here
+    private static final long HANDOFF_DRAIN_MS = 5000L; // as long as the ACK timeout
+    private static final long MOVED_RETRY_MS = 500L;    // about one sequencer check of the replicas
+
+    // JMX counters per group, registered as mdserver:type=Group,name=<group>
+    private final Map<String, GroupMetrics> groupMetrics = new ConcurrentHashMap<>();
+
+    // Where transactions spend their time inside the MDServer, per pair of lifecycle stages
+    private final StageLatencies latencies = new StageLatencies();
+
+    /**
+     * Number of relay children per node when messages are disseminated through a tree of replicas.
+     * 0 disables the overlay, and the MDServer sends to every replica itself.
+     */
+    private final int treeFanout;
+    private final MDServerOptions options;
+
+    // The standby MDServer that gets every sequencing change before any replica sees it, if one is attached
+    private final AtomicReference<StandbyInterface> standby = new AtomicReference<>();
+
+    // Every ordered message, in order per group, when started with --record
+    private final TransactionLog.Writer recorder;
+    // Writes the recording, so no ordering thread waits on the disk. One thread keeps each
+    // group's messages in the order its ordering thread handed them over
+    private final ExecutorService recordWriter;
 
     public MDServerImpl() throws RemoteException {
+        this(new MDServerOptions());
+    }
+
+    public MDServerImpl(MDServerOptions options) throws RemoteException {
         super();
+        this.options = options;
+        this.treeFanout = options.treeFanout;
+        this.sendExecutor = options.executionModel.newExecutor("mdserver-send");
+        this.orderingThreads = new ExecutorService[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < orderingThreads.length; i++) {
+            orderingThreads[i] = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("mdserver-order-" + i).daemon(true).factory());
+        }
+        try {
+            this.recorder = options.record == null ? null : new TransactionLog.Writer(options.record, TransactionLog.Kind.ORDERED);
+        } catch (IOException e) {
+            throw new RemoteException("Could not create the recording " + options.record, e);
+        }
+        this.recordWriter = recorder == null ? null
+                : Executors.newSingleThreadExecutor(Thread.ofPlatform().name("mdserver-recorder").daemon(true).factory());
+        registerMBean(new MDServerMetrics(this), "mdserver:type=MDServer");
+    }
+
+    // --- Monitoring ---
+
+    private static void registerMBean(Object mbean, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+        } catch (Exception e) {
+            Log.warn("Could not register MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    private GroupMetrics metricsFor(String groupName) {
+        return groupMetrics.computeIfAbsent(groupName, name -> {
+            GroupMetrics metrics = new GroupMetrics(name, this);
+            registerMBean(metrics, "mdserver:type=Group,name=" + ObjectName.quote(name));
+            return metrics;
+        });
+    }
+
+    Map<String, GroupMetrics> groupMetrics() {
+        return groupMetrics;
+    }
+
+    int queueDepth(String groupName) {
+        GroupQueue queue = messageQueues.get(groupName);
+        return queue == null ? 0 : queue.size();
+    }
+
+    int pendingAckCount(String groupName) {
+        String txId = inFlightTx.get(groupName);
+        Set<String> waiting = txId == null ? null : pendingAcks.get(txId);
+        return waiting == null ? 0 : waiting.size();
+    }
+
+    long lastSequence(String groupName) {
+        return sequenceNumbers.getOrDefault(groupName, 0L);
+    }
+
+    long membershipEpoch(String groupName) {
+        return membershipEpochs.getOrDefault(groupName, 0L);
+    }
+
+    int memberCount(String groupName) {
+        Map<String, BankServerInterface> members = groups.get(groupName);
+        return members == null ? 0 : members.size();
+    }
+
+    int observerCount(String groupName) {
+        Map<String, ObserverStream> groupObservers = observers.get(groupName);
+        return groupObservers == null ? 0 : groupObservers.size();
+    }
+
+    synchronized int standbyCount(String groupName) {
+        Map<String, BankServerInterface> standbys = standbyReplicas.get(groupName);
+        return standbys == null ? 0 : standbys.size();
+    }
+
+    int queuedTransactions(String groupName) {
+        GroupQueue queue = messageQueues.get(groupName);
+        return queue == null ? 0 : queue.transactions();
+    }
+
+    long activeSends() {
+        return activeSends.sum();
+    }
+
+    long throttledSends() {
+        return throttledSends.sum();
+    }
+
+    MDServerOptions options() {
+        return options;
     }
 
     @Override
-    public synchronized void registerReplica(BankServerInterface replica) throws RemoteException {
+    public void registerReplica(BankServerInterface replica) throws RemoteException {
         String uniqueName = replica.getinstanceName();
         // Assumption: The replica's unique name is in the format "groupName_someIdentifier"
         // This is a robust way to associate a replica with its group.
         String groupName = uniqueName.split("_")[0];
+        requireNotMoved(groupName);
+        GroupInfo snapshot = addMember(groupName, uniqueName, replica, false);
+        Log.info("Replica registered: " + uniqueName + " to group " + groupName + " (epoch " + snapshot.getEpoch() + ")");
+    }
+
+    /**
+     * Adds a replica to the group in one membership epoch and tells everyone. The stream of a
+     * promoted standby is retired in the same step, under the retained log's lock: a message
+     * streamed before that is still delivered from the stream's queue, and any later one is sent
+     * to the replica as a member.
+     */
+    private GroupInfo addMember(String groupName, String uniqueName, BankServerInterface replica, boolean promoted) {
+        // Only the bookkeeping happens under the lock; the RMI calls are made after releasing it.
+        GroupInfo snapshot;
+        MembershipDelta delta;
+        Map<String, BankServerInterface> recipients;
+        ObserverStream retired = null;
+        Deque<Message> retained = retainedMessages.computeIfAbsent(groupName, _ -> new ArrayDeque<>());
+        synchronized (this) {
+            if (promoted) {
+                synchronized (retained) {
+                    Map<String, ObserverStream> groupObservers = observers.get(groupName);
+                    retired = groupObservers == null ? null : groupObservers.remove(uniqueName);
+                }
+            }
+            Map<String, BankServerInterface> members = groups.computeIfAbsent(groupName, _ -> new ConcurrentHashMap<>());
+            members.put(uniqueName, replica);
+            metricsFor(groupName);
+            long epoch = membershipEpochs.merge(groupName, 1L, Long::sum);
+            snapshot = new GroupInfo(epoch, members.keySet());
+            delta = new MembershipDelta(epoch, List.of(uniqueName), List.of());
+            recipients = new HashMap<>(members);
+        }
+        if (retired != null) {
+            retired.drain();
+        }
+        replicateMembershipToStandby(groupName, snapshot);
+
+        // The new member needs the full list, everyone else only the delta.
+        dispatchMembership(recipients, snapshot, delta, Set.of(uniqueName));
+        return snapshot;
+    }
+
+    @Override
+    public void rejoin(BankServerInterface replica, long lastSequence) throws RemoteException {
+        String uniqueName = replica.getinstanceName();
+        String groupName = uniqueName.split("_")[0];
+        requireNotMoved(groupName);
+        boolean known;
+        synchronized (this) {
+            Map<String, BankServerInterface> members = groups.get(groupName);
+            known = members != null && members.containsKey(uniqueName);
+            if (known) {
+                members.put(uniqueName, replica); // the stub it reaches us with now
+            }
+        }
+        if (!known) {
+            registerReplica(replica);
+        }
+
+        // Having applied the message in flight counts as its ACK; the one it sent went to the old MDServer.
+        String txId = inFlightTx.get(groupName);
+        List<Message> missed = getRetainedMessages(groupName, lastSequence + 1);
+        if (txId != null && missed.stream().noneMatch(msg -> msg.getTransactions().get(0).getUniqueId().equals(txId))) {
+            ack(txId, uniqueName);
+        }
+        if (!missed.isEmpty() && missed.get(0).getSequence() > lastSequence + 1) {
+            Log.warn(uniqueName + " rejoined at #" + lastSequence + ", but messages from #" + missed.get(0).getSequence() + " are retained only.");
+        }
+        // In order, in one task, so the replica applies them in sequence; it skips anything it already has.
+        submitTo(uniqueName, () -> {
+            for (Message msg : missed) {
+                try {
+                    replica.receiveMessage(msg);
+                } catch (RemoteException e) {
+                    Log.warn("Error resending message #" + msg.getSequence() + " to " + uniqueName + ": " + e.getMessage());
+                    return;
+                } catch (StaleSequencerException e) {
+                    superseded(groupName, e);
+                    return;
+                }
+            }
+        }, null);
+        Log.info("Replica rejoined: " + uniqueName + " to group " + groupName + " after #" + lastSequence + " (resending " + missed.size() + " messages)");
+    }
+
+    @Override
+    public void heartbeat() {
+        // Answering at all is the heartbeat.
+    }
+
+    // --- Standby replication ---
+
+    @Override
+    public List<SequencerState> registerStandby(StandbyInterface newStandby) throws RemoteException {
+        // Replicate from now on first, so the snapshot below can only be older than what follows it.
+        standby.set(newStandby);
+        Set<String> groupNames = new HashSet<>(groups.keySet());
+        groupNames.addAll(sequenceNumbers.keySet());
+        List<SequencerState> states = new ArrayList<>();
+        for (String groupName : groupNames) {
+            states.add(sequencerState(groupName));
+        }
+        Log.info("Standby MDServer attached. Replicating " + states.size() + " groups to it.");
+        return states;
+    }
+
+    @Override
+    public long generation(String groupName) {
+        return generations.getOrDefault(groupName, 0L);
+    }
+
+    private SequencerState sequencerState(String groupName) {
+        List<String> members;
+        long epoch;
+        synchronized (this) {
+            Map<String, BankServerInterface> current = groups.get(groupName);
+            members = current == null ? List.of() : new ArrayList<>(current.keySet());
+            epoch = membershipEpochs.getOrDefault(groupName, 0L);
+        }
+        List<Message> retained = new ArrayList<>();
+        Deque<Message> log = retainedMessages.get(groupName);
+        if (log != null) {
+            synchronized (log) {
+                retained.addAll(log);
+            }
+        }
+        return new SequencerState(groupName, sequenceNumbers.getOrDefault(groupName, 0L), epoch, generations.getOrDefault(groupName, 0L), members, retained);
+    }
+
+    /**
+     * Returns false if the standby has taken over, and the message must not be delivered.
+     */
+    private boolean replicateToStandby(String groupName, Message ordered) {
+        StandbyInterface target = standby.get();
+        if (target == null) {
+            return true;
+        }
+        try {
+            target.replicate(groupName, ordered);
+        } catch (RemoteException e) {
+            dropStandby(target, e);
+        } catch (StaleSequencerException e) {
+            superseded(groupName, e);
+            return false;
+        }
+        return true;
+    }
+
+    private void replicateMembershipToStandby(String groupName, GroupInfo members) {
+        StandbyInterface target = standby.get();
+        if (target == null) {
+            return;
+        }
+        try {
+            target.replicateMembership(groupName, members);
+        } catch (RemoteException e) {
+            dropStandby(target, e);
+        }
+    }
+
+    private void dropStandby(StandbyInterface target, RemoteException e) {
+        // Ordering goes on without a standby rather than stopping with it.
+        if (standby.compareAndSet(target, null)) {
+            Log.warn("Standby MDServer unreachable, continuing without one: " + e.getMessage());
+        }
+    }
+
+    // --- Sharding ---
+
+    @Override
+    public List<String> groupNames() {
+        return new ArrayList<>(groups.keySet());
+    }
+
+    @Override
+    public Set<String> movedGroups() {
+        // Draining groups still need their replicas' ACKs here.
+        Set<String> moved = new HashSet<>(movedGroups.keySet());
+        moved.removeAll(draining);
+        return moved;
+    }
+
+    private void requireNotMoved(String groupName) throws RemoteException {
+        String shard = movedGroups.get(groupName);
+        if (shard != null) {
+            throw new RemoteException("Group " + groupName + " is ordered by shard " + shard + " now.");
+        }
+    }
+
+    @Override
+    public SequencerState handOff(String groupName, String shard) throws RemoteException {
+        // Turn new broadcasts away first, then let what is queued and in flight finish here.
+        draining.add(groupName);
+        movedGroups.put(groupName, shard);
+        long deadline = System.currentTimeMillis() + HANDOFF_DRAIN_MS;
+        GroupQueue queue = messageQueues.get(groupName);
+        while ((queue != null && queue.size() > 0 || inFlightTx.containsKey(groupName)) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int dropped = queue == null ? 0 : queue.size();
+
+        SequencerState state;
+        Map<String, BankServerInterface> stubs;
+        // Together, so no message can be numbered in between; the new shard delivers the message in flight again
+        synchronized (this) {
+            state = sequencerState(groupName);
+            stubs = dropGroup(groupName);
+        }
+        draining.remove(groupName);
+        // Still-queued messages are not lost: their senders flush them again at the new shard.
+        Log.info("Handed group " + groupName + " off to shard " + shard + " at #" + state.getLastSequence()
+                + (dropped > 0 ? ", " + dropped + " queued messages left to their senders" : ""));
+        return new SequencerState(groupName, state.getLastSequence(), state.getEpoch(), state.getGeneration(), state.getMembers(), state.getRetained(), stubs);
+    }
+
+    /**
+     * Stops ordering a group that a standby took over while we kept running, e.g. because only
+     * the standby lost us. Its members follow the successor and refuse us already. Listing the
+     * group as moved tells them to look the MDServer up again, which finds the successor, and
+     * turns away their broadcasts here meanwhile.
+     */
+    private void superseded(String groupName, StaleSequencerException e) {
+        if (movedGroups.putIfAbsent(groupName, ShardMap.registryName(options.shard)) != null) {
+            return;
+        }
+        Log.warn("Group " + groupName + " is ordered by a newer MDServer (generation " + e.getCurrentGeneration() + "). Stopping: " + e.getMessage());
+        dropGroup(groupName);
+    }
+
+    /**
+     * Forgets everything about a group, including the message in flight, and returns its member stubs.
+     */
+    private Map<String, BankServerInterface> dropGroup(String groupName) {
+        Map<String, BankServerInterface> stubs;
+        synchronized (this) {
+            Map<String, BankServerInterface> members = groups.remove(groupName);
+            stubs = members == null ? Map.of() : new HashMap<>(members);
+            membershipEpochs.remove(groupName);
+            sequenceNumbers.remove(groupName);
+        }
+        messageQueues.remove(groupName);
+        generations.remove(groupName);
+        retainedMessages.remove(groupName);
+        String inFlight = inFlightTx.remove(groupName);
+        if (inFlight != null) {
+            pendingAcks.remove(inFlight);
+        }
+        synchronized (isBroadcasting) {
+            isBroadcasting.remove(groupName);
+        }
+        Map<String, ObserverStream> groupObservers = observers.remove(groupName);
+        if (groupObservers != null) {
+            groupObservers.values().forEach(ObserverStream::close);
+        }
+        return stubs;
+    }
+
+    @Override
+    public void adoptGroup(SequencerState state) {
+        movedGroups.remove(state.getGroupName()); // it may be coming back
+        adopt(state, state.getMemberStubs());
+        Log.info("Adopted group " + state.getGroupName() + " at #" + state.getLastSequence() + " with " + state.getMemberStubs().size() + " members");
+    }
+
+    /**
+     * Continues a group where a failed primary left it (see StandbyMDServer): its sequence
+     * numbers, its retained messages and, one epoch later, the members that could still be
+     * looked up. The last ordered message may not have reached every replica, so it is
+     * delivered again as the message in flight; replicas skip it if they already applied it.
+     *
+     * We order the group as the next generation. The members learn it first, so they refuse
+     * the old primary should it still be running; retained messages are stamped with it too,
+     * since replicas catching up get them from us.
+     */
+    void adopt(SequencerState state, Map<String, BankServerInterface> members) {
+        String groupName = state.getGroupName();
+        long generation = state.getGeneration() + 1;
+        generations.put(groupName, generation);
+        List<Message> restamped = new ArrayList<>();
+        for (Message msg : state.getRetained()) {
+            restamped.add(msg.withSequence(msg.getSequence(), generation));
+        }
+        long delivered = fence(members, generation);
+        long lastSequence = state.getLastSequence();
+        if (delivered > lastSequence) {
+            // The old primary went on ordering after it lost the standby. Continue above what the
+            // members got, and one more: the message it had in flight may have reached observers.
+            Log.warn("Group " + groupName + " was ordered up to #" + delivered + " after the standby's #" + lastSequence
+                    + ". Continuing at #" + (delivered + 2) + ".");
+            lastSequence = delivered + 1;
+        }
+        GroupInfo snapshot;
+        synchronized (this) {
+            groups.put(groupName, new ConcurrentHashMap<>(members));
+            metricsFor(groupName);
+            sequenceNumbers.put(groupName, lastSequence);
+            membershipEpochs.put(groupName, state.getEpoch() + 1);
+            snapshot = new GroupInfo(state.getEpoch() + 1, members.keySet());
+        }
+        Deque<Message> retained = retainedMessages.computeIfAbsent(groupName, _ -> new ArrayDeque<>());
+        synchronized (retained) {
+            retained.addAll(restamped);
+        }
+        dispatchMembership(new HashMap<>(members), snapshot, null, members.keySet());
+
+        if (!restamped.isEmpty() && !members.isEmpty()) {
+            synchronized (isBroadcasting) {
+                isBroadcasting.put(groupName, true);
+            }
+            deliver(groupName, restamped.get(restamped.size() - 1));
+        }
+    }
+
+    /**
+     * Tells every member our generation, waiting (briefly) so that a running old primary is
+     * refused before we take any message. Returns the highest sequence number they were delivered.
+     */
+    private long fence(Map<String, BankServerInterface> members, long generation) {
+        List<Future<Long>> pending = new ArrayList<>();
+        for (Map.Entry<String, BankServerInterface> member : members.entrySet()) {
+            pending.add(sendExecutor.submit(() -> {
+                try {
+                    return member.getValue().fenceSequencer(generation);
+                } catch (RemoteException e) {
+                    Log.warn("Could not fence the old MDServer at " + member.getKey() + ": " + e.getMessage());
+                    return 0L;
+                }
+            }));
+        }
+        long delivered = 0;
+        for (Future<Long> call : pending) {
+            try {
+                delivered = Math.max(delivered, call.get(SEND_PERMIT_WAIT_MS, TimeUnit.MILLISECONDS));
+            } catch (Exception e) {
+                call.cancel(true); // an unreachable member is evicted by the usual ACK timeout
+            }
+        }
+        return delivered;
+    }
+
+    @Override
+    public void registerObserver(BankServerInterface observer, long lastSequence) throws RemoteException {
+        String uniqueName = observer.getinstanceName();
+        String groupName = uniqueName.split("_")[0];
+        requireNotMoved(groupName);
+
+        Deque<Message> retained = retainedMessages.computeIfAbsent(groupName, _ -> new ArrayDeque<>());
+        int catchUp = 0;
+        // Holding the retained log while registering guarantees the catch-up is queued before any live message.
+        synchronized (retained) {
+            ObserverStream stream = new ObserverStream(uniqueName, observer, () -> removeObserver(groupName, uniqueName));
+            observers.computeIfAbsent(groupName, _ -> new ConcurrentHashMap<>()).put(uniqueName, stream);
+            for (Message msg : retained) {
+                if (msg.getSequence() > lastSequence) {
+                    stream.push(msg);
+                    catchUp++;
+                }
+            }
+        }
+        Log.info("Observer registered: " + uniqueName + " to group " + groupName + " (catching up " + catchUp + " messages after #" + lastSequence + ")");
+    }
+
+    @Override
+    public void registerStandbyReplica(BankServerInterface standby, long lastSequence) throws RemoteException {
+        String uniqueName = standby.getinstanceName();
+        String groupName = uniqueName.split("_")[0];
+        registerObserver(standby, lastSequence);
+        synchronized (this) {
+            standbyReplicas.computeIfAbsent(groupName, _ -> new LinkedHashMap<>()).put(uniqueName, standby);
+        }
+        Log.info("Standby replica registered: " + uniqueName + " for group " + groupName);
+    }
+
+    /**
+     * Promotes the group's oldest standby. It is told first, so it ACKs from its first message as
+     * a member; a standby that cannot be reached is dropped and the next one is tried.
+     */
+    @Override
+    public String promoteStandby(String groupName) throws RemoteException {
+        requireNotMoved(groupName);
+        while (true) {
+            String uniqueName;
+            BankServerInterface standby;
+            synchronized (this) {
+                Map<String, BankServerInterface> standbys = standbyReplicas.get(groupName);
+                if (standbys == null || standbys.isEmpty()) {
+                    return null;
+                }
+                Map.Entry<String, BankServerInterface> oldest = standbys.entrySet().iterator().next();
+                uniqueName = oldest.getKey();
+                standby = oldest.getValue();
+                standbys.remove(uniqueName);
+            }
+            try {
+                standby.promote();
+            } catch (RemoteException e) {
+                Log.warn("Standby " + uniqueName + " could not be promoted: " + e.getMessage());
+                removeObserver(groupName, uniqueName);
+                continue;
+            }
+            GroupInfo snapshot = addMember(groupName, uniqueName, standby, true);
+            metricsFor(groupName).promotions.increment();
+            Log.info("Standby " + uniqueName + " promoted into group " + groupName + " (epoch " + snapshot.getEpoch() + ")");
+            return uniqueName;
+        }
+    }
 
-        groups.computeIfAbsent(groupName, _ -> new ConcurrentHashMap<>()).put(uniqueName, replica);
-        System.out.println("Replica registered: " + uniqueName + " to group " + groupName);
+    @Override
+    public List<Message> getRetainedMessages(String groupName, long fromSequence) throws RemoteException {
+        Deque<Message> retained = retainedMessages.get(groupName);
+        List<Message> result = new ArrayList<>();
+        if (retained == null) {
+            return result;
+        }
+        synchronized (retained) {
+            for (Message msg : retained) {
+                if (msg.getSequence() >= fromSequence) {
+                    result.add(msg);
+                }
+            }
+        }
+        return result;
+    }
 
-        // Notify all members of that group about the new membership list.
-        updateMembershipForGroup(groupName);
+    private void removeObserver(String groupName, String observerName) {
+        Map<String, ObserverStream> groupObservers = observers.get(groupName);
+        if (groupObservers != null) {
+            groupObservers.remove(observerName);
+        }
+        synchronized (this) {
+            Map<String, BankServerInterface> standbys = standbyReplicas.get(groupName);
+            if (standbys != null) {
+                standbys.remove(observerName);
+            }
+        }
     }
 
     @Override
@@ -79,77 +716,263 @@ public class MDServerImpl extends UnicastRemoteObject implements MDServerInterfa
     }
 
     @Override
-    public void broadcastMessage(Message msg) throws RemoteException {
+    public synchronized GroupInfo getGroupInfo(String groupName) throws RemoteException {
+        Map<String, BankServerInterface> members = groups.get(groupName);
+        long epoch = membershipEpochs.getOrDefault(groupName, 0L);
+        return new GroupInfo(epoch, members == null ? Collections.emptyList() : members.keySet());
+    }
+
+    @Override
+    public void broadcastMessage(Message msg) throws RemoteException, OverloadedException {
         String senderId = msg.getSenderId();
+        String movedTo = movedGroups.get(senderId.split("_")[0]);
+        if (movedTo != null) {
+            throw new OverloadedException("Group " + senderId.split("_")[0] + " moved to shard " + movedTo + ".", MOVED_RETRY_MS);
+        }
         String groupName = findGroupForReplica(senderId);
 
         if (groupName == null) {
-            System.err.println("Could not find group for sender: " + senderId + ". Message dropped.");
+            Log.warn("Could not find group for sender: " + senderId + ". Message dropped.");
             return;
         }
 
-        // Add the message to the correct group's queue.
-        Queue<Message> queue = messageQueues.computeIfAbsent(groupName, _ -> new LinkedList<>());
-        synchronized (queue) {
-            queue.add(msg);
+        for (Transaction tx : msg.getTransactions()) {
+            tx.stamp(TxStage.ENQUEUED);
+        }
+
+        // Add the message to the correct group's queue, unless that would exceed its bound.
+        // A single message larger than the bound is still accepted into an empty queue.
+        GroupQueue queue = messageQueues.computeIfAbsent(groupName, _ -> new GroupQueue(options.controlMaxTransactions));
+        if (!queue.offer(msg, options.maxQueuedPerGroup)) {
+            metricsFor(groupName).rejected.increment();
+            throw new OverloadedException("Queue of group " + groupName + " is full (" + queue.transactions() + " transactions).", retryAfterMs(queue.size()));
         }
 
         // Start broadcasting if not already in progress for this group.
-        processNextMessage(groupName);
+        orderNext(groupName);
+    }
+
+    @Override
+    public void broadcastMessages(List<Message> msgs) throws RemoteException, OverloadedException {
+        List<String> rejected = new ArrayList<>();
+        long retryAfterMs = 0;
+        for (Message msg : msgs) {
+            try {
+                broadcastMessage(msg);
+            } catch (OverloadedException e) {
+                rejected.add(msg.getSenderId());
+                retryAfterMs = Math.max(retryAfterMs, e.getRetryAfterMs());
+            }
+        }
+        if (!rejected.isEmpty()) {
+            throw new OverloadedException(rejected.size() + " of " + msgs.size() + " messages rejected by full group queues.", retryAfterMs, rejected);
+        }
+    }
+
+    /**
+     * Rough time until a queue of the given length drains: one ACK round per message.
+     */
+    private long retryAfterMs(int queuedMessages) {
+        long roundMs = Math.max(1, latencies.histogram(TxStage.SENT.name() + "->" + TxStage.ACKED.name()).percentile(50) / 1000);
+        return Math.clamp(queuedMessages * roundMs, 100L, 10_000L);
+    }
+
+    @Override
+    public void disseminateDeposits(String senderId, List<DepositEntry> entries) throws RemoteException {
+        String groupName = findGroupForReplica(senderId);
+        Map<String, BankServerInterface> members = groupName == null ? null : groups.get(groupName);
+        if (members == null) {
+            return;
+        }
+        for (Map.Entry<String, BankServerInterface> member : members.entrySet()) {
+            if (member.getKey().equals(senderId)) {
+                continue;
+            }
+            submitTo(member.getKey(), () -> {
+                try {
+                    member.getValue().receiveDeposits(entries);
+                } catch (RemoteException e) {
+                    // Lost deposits still reach everyone inside the next ordered barrier.
+                }
+            }, null);
+        }
+    }
+
+    private void orderNext(String groupName) {
+        orderingThreads[Math.floorMod(groupName.hashCode(), orderingThreads.length)].execute(() -> processNextMessage(groupName));
     }
 
     private void processNextMessage(String groupName) {
+        Message msg;
         // Ensure only one broadcast happens at a time per group.
         synchronized (isBroadcasting) {
             if (isBroadcasting.getOrDefault(groupName, false)) {
                 return; // Another broadcast is already in progress for this group.
             }
+            GroupQueue queue = messageQueues.get(groupName);
+            msg = queue == null ? null : queue.poll();
+            if (msg == null) {
+                isBroadcasting.put(groupName, false); // No more messages, stop broadcasting.
+                return;
+            }
             isBroadcasting.put(groupName, true);
+            // In flight from the poll on, so a hand-off waits for it through the remote calls below.
+            inFlightTx.put(groupName, msg.getTransactions().get(0).getUniqueId());
         }
 
-        Queue<Message> queue = messageQueues.get(groupName);
-        Message msg;
-        if (queue != null) {
-            synchronized (queue) {
-                msg = queue.poll();
+        Message ordered;
+        synchronized (this) {
+            Map<String, BankServerInterface> members = groups.get(groupName);
+            if (members == null) {
+                stopOrdering(groupName); // handed off or superseded
+                return;
+            }
+            if (members.isEmpty()) {
+                Log.warn("Group " + groupName + " has no members. Message dropped.");
+                ordered = null;
+            } else {
+                // The position in the total order is fixed here, right before the first delivery
+                // attempt, and under the same lock as dropGroup, so a dropped group gets no number.
+                ordered = msg.withSequence(sequenceNumbers.merge(groupName, 1L, Long::sum), generations.getOrDefault(groupName, 0L));
             }
-        } else {
-            msg = null;
         }
-
-        if (msg == null) {
-            isBroadcasting.put(groupName, false); // No more messages, stop broadcasting.
+        if (ordered == null) {
+            inFlightTx.remove(groupName);
+            isBroadcasting.put(groupName, false);
+            processNextMessage(groupName); // Try the next message
             return;
         }
+        for (Transaction queued : ordered.getTransactions()) {
+            queued.stamp(TxStage.SENT);
+        }
+        // The standby has every message before any replica can have applied it.
+        if (!replicateToStandby(groupName, ordered)) {
+            return;
+        }
+        if (!groups.containsKey(groupName)) {
+            // Handed off while we were at the standby. The new shard has its own numbers from
+            // here on, and the senders flush this message again there.
+            stopOrdering(groupName);
+            return;
+        }
+        record(groupName, ordered);
+        retainAndStreamToObservers(groupName, ordered);
+        deliver(groupName, ordered);
+    }
 
-        // Assuming one transaction per message as per BankServerImpl's current logic.
-        Transaction tx = msg.getTransactions().get(0);
-        String txId = tx.getUniqueId();
+    /**
+     * Leaves a group we no longer order: dropGroup has cleared, or is clearing, the rest.
+     */
+    private void stopOrdering(String groupName) {
+        inFlightTx.remove(groupName);
+        synchronized (isBroadcasting) {
+            isBroadcasting.remove(groupName);
+        }
+        Log.info("Stopped ordering group " + groupName + ": it is not ordered here any more.");
+    }
 
-        Map<String, BankServerInterface> members = groups.get(groupName);
-        if (members == null || members.isEmpty()) {
-            System.err.println("Group " + groupName + " has no members. Message dropped.");
-            isBroadcasting.put(groupName, false);
-            processNextMessage(groupName); // Try the next message
+    private void record(String groupName, Message ordered) {
+        if (recorder == null) {
             return;
         }
+        // The recording is for offline analysis; ordering does not wait on it.
+        recordWriter.execute(() -> {
+            try {
+                recorder.append(groupName, ordered.getTransactions());
+            } catch (IOException e) {
+                Log.warn("Could not record message #" + ordered.getSequence() + " of " + groupName + ": " + e.getMessage());
+            }
+        });
+    }
 
+    /**
+     * Sends an ordered message to every member and waits for their ACKs before the group's next message.
+     */
+    private void deliver(String groupName, Message ordered) {
+        String txId = ordered.getTransactions().get(0).getUniqueId();
         Set<String> waitingReplicas = ConcurrentHashMap.newKeySet();
-        waitingReplicas.addAll(members.keySet());
+        long epoch;
+        synchronized (this) {
+            // Members and epoch are read together so the tree matches what the replicas derive.
+            Map<String, BankServerInterface> members = groups.get(groupName);
+            if (members == null) {
+                stopOrdering(groupName);
+                return;
+            }
+            waitingReplicas.addAll(members.keySet());
+            epoch = membershipEpochs.getOrDefault(groupName, 0L);
+        }
         pendingAcks.put(txId, waitingReplicas);
+        inFlightTx.put(groupName, txId);
 
-        System.out.println("Broadcasting tx " + txId + " to group " + groupName);
+        Log.debug(() -> "Broadcasting tx " + txId + " to group " + groupName);
         List<String> targets = new ArrayList<>(waitingReplicas);
-        for (String replicaName : targets) {
-            sendWithRetry(groupName, replicaName, msg, txId, 0);
+        if (treeFanout > 0 && targets.size() > treeFanout) {
+            disseminateViaTree(groupName, DisseminationTree.layout(targets), epoch, ordered, txId);
+        } else {
+            for (String replicaName : targets) {
+                sendWithRetry(groupName, replicaName, ordered, txId, 0);
+            }
         }
 
         // Schedule a check to see if all ACKs have arrived.
-        TimerUtils.schedule(() -> checkAcksAndContinue(groupName, txId), 100);
+        TimerUtils.schedule(() -> checkAcksAndContinue(groupName, ordered, txId), 100);
+    }
+
+    private void retainAndStreamToObservers(String groupName, Message msg) {
+        Deque<Message> retained = retainedMessages.computeIfAbsent(groupName, _ -> new ArrayDeque<>());
+        synchronized (retained) {
+            retained.addLast(msg);
+            if (retained.size() > RETAINED_MESSAGES_PER_GROUP) {
+                retained.removeFirst();
+            }
+            Map<String, ObserverStream> groupObservers = observers.get(groupName);
+            if (groupObservers != null) {
+                for (ObserverStream stream : groupObservers.values()) {
+                    stream.push(msg);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the message to the relay roots only. Each relay applies it, forwards it to its
+     * children and returns the names of everyone in its subtree that applied it, which we ACK
+     * on their behalf. Replicas a relay could not reach are sent to directly right away;
+     * the usual resend and eviction timers cover every target either way.
+     */
+    private void disseminateViaTree(String groupName, List<String> order, long epoch, Message msg, String txId) {
+        for (String replicaName : order) {
+            scheduleRetryChecks(groupName, replicaName, msg, txId);
+        }
+        for (String root : DisseminationTree.children(order, treeFanout, null)) {
+            submitTo(root, () -> {
+                Set<String> uncovered = new HashSet<>(DisseminationTree.subtree(order, treeFanout, root));
+                BankServerInterface relay = getReplicaStub(groupName, root);
+                if (relay != null) {
+                    try {
+                        for (String applied : relay.relayMessage(msg, epoch, treeFanout)) {
+                            ack(txId, applied);
+                            uncovered.remove(applied);
+                        }
+                    } catch (RemoteException e) {
+                        Log.warn("Error relaying tx " + txId + " through " + root + ": " + e.getMessage());
+                    } catch (StaleSequencerException e) {
+                        superseded(groupName, e);
+                        return;
+                    }
+                }
+                for (String replicaName : uncovered) {
+                    sendWithRetry(groupName, replicaName, msg, txId, 1);
+                }
+            }, null);
+        }
     }
 
     private void sendWithRetry(String groupName, String replicaName, Message msg, String txId, int attempt) {
-        sendExecutor.submit(() -> {
+        // A throttled first attempt still gets its resend and eviction timers.
+        Runnable onThrottled = attempt == 0 ? () -> scheduleRetryChecks(groupName, replicaName, msg, txId) : null;
+        submitTo(replicaName, () -> {
             BankServerInterface replica = getReplicaStub(groupName, replicaName);
             if (replica == null) {
                 return;
@@ -157,29 +980,70 @@ public class MDServerImpl extends UnicastRemoteObject implements MDServerInterfa
             try {
                 replica.receiveMessage(msg);
             } catch (RemoteException e) {
-                System.err.println("Error sending tx " + txId + " to " + replicaName + ": " + e.getMessage());
+                Log.warn("Error sending tx " + txId + " to " + replicaName + ": " + e.getMessage());
+            } catch (StaleSequencerException e) {
+                superseded(groupName, e);
+                return;
             }
 
             if (attempt == 0) {
-                // Schedule a resend after 2 seconds if still waiting for ACK.
-                TimerUtils.schedule(() -> {
-                    if (isAckPending(txId, replicaName)) {
-                        System.err.println("No ACK for tx " + txId + " from " + replicaName + " after 2s. Resending.");
-                        sendWithRetry(groupName, replicaName, msg, txId, attempt + 1);
-                    }
-                }, 2000L);
-
-                // Schedule failure handling after 5 seconds.
-                TimerUtils.schedule(() -> {
-                    if (isAckPending(txId, replicaName)) {
-                        System.err.println("Replica " + replicaName + " failed to ACK tx " + txId + " within 5s. Removing.");
-                        removeReplica(groupName, replicaName);
-                        ack(txId, replicaName);
-                    }
-                }, 5000L);
+                scheduleRetryChecks(groupName, replicaName, msg, txId);
+            }
+        }, onThrottled);
+    }
+
+    /**
+     * Runs a call to one replica on the send executor, with at most maxSendsPerReplica calls in
+     * flight per replica. A call that gets no permit within SEND_PERMIT_WAIT_MS is skipped and
+     * onThrottled (if any) runs instead; resends and eviction treat it like a lost message.
+     */
+    private void submitTo(String replicaName, Runnable call, Runnable onThrottled) {
+        sendExecutor.execute(() -> {
+            Semaphore permits = sendPermits.computeIfAbsent(replicaName, _ -> new Semaphore(options.maxSendsPerReplica));
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(SEND_PERMIT_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                throttledSends.increment();
+                Log.warn("Too many calls in flight to " + replicaName + ". Skipping one.");
+                if (onThrottled != null) {
+                    onThrottled.run();
+                }
+                return;
+            }
+            activeSends.increment();
+            try {
+                call.run();
+            } finally {
+                activeSends.decrement();
+                permits.release();
             }
         });
     }
+
+    private void scheduleRetryChecks(String groupName, String replicaName, Message msg, String txId) {
+        // Schedule a resend after 2 seconds if still waiting for ACK.
+        TimerUtils.schedule(() -> {
+            if (isAckPending(txId, replicaName)) {
+                Log.warn("No ACK for tx " + txId + " from " + replicaName + " after 2s. Resending.");
+                metricsFor(groupName).retries.increment();
+                sendWithRetry(groupName, replicaName, msg, txId, 1);
+            }
+        }, 2000L);
+
+        // Schedule failure handling after 5 seconds.
+        TimerUtils.schedule(() -> {
+            if (isAckPending(txId, replicaName)) {
+                Log.warn("Replica " + replicaName + " failed to ACK tx " + txId + " within 5s. Removing.");
+                removeReplica(groupName, replicaName);
+                ack(txId, replicaName);
+            }
+        }, 5000L);
+    }
     
     @Override
     public synchronized void ack(String txId, String replicaName) {
@@ -187,30 +1051,99 @@ public class MDServerImpl extends UnicastRemoteObject implements MDServerInterfa
         if (waiting != null) {
             waiting.remove(replicaName);
             if (waiting.isEmpty()) {
-                System.out.println("All ACKs received for tx " + txId);
+                Log.debug(() -> "All ACKs received for tx " + txId);
             }
         }
     }
 
-    private void checkAcksAndContinue(String groupName, String txId) {
+    @Override
+    public void suspect(String groupName, String replicaName) {
+        BankServerInterface replica = getReplicaStub(groupName, replicaName);
+        if (replica == null) {
+            return;
+        }
+        submitTo(replicaName, () -> {
+            try {
+                replica.getinstanceName();
+            } catch (RemoteException e) {
+                Log.warn("Replica " + replicaName + " was reported by its group and does not answer. Removing.");
+                removeReplica(groupName, replicaName);
+            }
+        }, null);
+    }
+
+    private void checkAcksAndContinue(String groupName, Message msg, String txId) {
         Set<String> waiting = pendingAcks.get(txId);
         if (waiting != null && !waiting.isEmpty()) {
             // Still waiting for ACKs, check again shortly.
-            TimerUtils.schedule(() -> checkAcksAndContinue(groupName, txId), 100);
+            TimerUtils.schedule(() -> checkAcksAndContinue(groupName, msg, txId), 100);
         } else {
             // All ACKs received, proceed to the next message for this group.
             pendingAcks.remove(txId);
+            inFlightTx.remove(groupName, txId);
+            recordLatencies(msg);
             isBroadcasting.put(groupName, false);
-            processNextMessage(groupName);
+            orderNext(groupName);
         }
     }
 
+    private void recordLatencies(Message msg) {
+        String priority = Priority.of(msg, options.controlMaxTransactions).name() + " ";
+        for (Transaction tx : msg.getTransactions()) {
+            tx.stamp(TxStage.ACKED);
+            latencies.record(tx, TxStage.CREATED, TxStage.FLUSHED);
+            latencies.record(tx, TxStage.FLUSHED, TxStage.ENQUEUED);
+            latencies.record(tx, TxStage.ENQUEUED, TxStage.SENT);
+            latencies.record(tx, TxStage.SENT, TxStage.ACKED);
+            latencies.record(tx, TxStage.CREATED, TxStage.ACKED);
+            // Per scheduling class, to see what the priority lane buys sync markers
+            latencies.record(priority, tx, TxStage.ENQUEUED, TxStage.SENT);
+            latencies.record(priority, tx, TxStage.ENQUEUED, TxStage.ACKED);
+        }
+    }
+
+    @Override
+    public String getLatencyReport() throws RemoteException {
+        return latencyReport();
+    }
+
+    String latencyReport() {
+        return latencies.report("MDServer");
+    }
+
     private void removeReplica(String groupName, String replicaName) {
-        Map<String, BankServerInterface> members = groups.get(groupName);
-        if (members != null) {
-            members.remove(replicaName);
-            // Notify remaining members of the change.
-            updateMembershipForGroup(groupName);
+        MembershipDelta delta;
+        GroupInfo snapshot;
+        Map<String, BankServerInterface> recipients;
+        synchronized (this) {
+            Map<String, BankServerInterface> members = groups.get(groupName);
+            // Several pending transactions may time out for the same replica; only the first removal counts.
+            if (members == null || members.remove(replicaName) == null) {
+                return;
+            }
+            metricsFor(groupName).evictions.increment();
+            long epoch = membershipEpochs.merge(groupName, 1L, Long::sum);
+            delta = new MembershipDelta(epoch, List.of(), List.of(replicaName));
+            snapshot = new GroupInfo(epoch, members.keySet());
+            recipients = new HashMap<>(members);
+        }
+        sendPermits.remove(replicaName);
+        replicateMembershipToStandby(groupName, snapshot);
+        // Notify remaining members of the change.
+        dispatchMembership(recipients, null, delta, Set.of());
+        if (options.promoteOnEviction) {
+            sendExecutor.execute(() -> replaceEvicted(groupName, replicaName));
+        }
+    }
+
+    private void replaceEvicted(String groupName, String evicted) {
+        try {
+            String promoted = promoteStandby(groupName);
+            if (promoted != null) {
+                Log.info("Standby " + promoted + " replaces evicted " + evicted + " in group " + groupName + ".");
+            }
+        } catch (RemoteException e) {
+            Log.warn("Could not replace evicted " + evicted + ": " + e.getMessage());
         }
     }
 
@@ -228,32 +1161,56 @@ public class MDServerImpl extends UnicastRemoteObject implements MDServerInterfa
     }
 
     private void updateMembershipForGroup(String groupName) {
-        Map<String, BankServerInterface> members = groups.get(groupName);
-        if (members == null) return;
+        GroupInfo snapshot;
+        Map<String, BankServerInterface> recipients;
+        synchronized (this) {
+            Map<String, BankServerInterface> members = groups.get(groupName);
+            if (members == null) return;
+            snapshot = new GroupInfo(membershipEpochs.getOrDefault(groupName, 0L), members.keySet());
+            recipients = new HashMap<>(members);
+        }
+        dispatchMembership(recipients, snapshot, null, recipients.keySet());
+    }
 
-        GroupInfo info = new GroupInfo(new ArrayList<>(members.keySet()));
-        // Iterate over a copy to avoid ConcurrentModificationException if a member fails during update.
-        for (BankServerInterface replica : new ArrayList<>(members.values())) {
-            try {
-                replica.updateMembership(info);
-            } catch (RemoteException e) {
+    /**
+     * Pushes a membership change to every recipient concurrently.
+     * Replicas named in fullSnapshotFor receive the complete GroupInfo, all others the delta.
+     * Must not be called while holding the MDServerImpl lock.
+     */
+    private void dispatchMembership(Map<String, BankServerInterface> recipients, GroupInfo snapshot,
+                                    MembershipDelta delta, Set<String> fullSnapshotFor) {
+        for (Map.Entry<String, BankServerInterface> entry : recipients.entrySet()) {
+            String replicaName = entry.getKey();
+            BankServerInterface replica = entry.getValue();
+            boolean sendSnapshot = fullSnapshotFor.contains(replicaName);
+            submitTo(replicaName, () -> {
                 try {
-                    System.err.println("Failed to update membership for " + replica.getinstanceName() + ". It might be down.");
-                } catch (RemoteException e1) {
-                    e1.printStackTrace();
+                    if (sendSnapshot) {
+                        replica.updateMembership(snapshot);
+                    } else {
+                        replica.updateMembershipDelta(delta);
+                    }
+                } catch (RemoteException e) {
+                    Log.warn("Failed to update membership for " + replicaName + ". It might be down.");
                 }
-            }
+            }, null);
         }
     }
 
     @Override
-    public synchronized void updateMembership() throws RemoteException {
+    public void updateMembership() throws RemoteException {
         for (String groupName : new ArrayList<>(groups.keySet())) {
             updateMembershipForGroup(groupName);
         }
     }
 
     private String findGroupForReplica(String replicaName) {
+        // Replica names start with their group name, so look there first instead of scanning every group.
+        String groupName = replicaName.split("_")[0];
+        Map<String, BankServerInterface> members = groups.get(groupName);
+        if (members != null && members.containsKey(replicaName)) {
+            return groupName;
+        }
         for (Map.Entry<String, Map<String, BankServerInterface>> groupEntry : groups.entrySet()) {
             if (groupEntry.getValue().containsKey(replicaName)) {
                 return groupEntry.getKey();
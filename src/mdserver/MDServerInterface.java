@@ -1,17 +1,60 @@
 package mdserver;
 
 import bankserver.BankServerInterface;
+import common.DepositEntry;
+import common.GroupInfo;
 import common.Message;
+import common.OverloadedException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Set;
 
 public interface MDServerInterface extends Remote {
     void registerReplica(BankServerInterface replica) throws RemoteException;
+    // A replica that lost its MDServer registers again here and gets every retained message after lastSequence
+    void rejoin(BankServerInterface replica, long lastSequence) throws RemoteException;
+    // Observers receive the ordered stream best-effort, starting after lastSequence, and never ACK
+    void registerObserver(BankServerInterface observer, long lastSequence) throws RemoteException;
+    // Standby replicas get the stream like observers, serve no clients and wait to be promoted into their group
+    void registerStandbyReplica(BankServerInterface standby, long lastSequence) throws RemoteException;
+    // Moves one standby of the group into its members in a single membership epoch; returns its name, or null if there is none
+    String promoteStandby(String groupName) throws RemoteException;
+    List<Message> getRetainedMessages(String groupName, long fromSequence) throws RemoteException;
     List<String> getGroupMembers(String groupName) throws RemoteException;
-    void broadcastMessage(Message msg) throws RemoteException;
+    // Full membership snapshot, used by replicas that missed a membership epoch
+    GroupInfo getGroupInfo(String groupName) throws RemoteException;
+    // Rejected with OverloadedException when the sender's group queue is full
+    void broadcastMessage(Message msg) throws RemoteException, OverloadedException;
+    // Several messages, typically for different groups, in one call; accepted or rejected per message
+    void broadcastMessages(List<Message> msgs) throws RemoteException, OverloadedException;
+    // Best-effort fan-out of commutative deposits to the sender's group; not ordered and not ACKed
+    void disseminateDeposits(String senderId, List<DepositEntry> entries) throws RemoteException;
     
     // Explicit ACK from BankServer
     void ack(String txId, String replicaName) throws RemoteException;
+    // A member did not answer another one (agreed ordering has no ACKs); it is probed and evicted if it is gone
+    void suspect(String groupName, String replicaName) throws RemoteException;
     void updateMembership() throws RemoteException;
+
+    // p50/p99/p999 per transaction lifecycle stage, as seen by the MDServer
+    String getLatencyReport() throws RemoteException;
+
+    // --- Failover ---
+    // Liveness probe for the standby and the replicas
+    void heartbeat() throws RemoteException;
+    // Attaches a standby MDServer and returns the current state of every group; changes are replicated to it from then on
+    List<SequencerState> registerStandby(StandbyInterface standby) throws RemoteException;
+    // The generation we order the group in: one higher for every standby that took over
+    long generation(String groupName) throws RemoteException;
+
+    // --- Sharding ---
+    // Groups this MDServer orders
+    List<String> groupNames() throws RemoteException;
+    // Groups handed off to another shard; their replicas must look up their MDServer again
+    Set<String> movedGroups() throws RemoteException;
+    // Stops ordering the group, once its queue has drained, and returns its state for the new shard
+    SequencerState handOff(String groupName, String shard) throws RemoteException;
+    // Continues ordering a group handed off by another shard
+    void adoptGroup(SequencerState state) throws RemoteException;
 }
@@ -0,0 +1,63 @@
+package mdserver;
+
+import common.Log;
+import mdserver.utils.TimerUtils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Server-wide counters of the MDServer, read on demand.
+ */
+public class MDServerMetrics implements MDServerMetricsMBean {
+    private final MDServerImpl server;
+
+    MDServerMetrics(MDServerImpl server) {
+        this.server = server;
+    }
+
+    @Override
+    public int getGroupCount() {
+        return server.groupMetrics().size();
+    }
+
+    @Override
+    public String getExecutionModel() {
+        return server.options().executionModel.name();
+    }
+
+    @Override
+    public long getActiveSends() {
+        return server.activeSends();
+    }
+
+    @Override
+    public long getThrottledSends() {
+        return server.throttledSends();
+    }
+
+    @Override
+    public int getLiveThreads() {
+        // Platform threads of the whole JVM; virtual threads are not counted
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    @Override
+    public long getPendingTimers() {
+        return TimerUtils.pendingTimers();
+    }
+
+    @Override
+    public long getTotalRetries() {
+        return server.groupMetrics().values().stream().mapToLong(GroupMetrics::getRetries).sum();
+    }
+
+    @Override
+    public long getTotalEvictions() {
+        return server.groupMetrics().values().stream().mapToLong(GroupMetrics::getEvictions).sum();
+    }
+
+    @Override
+    public long getDroppedLogLines() {
+        return Log.dropped();
+    }
+}
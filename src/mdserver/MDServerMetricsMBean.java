@@ -0,0 +1,16 @@
+package mdserver;
+
+/**
+ * JMX view of the MDServer as a whole, registered as mdserver:type=MDServer.
+ */
+public interface MDServerMetricsMBean {
+    int getGroupCount();
+    String getExecutionModel();
+    long getActiveSends();
+    long getThrottledSends();
+    int getLiveThreads();
+    long getPendingTimers();
+    long getTotalRetries();
+    long getTotalEvictions();
+    long getDroppedLogLines();
+}
@@ -0,0 +1,77 @@
+package mdserver;
+
+import common.ExecutionModel;
+import common.Log;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional MDServer settings, given on the MDServer command line as --name=value.
+ */
+public class MDServerOptions {
+    // Relay children per node for tree dissemination, 0 to send to every replica directly
+    public int treeFanout = 0;
+    // Threads that run the sends to replicas
+    public ExecutionModel executionModel = ExecutionModel.VIRTUAL;
+    // Calls to one replica that may be in flight at the same time
+    public int maxSendsPerReplica = 4;
+    // Transactions that may wait in one group's queue before broadcasts are rejected
+    public int maxQueuedPerGroup = 100_000;
+    // Largest message carrying a sync marker that takes the priority lane, 0 for a plain FIFO queue
+    public int controlMaxTransactions = 32;
+    // Shard this MDServer orders groups for, bound as "MDServer-<shard>"; unset for a single MDServer
+    public String shard = null;
+    // Promote one of a group's standby replicas when a member is evicted for not ACKing
+    public boolean promoteOnEviction = true;
+    // File the ordered stream of every group is recorded to, for bankserver.Replay; unset to record nothing
+    public Path record = null;
+    // StandbyMDServer only: how often the primary is probed, and how long without an answer before taking over
+    public long heartbeatMs = 200L;
+    public long takeoverAfterMs = 1000L;
+
+    /**
+     * Reads the --name=value options from args into this object and returns the positional arguments.
+     */
+    public List<String> parse(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+            } else if (!apply(arg)) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return positional;
+    }
+
+    /**
+     * Applies a single --name=value option; returns false if it is not an MDServer option.
+     */
+    public boolean apply(String arg) {
+        String[] option = arg.substring(2).split("=", 2);
+        String value = option.length > 1 ? option[1] : "true";
+        switch (option[0]) {
+            case "tree-fanout" -> treeFanout = Integer.parseInt(value);
+            case "executor" -> executionModel = ExecutionModel.valueOf(value.toUpperCase());
+            case "max-sends-per-replica" -> maxSendsPerReplica = Integer.parseInt(value);
+            case "max-queued-per-group" -> maxQueuedPerGroup = Integer.parseInt(value);
+            case "control-max-transactions" -> controlMaxTransactions = Integer.parseInt(value);
+            case "shard" -> shard = value;
+            case "record" -> record = Path.of(value);
+            case "promote-on-eviction" -> promoteOnEviction = Boolean.parseBoolean(value);
+            case "heartbeat-ms" -> heartbeatMs = Long.parseLong(value);
+            case "takeover-after-ms" -> takeoverAfterMs = Long.parseLong(value);
+            case "log-level" -> Log.setLevel(Log.Level.valueOf(value.toUpperCase()));
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static String usage() {
+        return "[--tree-fanout=N] [--executor=platform|virtual] [--max-sends-per-replica=N] [--max-queued-per-group=N] [--control-max-transactions=N] [--shard=name] [--record=file] [--promote-on-eviction=true|false] [--log-level=debug|info|warn|error]";
+    }
+}
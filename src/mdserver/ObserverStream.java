@@ -0,0 +1,58 @@
+package mdserver;
+
+import bankserver.BankServerInterface;
+import common.Log;
+import common.Message;
+import common.StaleSequencerException;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Best-effort, in-order delivery of a group's ordered messages to one observer replica.
+ * Each observer gets its own single worker so a slow observer never delays voting
+ * replicas or other observers. When the backlog is full, messages are dropped;
+ * the observer notices the sequence gap and catches up from the retained messages.
+ */
+class ObserverStream {
+    private static final int MAX_BACKLOG = 1000;
+
+    private final String observerName;
+    private final BankServerInterface observer;
+    private final Runnable onFailure;
+    private final ThreadPoolExecutor executor;
+
+    ObserverStream(String observerName, BankServerInterface observer, Runnable onFailure) {
+        this.observerName = observerName;
+        this.observer = observer;
+        this.onFailure = onFailure;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_BACKLOG), new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    void push(Message msg) {
+        executor.execute(() -> {
+            try {
+                observer.receiveMessage(msg);
+            } catch (RemoteException | StaleSequencerException e) {
+                Log.warn("Observer " + observerName + " unreachable at message #" + msg.getSequence() + ". Removing.");
+                close();
+                onFailure.run();
+            }
+        });
+    }
+
+    /**
+     * Takes no more messages but still delivers the queued ones, for an observer that is about
+     * to receive the stream as a member instead.
+     */
+    void drain() {
+        executor.shutdown();
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+}
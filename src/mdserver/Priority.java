@@ -0,0 +1,30 @@
+package mdserver;
+
+import common.Message;
+import common.Transaction;
+
+/**
+ * Scheduling class of a message in a group's sequencer queue.
+ */
+enum Priority {
+    // A small message carrying a sync marker that a client is blocked on
+    CONTROL,
+    // Everything else: batches of deposits and interest that nobody waits on synchronously
+    BULK;
+
+    /**
+     * Classifies a message; markers inside batches larger than controlMaxTransactions stay BULK,
+     * so a sender cannot move its whole backlog ahead by adding a marker to it.
+     */
+    static Priority of(Message msg, int controlMaxTransactions) {
+        if (msg.getTransactions().size() > controlMaxTransactions) {
+            return BULK;
+        }
+        for (Transaction tx : msg.getTransactions()) {
+            if (tx.getCommand().startsWith("getSyncedBalance")) {
+                return CONTROL;
+            }
+        }
+        return BULK;
+    }
+}
@@ -0,0 +1,67 @@
+package mdserver;
+
+import bankserver.BankServerInterface;
+import common.Message;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sequencing state of one group: enough for a standby MDServer to continue where the primary stopped.
+ */
+public class SequencerState implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    private final String groupName;
+    private final long lastSequence;
+    private final long epoch;
+    private final long generation; // of the MDServer that ordered the retained messages
+    private final List<String> members;
+    private final List<Message> retained; // most recently ordered messages, oldest first
+    private final Map<String, BankServerInterface> memberStubs; // only when handed from one shard to another
+
+    public SequencerState(String groupName, long lastSequence, long epoch, long generation, List<String> members, List<Message> retained) {
+        this(groupName, lastSequence, epoch, generation, members, retained, Map.of());
+    }
+
+    public SequencerState(String groupName, long lastSequence, long epoch, long generation, List<String> members, List<Message> retained, Map<String, BankServerInterface> memberStubs) {
+        this.groupName = groupName;
+        this.lastSequence = lastSequence;
+        this.epoch = epoch;
+        this.generation = generation;
+        this.members = new ArrayList<>(members);
+        this.retained = new ArrayList<>(retained);
+        this.memberStubs = new HashMap<>(memberStubs);
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    public List<Message> getRetained() {
+        return retained;
+    }
+
+    public Map<String, BankServerInterface> getMemberStubs() {
+        return memberStubs;
+    }
+}
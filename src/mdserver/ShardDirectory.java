@@ -0,0 +1,142 @@
+package mdserver;
+
+import common.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+
+/**
+ * The directory of a sharded MDServer tier: it publishes the ShardMap and moves groups between
+ * shards. Each shard is an MDServer started with --shard=<name>.
+ *
+ * A move asks the current shard to hand the group off, which drains its queue and returns its
+ * sequencing state, has the new shard adopt that state, and only then publishes the new map.
+ * The old shard turns the group's replicas away from then on; they fetch the new map and
+ * rejoin the new shard from the last message they applied, as after a failover.
+ */
+public class ShardDirectory extends UnicastRemoteObject implements ShardDirectoryInterface {
+    private final String registryHostPort;
+    private volatile ShardMap map;
+
+    public ShardDirectory(String registryHostPort, ShardMap map) throws RemoteException {
+        this.registryHostPort = registryHostPort;
+        this.map = map;
+    }
+
+    @Override
+    public ShardMap shardMap() {
+        return map;
+    }
+
+    @Override
+    public synchronized void moveGroup(String groupName, String shard) throws RemoteException {
+        String from = map.shardFor(groupName);
+        if (shard.equals(from)) {
+            return;
+        }
+        map.assign(groupName, shard); // rejects unknown shards before anything is handed off
+        long start = System.nanoTime();
+        MDServerInterface source = shard(from);
+        MDServerInterface target = shard(shard);
+        SequencerState state = source.handOff(groupName, shard);
+        try {
+            target.adoptGroup(state);
+        } catch (RemoteException e) {
+            // Give it back rather than leave it with no shard at all.
+            source.adoptGroup(state);
+            throw e;
+        }
+        map = map.assign(groupName, shard);
+        Log.info("Moved group " + groupName + " from shard " + from + " to " + shard + " at #" + state.getLastSequence()
+                + " in " + (System.nanoTime() - start) / 1_000_000 + " ms. Map is now " + map);
+    }
+
+    @Override
+    public synchronized void addShard(String shard) throws RemoteException {
+        ShardMap before = map;
+        ShardMap after = before.withShard(shard);
+        if (after == before) {
+            return;
+        }
+        // Pin every group to where it is, so nothing is resolved to the new shard before it has the state.
+        Map<String, String> pinned = new HashMap<>();
+        for (String from : before.shards()) {
+            for (String groupName : shard(from).groupNames()) {
+                if (shard.equals(after.shardFor(groupName)) && !before.assignments().containsKey(groupName)) {
+                    pinned.put(groupName, from);
+                }
+            }
+        }
+        ShardMap pinnedMap = after;
+        for (Map.Entry<String, String> pin : pinned.entrySet()) {
+            pinnedMap = pinnedMap.assign(pin.getKey(), pin.getValue());
+        }
+        map = pinnedMap;
+        Log.info("Added shard " + shard + ". Moving " + pinned.size() + " groups to it.");
+        for (String groupName : pinned.keySet()) {
+            moveGroup(groupName, shard);
+            map = map.unassign(groupName); // the ring places it there anyway
+        }
+    }
+
+    private MDServerInterface shard(String shard) throws RemoteException {
+        try {
+            return (MDServerInterface) Naming.lookup("rmi://" + registryHostPort + "/" + ShardMap.registryName(shard));
+        } catch (Exception e) {
+            throw new RemoteException("Shard " + shard + " is not bound in the registry.", e);
+        }
+    }
+
+    /**
+     * Reads "group shard" lines, as given with --shard-map.
+     */
+    static Map<String, String> readAssignments(String file) throws IOException {
+        Map<String, String> assignments = new HashMap<>();
+        for (String line : Files.readAllLines(Path.of(file))) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length == 2 && !parts[0].startsWith("#")) {
+                assignments.put(parts[0], parts[1]);
+            }
+        }
+        return assignments;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: ShardDirectory <registry host:port> <shard>[,<shard>...] [--shard-map=file]");
+            System.out.println("       ShardDirectory <registry host:port> move <group> <shard>");
+            System.out.println("       ShardDirectory <registry host:port> add <shard>");
+            return;
+        }
+        String registryHostPort = args[0];
+        String url = "rmi://" + registryHostPort + "/" + REGISTRY_NAME;
+        switch (args[1]) {
+            case "move" -> {
+                ((ShardDirectoryInterface) Naming.lookup(url)).moveGroup(args[2], args[3]);
+                System.out.println("Moved " + args[2] + " to shard " + args[3]);
+            }
+            case "add" -> {
+                ((ShardDirectoryInterface) Naming.lookup(url)).addShard(args[2]);
+                System.out.println("Added shard " + args[2]);
+            }
+            default -> {
+                Map<String, String> assignments = new HashMap<>();
+                for (int i = 2; i < args.length; i++) {
+                    if (args[i].startsWith("--shard-map=")) {
+                        assignments = readAssignments(args[i].substring("--shard-map=".length()));
+                    } else {
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                    }
+                }
+                ShardDirectory directory = new ShardDirectory(registryHostPort, new ShardMap(Arrays.asList(args[1].split(",")), assignments));
+                Naming.rebind(url, directory);
+                System.out.println("Shard directory running on " + registryHostPort + ": " + directory.map);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package mdserver;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Where replicas find the MDServer shard of their group, bound as "MDServerDirectory".
+ * Without a directory in the registry there is a single MDServer.
+ */
+public interface ShardDirectoryInterface extends Remote {
+    String REGISTRY_NAME = "MDServerDirectory";
+
+    // The current map; replicas resolve groups locally and fetch it again when their shard turns them away
+    ShardMap shardMap() throws RemoteException;
+    // Hands the group's sequencing state from its current shard over to the given one
+    void moveGroup(String groupName, String shard) throws RemoteException;
+    // Adds a shard and moves over every group the ring now places on it
+    void addShard(String shard) throws RemoteException;
+}
@@ -0,0 +1,144 @@
+package mdserver;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Which MDServer shard orders which group.
+ *
+ * Groups are placed on a consistent-hash ring with POINTS_PER_SHARD points per shard, so adding
+ * a shard takes over only about 1/N of the groups. Explicit assignments, from a shard map file
+ * or from moving a group, win over the ring. Immutable; every change is a new version. With no
+ * shards at all, every group is ordered by the single MDServer bound as "MDServer".
+ */
+public final class ShardMap implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int POINTS_PER_SHARD = 128;
+    private static final String UNSHARDED = "MDServer";
+
+    private final long version;
+    private final List<String> shards;
+    private final Map<String, String> assignments; // group -> shard
+    private transient NavigableMap<Long, String> ring; // built on first use, also after deserialization
+
+    public ShardMap(List<String> shards, Map<String, String> assignments) {
+        this(1, shards, assignments);
+    }
+
+    private ShardMap(long version, List<String> shards, Map<String, String> assignments) {
+        this.version = version;
+        this.shards = List.copyOf(shards);
+        this.assignments = Map.copyOf(assignments);
+        for (String shard : assignments.values()) {
+            requireShard(shard);
+        }
+    }
+
+    /**
+     * The map of an unsharded deployment: one MDServer for everything.
+     */
+    public static ShardMap single() {
+        return new ShardMap(List.of(), Map.of());
+    }
+
+    /**
+     * The registry name an MDServer for the given shard is bound under; null means unsharded.
+     */
+    public static String registryName(String shard) {
+        return shard == null ? UNSHARDED : UNSHARDED + "-" + shard;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public List<String> shards() {
+        return shards;
+    }
+
+    public Map<String, String> assignments() {
+        return assignments;
+    }
+
+    /**
+     * The shard that orders the group, or null when unsharded.
+     */
+    public String shardFor(String groupName) {
+        if (shards.isEmpty()) {
+            return null;
+        }
+        String assigned = assignments.get(groupName);
+        if (assigned != null) {
+            return assigned;
+        }
+        Map.Entry<Long, String> point = ring().ceilingEntry(hash(groupName));
+        return point != null ? point.getValue() : ring().firstEntry().getValue();
+    }
+
+    public String registryNameFor(String groupName) {
+        return registryName(shardFor(groupName));
+    }
+
+    public ShardMap assign(String groupName, String shard) {
+        requireShard(shard);
+        Map<String, String> next = new HashMap<>(assignments);
+        next.put(groupName, shard);
+        return new ShardMap(version + 1, shards, next);
+    }
+
+    /**
+     * Drops the explicit assignment, so the ring decides again.
+     */
+    public ShardMap unassign(String groupName) {
+        Map<String, String> next = new HashMap<>(assignments);
+        next.remove(groupName);
+        return new ShardMap(version + 1, shards, next);
+    }
+
+    public ShardMap withShard(String shard) {
+        if (shards.contains(shard)) {
+            return this;
+        }
+        List<String> next = new ArrayList<>(shards);
+        next.add(shard);
+        return new ShardMap(version + 1, next, assignments);
+    }
+
+    private void requireShard(String shard) {
+        if (!shards.contains(shard)) {
+            throw new IllegalArgumentException("Unknown shard: " + shard + " (shards are " + shards + ")");
+        }
+    }
+
+    private NavigableMap<Long, String> ring() {
+        if (ring == null) {
+            NavigableMap<Long, String> points = new TreeMap<>();
+            for (String shard : shards) {
+                for (int i = 0; i < POINTS_PER_SHARD; i++) {
+                    points.put(hash(shard + "#" + i), shard);
+                }
+            }
+            ring = points;
+        }
+        return ring;
+    }
+
+    // 64-bit FNV-1a with a final avalanche; String.hashCode clusters names like "group01".."group99".
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return shards.isEmpty() ? "unsharded" : "v" + version + " " + shards + (assignments.isEmpty() ? "" : " assigned " + assignments);
+    }
+}
@@ -0,0 +1,19 @@
+package mdserver;
+
+import common.GroupInfo;
+import common.Message;
+import common.StaleSequencerException;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * A standby MDServer as seen by the primary, which copies its sequencing state to it as it changes.
+ */
+public interface StandbyInterface extends Remote {
+    // Called with every message right after it got its sequence number, before any replica sees it;
+    // refused once the standby has taken over, and the caller must stop ordering the group
+    void replicate(String groupName, Message ordered) throws RemoteException, StaleSequencerException;
+    // Called after every membership change of a group
+    void replicateMembership(String groupName, GroupInfo members) throws RemoteException;
+}
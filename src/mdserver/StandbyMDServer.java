@@ -0,0 +1,235 @@
+package mdserver;
+
+import bankserver.BankServerInterface;
+import common.GroupInfo;
+import common.Log;
+import common.Message;
+import common.StaleSequencerException;
+import mdserver.utils.TimerUtils;
+
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A hot standby for the MDServer.
+ *
+ * It attaches to the primary registered as "MDServer", which from then on hands it every
+ * ordered message before delivering it and every membership change. When the primary has not
+ * answered a heartbeat for --takeover-after-ms, the standby starts an MDServerImpl with that
+ * state, one epoch and one generation later, and rebinds it as "MDServer". Replicas notice the
+ * failed heartbeat on their side, look the MDServer up again and rejoin from the last message
+ * they applied.
+ *
+ * A primary that was only cut off from the standby may still be running. It is fenced by the
+ * generation: the successor tells every member its generation before anything else, members
+ * refuse messages of an older one, and the old primary stops ordering a group once a member
+ * (or this standby, if it can still reach it) refuses it. Such a primary may also have ordered
+ * messages after it lost the standby; the members' answers to the fence tell the successor how
+ * far, and it numbers its own messages above that.
+ */
+public class StandbyMDServer extends UnicastRemoteObject implements StandbyInterface {
+    private static final int RETAINED_PER_GROUP = 10_000; // as many as the primary retains
+
+    private final String registryHostPort;
+    private final MDServerOptions options;
+    private final Map<String, GroupState> groups = new ConcurrentHashMap<>();
+    private volatile long lastHeartbeatMs;
+    private volatile boolean takenOver = false;
+    private ScheduledFuture<?> watchdog;
+    private MDServerImpl successor; // created up front, so taking over does not pay for its start-up
+
+    public StandbyMDServer(String registryHostPort, MDServerOptions options) throws RemoteException {
+        this.registryHostPort = registryHostPort;
+        this.options = options;
+    }
+
+    /**
+     * What the standby knows about one group. Replication calls and the initial snapshot can
+     * arrive in any order, so everything is merged: the highest sequence and epoch win, and
+     * retained messages are kept by sequence number.
+     */
+    private static class GroupState {
+        private long lastSequence = 0;
+        private long generation = 0;
+        private GroupInfo members = new GroupInfo(-1, List.of());
+        private final NavigableMap<Long, Message> retained = new TreeMap<>();
+
+        synchronized void add(Message ordered) {
+            lastSequence = Math.max(lastSequence, ordered.getSequence());
+            generation = Math.max(generation, ordered.getGeneration());
+            retained.put(ordered.getSequence(), ordered);
+            while (retained.size() > RETAINED_PER_GROUP) {
+                retained.pollFirstEntry();
+            }
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void setMembers(GroupInfo info) {
+            if (info.getEpoch() > members.getEpoch()) {
+                members = info;
+            }
+        }
+
+        synchronized SequencerState snapshot(String groupName) {
+            return new SequencerState(groupName, lastSequence, members.getEpoch(), generation, members.getMembers(), new ArrayList<>(retained.values()));
+        }
+    }
+
+    @Override
+    public void replicate(String groupName, Message ordered) throws StaleSequencerException {
+        GroupState group = groupState(groupName);
+        if (takenOver) {
+            throw new StaleSequencerException("The standby has taken over as the MDServer.", group.generation() + 1);
+        }
+        group.add(ordered);
+    }
+
+    @Override
+    public void replicateMembership(String groupName, GroupInfo members) {
+        groupState(groupName).setMembers(members);
+    }
+
+    private GroupState groupState(String groupName) {
+        return groups.computeIfAbsent(groupName, _ -> new GroupState());
+    }
+
+    /**
+     * Attaches to the current primary and starts watching it.
+     */
+    public void attach() throws Exception {
+        MDServerInterface primary = (MDServerInterface) Naming.lookup(url());
+        attach(primary);
+        lastHeartbeatMs = System.currentTimeMillis();
+
+        // Heartbeats on their own thread: a call to a dead host can hang, the watchdog below cannot.
+        Thread.ofPlatform().name("standby-heartbeat").daemon(true).start(() -> heartbeatLoop(primary));
+        watchdog = TimerUtils.scheduleAtFixedRate(this::checkPrimary, options.heartbeatMs, options.heartbeatMs);
+        System.out.println("Standby attached to the MDServer at " + registryHostPort + ", tracking " + groups.size() + " groups");
+    }
+
+    /**
+     * Registers with the primary and merges the state it hands over with what it replicates from then on.
+     */
+    void attach(MDServerInterface primary) throws RemoteException {
+        successor = new MDServerImpl(options); // not bound anywhere until we take over
+        for (SequencerState state : primary.registerStandby(this)) {
+            GroupState group = groupState(state.getGroupName());
+            group.setMembers(new GroupInfo(state.getEpoch(), state.getMembers()));
+            for (Message msg : state.getRetained()) {
+                group.add(msg);
+            }
+            synchronized (group) {
+                group.lastSequence = Math.max(group.lastSequence, state.getLastSequence());
+                group.generation = Math.max(group.generation, state.getGeneration());
+            }
+        }
+    }
+
+    private void heartbeatLoop(MDServerInterface primary) {
+        while (!takenOver) {
+            try {
+                primary.heartbeat();
+                lastHeartbeatMs = System.currentTimeMillis();
+            } catch (RemoteException e) {
+                Log.debug(() -> "No heartbeat from the primary MDServer: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(options.heartbeatMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void checkPrimary() {
+        long silentMs = System.currentTimeMillis() - lastHeartbeatMs;
+        if (takenOver || silentMs < options.takeoverAfterMs) {
+            return;
+        }
+        takenOver = true;
+        watchdog.cancel(false);
+        try {
+            takeOver(silentMs);
+        } catch (Exception e) {
+            Log.error("Standby failed to take over from the primary MDServer.", e);
+        }
+    }
+
+    private void takeOver(long silentMs) throws Exception {
+        long start = System.nanoTime();
+        Log.warn("Primary MDServer silent for " + silentMs + " ms. Taking over.");
+        MDServerImpl server = adoptAll(this::lookupMembers);
+        // Only now can replicas find us; they rejoin into groups that already exist.
+        Naming.rebind(url(), server);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(server.latencyReport())));
+        long tookMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Took over as the MDServer on " + registryHostPort + " after " + silentMs + " ms without a heartbeat, in "
+                + tookMs + " ms (" + groups.size() + " groups)");
+    }
+
+    /**
+     * Continues every group in the successor with the members that can still be looked up, and
+     * returns it. Replication from the old primary is refused from now on.
+     */
+    MDServerImpl adoptAll(MemberLookup lookup) throws Exception {
+        takenOver = true;
+        for (Map.Entry<String, GroupState> group : groups.entrySet()) {
+            SequencerState state = group.getValue().snapshot(group.getKey());
+            successor.adopt(state, lookup.find(state.getMembers()));
+        }
+        return successor;
+    }
+
+    @FunctionalInterface
+    interface MemberLookup {
+        Map<String, BankServerInterface> find(List<String> names) throws Exception;
+    }
+
+    /**
+     * Stubs of the members that are still bound in the registry, looked up in parallel.
+     * Members that are gone are left out, as the primary would have evicted them.
+     */
+    private Map<String, BankServerInterface> lookupMembers(List<String> names) throws InterruptedException {
+        Map<String, BankServerInterface> stubs = new HashMap<>();
+        try (ExecutorService lookups = Executors.newVirtualThreadPerTaskExecutor()) {
+            Map<String, Future<BankServerInterface>> pending = new LinkedHashMap<>();
+            for (String name : names) {
+                pending.put(name, lookups.submit(() -> (BankServerInterface) Naming.lookup("rmi://" + registryHostPort + "/" + name)));
+            }
+            for (Map.Entry<String, Future<BankServerInterface>> lookup : pending.entrySet()) {
+                try {
+                    stubs.put(lookup.getKey(), lookup.getValue().get());
+                } catch (ExecutionException e) {
+                    Log.warn("Replica " + lookup.getKey() + " is not in the registry any more; leaving it out: " + e.getCause());
+                }
+            }
+        }
+        return stubs;
+    }
+
+    private String url() {
+        return "rmi://" + registryHostPort + "/" + ShardMap.registryName(options.shard);
+    }
+
+    public static void main(String[] args) throws Exception {
+        MDServerOptions options = new MDServerOptions();
+        args = options.parse(args).toArray(new String[0]);
+        if (args.length < 1) {
+            System.out.println("Usage: StandbyMDServer <registry host:port> [--heartbeat-ms=N] [--takeover-after-ms=N] " + MDServerOptions.usage());
+            return;
+        }
+        String registryHostPort = args[0].contains(":") ? args[0] : "localhost:" + args[0];
+        new StandbyMDServer(registryHostPort, options).attach();
+    }
+}
@@ -1,29 +1,47 @@
 package mdserver.utils;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import common.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TimerUtils {
 
+    // One shared timer thread instead of a java.util.Timer (and its thread) per scheduled task.
+    // Tasks must be short; anything that blocks belongs on an executor.
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("mdserver-timer").daemon(true).factory());
+
+    // Single-shot timers scheduled but not yet run, for monitoring
+    private static final LongAdder pendingTimers = new LongAdder();
+
     // Schedule a single execution after delayMs milliseconds
     public static void schedule(Runnable task, long delayMs) {
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                task.run();
-            }
-        }, delayMs);
+        pendingTimers.increment();
+        scheduler.schedule(() -> {
+            pendingTimers.decrement();
+            runLogged(task);
+        }, delayMs, TimeUnit.MILLISECONDS);
     }
 
     // Schedule repeated execution every intervalMs milliseconds
-    public static Timer scheduleAtFixedRate(Runnable task, long delayMs, long intervalMs) {
-        Timer timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                task.run();
-            }
-        }, delayMs, intervalMs);
-        return timer;
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long delayMs, long intervalMs) {
+        return scheduler.scheduleAtFixedRate(() -> runLogged(task), delayMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static long pendingTimers() {
+        return pendingTimers.sum();
+    }
+
+    private static void runLogged(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // The executor would swallow it silently, and a periodic task would stop repeating.
+            Log.error("Timer task failed", e);
+        }
     }
 }
@@ -0,0 +1,57 @@
+package bankserver;
+
+import common.HistoryEntry;
+import common.HistoryQuery;
+import common.RateTable;
+import common.Transaction;
+import common.TransactionLog;
+import embedded.TestCluster;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BalancesAtTest {
+
+    /**
+     * Every order of a mixed run, read back through the checkpoints, matches the same history
+     * replayed from the start by AccountReplay.
+     */
+    @Test
+    void balancesAtEveryOrderMatchTheReplay() throws Exception {
+        TestCluster cluster = new TestCluster();
+        ReplicaOptions options = TestCluster.replicaOptions();
+        options.checkpointEvery = 7;
+        BankServerInterface replica = cluster.startGroup("ledger", 1, options).get(0);
+        RateTable initial = cluster.converter().snapshot();
+
+        for (int i = 1; i <= 40; i++) {
+            replica.deposit(i % 2 == 0 ? "USD" : "EUR", i);
+            if (i % 9 == 0) {
+                replica.addInterest("USD", 1.5);
+            }
+            if (i % 13 == 0) {
+                replica.updateRates(Map.of("EUR", 1.1 + i / 100.0));
+            }
+        }
+        int expected = 40 + 4 + 3;
+        TestCluster.eventually(10_000, () -> TestCluster.lastOrder(replica) == expected);
+
+        List<Transaction> applied = new ArrayList<>();
+        HistoryQuery query = new HistoryQuery();
+        query.pageSize = 10_000;
+        for (HistoryEntry entry : replica.queryHistory(query).getEntries()) {
+            applied.add(new Transaction(entry.getCommand(), entry.getTxId(), entry.getTimestamp()));
+        }
+        AccountReplay replay = new AccountReplay(initial, TransactionLog.Kind.APPLIED, order -> true);
+        replay.replay(applied);
+
+        assertEquals(expected, replay.order());
+        for (int order = 1; order <= expected; order++) {
+            assertEquals(replay.fingerprints().get(order), replica.getBalancesAt(order).fingerprint(), "order " + order);
+        }
+    }
+}
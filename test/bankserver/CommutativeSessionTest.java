@@ -0,0 +1,50 @@
+package bankserver;
+
+import embedded.TestCluster;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class CommutativeSessionTest {
+
+    private static ReplicaOptions commutative() {
+        ReplicaOptions options = TestCluster.replicaOptions();
+        options.commutativeDeposits = true;
+        return options;
+    }
+
+    /**
+     * The deposit's lazy copy to one replica is lost, so that replica only learns it when a
+     * barrier of another replica folds it in. Session reads there must not wait for the origin's
+     * next ordered transaction.
+     */
+    @Test
+    void aSessionTokenOfAFoldedDepositHolds() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup("folded", 3, commutative());
+        BankServerInterface origin = group.get(0);
+        BankServerInterface missed = group.get(1);
+        BankServerInterface barrier = group.get(2);
+        cluster.cluster().loseCalls(missed.getinstanceName(), "receiveDeposits", 1);
+
+        String token = origin.deposit("USD", 10);
+        TestCluster.eventually(5_000, () -> barrier.getQuickBalance("USD") == 10.0);
+        CompletableFuture<Double> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return missed.getSessionBalance("USD", token);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        barrier.getSyncedBalance("USD"); // the barrier folds the deposit everywhere
+        assertEquals(10.0, waiting.get(5, TimeUnit.SECONDS), 1e-9);
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> assertEquals(10.0, missed.getSessionBalance("USD", token), 1e-9));
+    }
+}
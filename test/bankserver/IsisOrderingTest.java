@@ -0,0 +1,95 @@
+package bankserver;
+
+import embedded.TestCluster;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class IsisOrderingTest {
+
+    private static ReplicaOptions isis() {
+        ReplicaOptions options = TestCluster.replicaOptions();
+        options.ordering = Ordering.ISIS;
+        return options;
+    }
+
+    @Test
+    void aLostCommitIsSentAgain() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup("isislost", 3, isis());
+        cluster.cluster().loseCalls(group.get(1).getinstanceName(), "commitOrder", 1);
+        for (int i = 0; i < 12; i++) {
+            group.get(i % 3).deposit("USD", 1);
+            Thread.sleep(5); // several rounds, not one flush
+        }
+        awaitOrder(group, 12);
+        for (BankServerInterface replica : group) {
+            assertEquals(12.0, replica.getQuickBalance("USD"), 1e-9);
+            assertEquals(group.get(0).getBalancesAt(12).fingerprint(), replica.getBalancesAt(12).fingerprint());
+        }
+    }
+
+    @Test
+    void aDeadMemberIsEvictedAndTheGroupGoesOn() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup("isisdead", 3, isis());
+        group.get(0).deposit("USD", 1);
+        awaitOrder(group, 1);
+
+        String dead = group.get(2).getinstanceName();
+        cluster.cluster().crash(dead);
+        List<BankServerInterface> alive = new ArrayList<>(group.subList(0, 2));
+        for (int i = 0; i < 10; i++) {
+            alive.get(i % 2).deposit("USD", 1);
+        }
+        awaitOrder(alive, 11);
+        assertFalse(cluster.cluster().mdServer().getGroupMembers("isisdead").contains(dead));
+        for (BankServerInterface replica : alive) {
+            assertEquals(11.0, replica.getQuickBalance("USD"), 1e-9);
+        }
+    }
+
+    /**
+     * The sender dies after its commit reached only some members. The member that lost it takes
+     * the agreed position from the others instead of dropping the message.
+     */
+    @Test
+    void aCommitCutShortBySendersDeathIsAdopted() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup("isisorphan", 3, isis());
+        BankServerInterface sender = group.get(0);
+        BankServerInterface lost = group.get(1);
+        BankServerInterface committed = group.get(2);
+        String senderName = sender.getinstanceName();
+        // Enough losses that the sender's own resends do not get through before it is evicted
+        cluster.cluster().loseCalls(lost.getinstanceName(), "commitOrder", 10);
+
+        sender.deposit("USD", 5);
+        awaitOrder(List.of(sender, committed), 1);
+        cluster.cluster().crash(senderName);
+        committed.deposit("USD", 1); // its round finds the sender gone and reports it
+
+        List<BankServerInterface> alive = List.of(lost, committed);
+        awaitOrder(alive, 2);
+        assertFalse(cluster.cluster().mdServer().getGroupMembers("isisorphan").contains(senderName));
+        for (BankServerInterface replica : alive) {
+            assertEquals(6.0, replica.getQuickBalance("USD"), 1e-9);
+            assertEquals(committed.getBalancesAt(2).fingerprint(), replica.getBalancesAt(2).fingerprint());
+        }
+    }
+
+    private static void awaitOrder(List<BankServerInterface> replicas, int order) throws Exception {
+        TestCluster.eventually(15_000, () -> {
+            for (BankServerInterface replica : replicas) {
+                if (TestCluster.lastOrder(replica) != order) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+}
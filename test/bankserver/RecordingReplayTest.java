@@ -0,0 +1,53 @@
+package bankserver;
+
+import common.RateTable;
+import common.TransactionLog;
+import embedded.TestCluster;
+import mdserver.MDServerOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecordingReplayTest {
+
+    /**
+     * The MDServer's recording, written off the ordering threads, replays to the state the
+     * replicas reached.
+     */
+    @Test
+    void theRecordingReplaysToTheReplicasState(@TempDir Path dir) throws Exception {
+        MDServerOptions options = new MDServerOptions();
+        options.record = dir.resolve("ordered.log");
+        TestCluster cluster = new TestCluster(options);
+        RateTable rates = cluster.converter().snapshot();
+        List<BankServerInterface> group = cluster.startGroup("recorded", 2);
+
+        for (int i = 1; i <= 30; i++) {
+            group.get(i % 2).deposit("USD", i);
+            if (i % 10 == 0) {
+                group.get(0).addInterest("USD", 2);
+            }
+        }
+        int expected = 33;
+        for (BankServerInterface replica : group) {
+            TestCluster.eventually(10_000, () -> TestCluster.lastOrder(replica) == expected);
+        }
+
+        TestCluster.eventually(5_000, () -> replay(options.record, rates).order() == expected);
+        AccountReplay replay = replay(options.record, rates);
+        for (BankServerInterface replica : group) {
+            assertEquals(replay.snapshot().fingerprint(), replica.getBalancesAt(expected).fingerprint());
+        }
+    }
+
+    private static AccountReplay replay(Path log, RateTable rates) throws Exception {
+        TransactionLog.Contents contents = TransactionLog.read(log);
+        AccountReplay replay = new AccountReplay(rates, contents.getKind(), _ -> false);
+        replay.replay(contents.getByAccount().getOrDefault("recorded", List.of()));
+        return replay;
+    }
+}
@@ -0,0 +1,46 @@
+package bankserver;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaMetricsTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void readingTheRateDoesNotChangeIt() {
+        ReplicaMetrics metrics = new ReplicaMetrics(null);
+        long start = System.nanoTime();
+        metrics.applied.add(500);
+        metrics.sample(start + SECOND);
+
+        assertEquals(metrics.getApplyRatePerSecond(), metrics.getApplyRatePerSecond());
+        metrics.applied.add(500);
+        assertEquals(metrics.getApplyRatePerSecond(), metrics.getApplyRatePerSecond());
+        assertTrue(metrics.getApplyRatePerSecond() > 0);
+    }
+
+    @Test
+    void theRateFollowsALoadChangeSmoothly() {
+        ReplicaMetrics metrics = new ReplicaMetrics(null);
+        long now = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            metrics.applied.add(1000);
+            now += SECOND;
+            metrics.sample(now);
+        }
+        assertEquals(1000.0, metrics.getApplyRatePerSecond(), 1.0);
+
+        // The load stops: the average decays instead of dropping to zero at once
+        now += SECOND;
+        metrics.sample(now);
+        double afterOneSecond = metrics.getApplyRatePerSecond();
+        assertTrue(afterOneSecond > 500 && afterOneSecond < 1000, "rate " + afterOneSecond);
+        for (int i = 0; i < 60; i++) {
+            now += SECOND;
+            metrics.sample(now);
+        }
+        assertEquals(0.0, metrics.getApplyRatePerSecond(), 1.0);
+    }
+}
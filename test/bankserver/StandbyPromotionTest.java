@@ -0,0 +1,56 @@
+package bankserver;
+
+import common.ReplicaRole;
+import embedded.TestCluster;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StandbyPromotionTest {
+    private static final String GROUP = "promotion";
+
+    /**
+     * A member crashes and the standby takes its place. From then on it applies and ACKs like
+     * any member, latency stamps included, and ends with the same balances.
+     */
+    @Test
+    void aPromotedStandbyIsAMemberLikeAnyOther() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup(GROUP, 3);
+        ReplicaOptions options = TestCluster.replicaOptions();
+        options.role = ReplicaRole.STANDBY;
+        options.warmupTransactions = 0;
+        BankServerInterface standby = cluster.startGroup(GROUP, 1, options).get(0);
+        String standbyName = standby.getinstanceName();
+
+        for (int i = 0; i < 10; i++) {
+            group.get(i % 3).deposit("USD", 1);
+        }
+        for (BankServerInterface replica : group) {
+            TestCluster.eventually(5_000, () -> TestCluster.lastOrder(replica) == 10);
+        }
+
+        cluster.cluster().crash(group.get(2).getinstanceName());
+        group.get(0).deposit("USD", 1); // its missing ACK gets the crashed member evicted
+        TestCluster.eventually(15_000, () -> cluster.cluster().mdServer().getGroupMembers(GROUP).contains(standbyName));
+
+        List<BankServerInterface> members = new ArrayList<>(List.of(group.get(0), group.get(1), standby));
+        for (int i = 0; i < 10; i++) {
+            members.get(i % 3).deposit("USD", 1);
+        }
+        for (BankServerInterface replica : members) {
+            TestCluster.eventually(10_000, () -> TestCluster.lastOrder(replica) == 21);
+        }
+
+        String expected = group.get(0).getBalancesAt(21).fingerprint();
+        for (BankServerInterface replica : members) {
+            assertEquals(expected, replica.getBalancesAt(21).fingerprint());
+        }
+        assertEquals(21.0, standby.getQuickBalance("USD"), 1e-9);
+        assertTrue(standby.getLatencyReport().contains("APPLIED->ACKED"), standby.getLatencyReport());
+    }
+}
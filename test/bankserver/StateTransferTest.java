@@ -0,0 +1,73 @@
+package bankserver;
+
+import common.HistoryEntry;
+import common.HistoryQuery;
+import common.Message;
+import common.Transaction;
+import embedded.TestCluster;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StateTransferTest {
+
+    @Test
+    void aJoinerPagesTheArchivedHistory() throws Exception {
+        TestCluster cluster = new TestCluster();
+        ReplicaOptions options = TestCluster.replicaOptions();
+        options.historyWindow = 100; // most of the history ends up in the archive
+        List<BankServerInterface> group = cluster.startGroup("transfer", 2, options);
+        int deposits = 25_000; // more than one page of queryHistory
+        for (int i = 0; i < deposits; i++) {
+            group.get(i % 2).deposit("USD", 1);
+        }
+        TestCluster.eventually(30_000, () -> TestCluster.lastOrder(group.get(0)) == deposits);
+
+        BankServerInterface joiner = cluster.startGroup("transfer", 1, options).get(0);
+        assertEquals(deposits, TestCluster.lastOrder(joiner));
+        assertEquals(group.get(0).getBalancesAt(deposits).fingerprint(), joiner.getBalancesAt(deposits).fingerprint());
+        for (int order : new int[]{1, 9_999, 10_000, 10_001, 20_000, deposits}) {
+            assertEquals(entry(group.get(0), order).getTxId(), entry(joiner, order).getTxId(), "order " + order);
+        }
+    }
+
+    @Test
+    void aResendOrderedAfterNewerTransactionsIsSkipped() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup("resend", 3);
+        BankServerInterface origin = group.get(0);
+        String first = origin.deposit("USD", 10);
+        origin.deposit("USD", 1);
+        origin.getSyncedBalance("USD");
+        TestCluster.eventually(5_000, () -> TestCluster.lastOrder(group.get(2)) == 2);
+
+        // What a failover resend looks like: the first deposit again, now behind the second,
+        // next to one that is new
+        String name = origin.getinstanceName();
+        Transaction resent = new Transaction("deposit USD 10.0", first, System.currentTimeMillis());
+        Transaction fresh = new Transaction("deposit USD 100.0", name + " 1000", System.currentTimeMillis());
+        cluster.cluster().mdServer().broadcastMessage(new Message(name, List.of(resent, fresh)));
+
+        TestCluster.eventually(5_000, () -> {
+            for (BankServerInterface replica : group) {
+                if (TestCluster.lastOrder(replica) != 3) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        for (BankServerInterface replica : group) {
+            assertEquals(111.0, replica.getQuickBalance("USD"), 1e-9);
+            assertEquals(name + " 1000", entry(replica, 3).getTxId());
+        }
+    }
+
+    private static HistoryEntry entry(BankServerInterface replica, int order) throws Exception {
+        HistoryQuery query = new HistoryQuery();
+        query.fromOrder = order;
+        query.toOrder = order;
+        return replica.queryHistory(query).getEntries().get(0);
+    }
+}
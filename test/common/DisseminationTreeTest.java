@@ -0,0 +1,40 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DisseminationTreeTest {
+    private final List<String> order = DisseminationTree.layout(List.of("g_e", "g_a", "g_d", "g_b", "g_g", "g_c", "g_f"));
+
+    @Test
+    void childrenFollowTheHeapLayout() {
+        assertEquals(List.of("g_a", "g_b"), DisseminationTree.children(order, 2, null));
+        assertEquals(List.of("g_c", "g_d"), DisseminationTree.children(order, 2, "g_a"));
+        assertEquals(List.of("g_e", "g_f"), DisseminationTree.children(order, 2, "g_b"));
+        assertEquals(List.of("g_g"), DisseminationTree.children(order, 2, "g_c"));
+        assertEquals(List.of(), DisseminationTree.children(order, 2, "g_g"));
+    }
+
+    @Test
+    void aNodeOutsideTheTreeRelaysToNobody() {
+        // e.g. a replica that was just evicted, or one whose member list is already newer
+        assertEquals(List.of(), DisseminationTree.children(order, 2, "g_gone"));
+        assertEquals(List.of("g_gone"), DisseminationTree.subtree(order, 2, "g_gone"));
+        assertEquals(List.of(), DisseminationTree.children(List.of(), 2, "g_a"));
+    }
+
+    @Test
+    void theRootsSubtreesCoverEveryMemberOnce() {
+        List<String> covered = new java.util.ArrayList<>();
+        for (String root : DisseminationTree.children(order, 3, null)) {
+            covered.addAll(DisseminationTree.subtree(order, 3, root));
+        }
+        assertEquals(order.size(), covered.size());
+        assertTrue(new HashSet<>(covered).containsAll(order));
+    }
+}
@@ -0,0 +1,33 @@
+package embedded;
+
+import bankserver.BankServerInterface;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EmbeddedClusterTest {
+
+    @Test
+    void replicasAgreeOnTheOrderedBalances() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup("converge", 3);
+        for (int i = 0; i < 30; i++) {
+            group.get(i % 3).deposit("USD", 10);
+            if (i % 10 == 9) {
+                group.get(i % 3).addInterest(null, 1.0);
+            }
+        }
+        for (BankServerInterface replica : group) {
+            replica.getSyncedBalance("USD");
+        }
+        TestCluster.eventually(5000, () -> TestCluster.lastOrder(group.get(0)) == 33
+                && TestCluster.lastOrder(group.get(1)) == 33 && TestCluster.lastOrder(group.get(2)) == 33);
+
+        String expected = group.get(0).getBalancesAt(33).fingerprint();
+        for (BankServerInterface replica : group) {
+            assertEquals(expected, replica.getBalancesAt(33).fingerprint(), replica.getinstanceName());
+        }
+    }
+}
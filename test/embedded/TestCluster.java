@@ -0,0 +1,83 @@
+package embedded;
+
+import bankserver.BankServerInterface;
+import bankserver.ReplicaOptions;
+import common.CurrencyConverter;
+import common.HistoryEntry;
+import common.HistoryQuery;
+import mdserver.MDServerOptions;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * An EmbeddedCluster with the settings the tests share: no network delay, the default trading
+ * rates and replicas that flush every 20 ms instead of every 10 s.
+ */
+public class TestCluster {
+    public static final String RATES = "input/TradingRate.txt";
+
+    private final EmbeddedCluster cluster;
+    private final CurrencyConverter converter;
+
+    public TestCluster() throws Exception {
+        this(new MDServerOptions());
+    }
+
+    public TestCluster(MDServerOptions options) throws Exception {
+        this.cluster = new EmbeddedCluster(0, 0, options);
+        this.converter = new CurrencyConverter(RATES);
+    }
+
+    public static ReplicaOptions replicaOptions() {
+        ReplicaOptions options = new ReplicaOptions();
+        options.flushIntervalMs = 20;
+        return options;
+    }
+
+    public List<BankServerInterface> startGroup(String account, int replicas) throws Exception {
+        return startGroup(account, replicas, replicaOptions());
+    }
+
+    public List<BankServerInterface> startGroup(String account, int replicas, ReplicaOptions options) throws Exception {
+        return cluster.startGroup(account, replicas, converter, options);
+    }
+
+    public EmbeddedCluster cluster() {
+        return cluster;
+    }
+
+    public CurrencyConverter converter() {
+        return converter;
+    }
+
+    /**
+     * The highest order the replica has applied, read page by page from its history.
+     */
+    public static int lastOrder(BankServerInterface replica) throws Exception {
+        int last = 0;
+        while (true) {
+            HistoryQuery query = new HistoryQuery();
+            query.fromOrder = last + 1;
+            query.pageSize = 10_000;
+            List<HistoryEntry> entries = replica.queryHistory(query).getEntries();
+            if (entries.isEmpty()) {
+                return last;
+            }
+            last = entries.get(entries.size() - 1).getOrder();
+        }
+    }
+
+    /**
+     * Polls the condition until it holds, and fails if it does not within timeoutMs.
+     */
+    public static void eventually(long timeoutMs, Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition still false after " + timeoutMs + " ms");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package mdserver;
+
+import bankserver.BankServerInterface;
+import common.GroupInfo;
+import common.Message;
+import embedded.TestCluster;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HandOffTest {
+    private static final String GROUP = "handoff";
+
+    /**
+     * The ordering thread has taken a message off the queue and is still at the standby when the
+     * group is handed off. The hand-off waits for it, and hands over its sequence number.
+     */
+    @Test
+    void aHandOffWaitsForTheMessageAtTheStandby() throws Exception {
+        TestCluster cluster = new TestCluster();
+        MDServerImpl primary = new MDServerImpl(); // called directly: the hand-off carries member stubs
+        cluster.cluster().bindMDServer(primary);
+        List<BankServerInterface> group = cluster.startGroup(GROUP, 2);
+        group.get(0).deposit("USD", 1);
+        awaitOrder(group, 1);
+
+        SlowStandby standby = new SlowStandby();
+        primary.registerStandby(standby);
+        group.get(0).deposit("USD", 1);
+        assertTrue(standby.entered.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<SequencerState> handOff = CompletableFuture.supplyAsync(() -> {
+            try {
+                return primary.handOff(GROUP, "elsewhere");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(handOff.isDone());
+        standby.release.countDown();
+
+        SequencerState state = handOff.get(10, TimeUnit.SECONDS);
+        awaitOrder(group, 2);
+        List<Message> retained = state.getRetained();
+        assertEquals(state.getLastSequence(), retained.get(retained.size() - 1).getSequence());
+        assertTrue(retained.get(retained.size() - 1).getTransactions().get(0).getCommand().startsWith("deposit"));
+    }
+
+    private static void awaitOrder(List<BankServerInterface> group, int order) throws Exception {
+        TestCluster.eventually(10_000, () -> {
+            for (BankServerInterface replica : group) {
+                if (TestCluster.lastOrder(replica) != order) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private static class SlowStandby implements StandbyInterface {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void replicate(String groupName, Message ordered) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void replicateMembership(String groupName, GroupInfo members) {
+        }
+    }
+}
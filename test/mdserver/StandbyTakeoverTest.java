@@ -0,0 +1,158 @@
+package mdserver;
+
+import bankserver.BankServerInterface;
+import bankserver.ReplicaOptions;
+import common.GroupInfo;
+import common.Message;
+import common.ReplicaRole;
+import common.Transaction;
+import embedded.TestCluster;
+import org.junit.jupiter.api.Test;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StandbyTakeoverTest {
+    private static final String GROUP = "takeover";
+
+    @Test
+    void aPrimaryThatKeepsRunningIsFencedAfterATakeover() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup(GROUP, 3);
+        MDServerInterface primary = cluster.cluster().mdServer();
+        StandbyMDServer standby = new StandbyMDServer("localhost:0", new MDServerOptions());
+        standby.attach(primary);
+        for (int i = 0; i < 10; i++) {
+            group.get(i % 3).deposit("USD", 1);
+        }
+        awaitOrder(group, 10);
+
+        Map<String, BankServerInterface> byName = new HashMap<>();
+        for (BankServerInterface replica : group) {
+            byName.put(replica.getinstanceName(), replica);
+        }
+        MDServerImpl successor = standby.adoptAll(names -> {
+            Map<String, BankServerInterface> found = new HashMap<>(byName);
+            found.keySet().retainAll(names);
+            return found;
+        });
+        cluster.cluster().bindMDServer(successor);
+
+        // The old primary lost the standby as well, so only the replicas can stop it
+        primary.registerStandby(new UnreachableStandby());
+        String sender = group.get(0).getinstanceName();
+        primary.broadcastMessage(new Message(sender, List.of(new Transaction("deposit USD 1000.0", sender + " 5000", System.currentTimeMillis()))));
+        TestCluster.eventually(5_000, () -> primary.movedGroups().contains(GROUP));
+
+        // The replicas rejoin the successor and carry on there
+        for (int i = 0; i < 5; i++) {
+            group.get(i % 3).deposit("USD", 1);
+        }
+        awaitOrder(group, 15);
+        for (BankServerInterface replica : group) {
+            assertEquals(15.0, replica.getQuickBalance("USD"), 1e-9, replica.getinstanceName());
+            assertEquals(group.get(0).getBalancesAt(15).fingerprint(), replica.getBalancesAt(15).fingerprint());
+        }
+        assertTrue(successor.generation(GROUP) > primary.generation(GROUP));
+    }
+
+    @Test
+    void aPrimaryStopsWhenTheStandbyRefusesItsMessages() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup(GROUP, 2);
+        MDServerInterface primary = cluster.cluster().mdServer();
+        StandbyMDServer standby = new StandbyMDServer("localhost:0", new MDServerOptions());
+        standby.attach(primary);
+        group.get(0).deposit("USD", 1);
+        awaitOrder(group, 1);
+
+        standby.adoptAll(_ -> Map.of());
+        String sender = group.get(0).getinstanceName();
+        primary.broadcastMessage(new Message(sender, List.of(new Transaction("deposit USD 1000.0", sender + " 5000", System.currentTimeMillis()))));
+        TestCluster.eventually(5_000, () -> primary.movedGroups().contains(GROUP));
+        Thread.sleep(200);
+        for (BankServerInterface replica : group) {
+            assertEquals(1.0, replica.getQuickBalance("USD"), 1e-9);
+        }
+    }
+
+    /**
+     * The primary loses only the standby and keeps ordering. The successor must not hand out the
+     * sequence numbers the primary used meanwhile, or an observer would skip its messages.
+     */
+    @Test
+    void aSuccessorNumbersAboveWhatACutOffPrimaryOrdered() throws Exception {
+        TestCluster cluster = new TestCluster();
+        List<BankServerInterface> group = cluster.startGroup(GROUP, 3);
+        ReplicaOptions observing = TestCluster.replicaOptions();
+        observing.role = ReplicaRole.OBSERVER;
+        BankServerInterface observer = cluster.startGroup(GROUP, 1, observing).get(0);
+        MDServerInterface primary = cluster.cluster().mdServer();
+        StandbyMDServer standby = new StandbyMDServer("localhost:0", new MDServerOptions());
+        standby.attach(primary);
+        for (int i = 0; i < 5; i++) {
+            group.get(i % 3).deposit("USD", 1);
+        }
+        awaitOrder(group, 5);
+
+        primary.registerStandby(new UnreachableStandby()); // the standby stops hearing from the primary
+        for (int i = 0; i < 5; i++) {
+            group.get(i % 3).deposit("USD", 10);
+            Thread.sleep(5); // several messages, not one flush
+        }
+        awaitOrder(group, 10);
+        TestCluster.eventually(5_000, () -> TestCluster.lastOrder(observer) == 10);
+
+        Map<String, BankServerInterface> byName = new HashMap<>();
+        for (BankServerInterface replica : group) {
+            byName.put(replica.getinstanceName(), replica);
+        }
+        MDServerImpl successor = standby.adoptAll(names -> {
+            Map<String, BankServerInterface> found = new HashMap<>(byName);
+            found.keySet().retainAll(names);
+            return found;
+        });
+        cluster.cluster().bindMDServer(successor);
+        for (int i = 0; i < 5; i++) {
+            group.get(i % 3).deposit("USD", 100);
+            Thread.sleep(5);
+        }
+
+        List<BankServerInterface> everyone = new ArrayList<>(group);
+        everyone.add(observer);
+        awaitOrder(everyone, 15);
+        for (BankServerInterface replica : everyone) {
+            assertEquals(555.0, replica.getQuickBalance("USD"), 1e-9, replica.getinstanceName());
+            assertEquals(group.get(0).getBalancesAt(15).fingerprint(), replica.getBalancesAt(15).fingerprint());
+        }
+    }
+
+    private static void awaitOrder(List<BankServerInterface> group, int order) throws Exception {
+        TestCluster.eventually(15_000, () -> {
+            for (BankServerInterface replica : group) {
+                if (TestCluster.lastOrder(replica) != order) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private static class UnreachableStandby implements StandbyInterface {
+        @Override
+        public void replicate(String groupName, Message ordered) throws RemoteException {
+            throw new RemoteException("unreachable");
+        }
+
+        @Override
+        public void replicateMembership(String groupName, GroupInfo members) throws RemoteException {
+            throw new RemoteException("unreachable");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package mdserver;
+
+import bankserver.BankServerInterface;
+import common.DisseminationTree;
+import embedded.TestCluster;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TreeDisseminationTest {
+
+    @Test
+    void theGroupGoesOnWhenARelayDies() throws Exception {
+        MDServerOptions options = new MDServerOptions();
+        options.treeFanout = 2;
+        TestCluster cluster = new TestCluster(options);
+        List<BankServerInterface> group = cluster.startGroup("tree", 7);
+        group.get(0).deposit("USD", 1);
+        group.get(0).getSyncedBalance("USD");
+
+        // A relay with children of its own: the first root
+        List<String> names = new ArrayList<>();
+        for (BankServerInterface replica : group) {
+            names.add(replica.getinstanceName());
+        }
+        String relay = DisseminationTree.children(DisseminationTree.layout(names), 2, null).get(0);
+        cluster.cluster().crash(relay);
+        List<BankServerInterface> alive = new ArrayList<>(group);
+        alive.remove(names.indexOf(relay));
+
+        for (int i = 0; i < 10; i++) {
+            alive.get(i % alive.size()).deposit("USD", 1);
+        }
+        for (BankServerInterface replica : alive) {
+            replica.getSyncedBalance("USD");
+        }
+        TestCluster.eventually(10_000, () -> {
+            for (BankServerInterface replica : alive) {
+                if (TestCluster.lastOrder(replica) != 11) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        for (BankServerInterface replica : alive) {
+            assertEquals(11.0, replica.getQuickBalance("USD"), 1e-9, replica.getinstanceName());
+        }
+    }
+}